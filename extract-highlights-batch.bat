@@ -0,0 +1,18 @@
+@echo off
+echo Batch PDF Highlight Extractor
+echo =============================
+
+if "%~1"=="" (
+    echo Usage: extract-highlights-batch.bat [options] "folder-or-glob-or-@manifest" ...
+    echo Example: extract-highlights-batch.bat --output-dir results --threads 8 "scans\*.pdf"
+    echo.
+    echo Options: --output-dir ^<dir^>  --format json^|jsonl^|archive  --threads ^<n^>  --ocr
+    pause
+    exit /b 1
+)
+
+java -cp "target/classes;target/dependency/*" com.scotiapdf.BatchHighlightExtractor %*
+
+echo.
+echo Batch completed!
+pause
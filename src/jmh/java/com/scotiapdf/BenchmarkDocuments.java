@@ -0,0 +1,119 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the PDFs the benchmarks run against: letter pages of Helvetica text with highlight
+ * annotations in the three target colors over every few lines. Documents are saved and parsed
+ * again so they look like documents read from disk.
+ */
+final class BenchmarkDocuments {
+
+    static final float[][] COLORS = {
+        {0.77f, 0.98f, 0.45f}, // green
+        {1.0f, 0.76f, 0.0f},   // yellow
+        {0.59f, 0.26f, 0.99f}  // purple
+    };
+
+    private static final String[] WORDS = {
+        "account", "balance", "interest", "statement", "transfer", "mortgage", "rate", "payment",
+        "customer", "agreement", "terms", "conditions", "deposit", "credit", "limit", "annual"
+    };
+    private static final float FONT_SIZE = 10;
+    private static final float LEADING = 14;
+    private static final float MARGIN = 72;
+
+    private BenchmarkDocuments() {
+    }
+
+    /**
+     * Builds a document with the given number of pages and text lines per page, highlighting
+     * every {@code highlightEvery}-th line.
+     */
+    static PDDocument generate(int pages, int linesPerPage, int highlightEvery) throws IOException {
+        Random random = new Random(42);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (PDDocument document = new PDDocument()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage(PDRectangle.LETTER);
+                document.addPage(page);
+
+                List<String> lines = new ArrayList<>();
+                for (int l = 0; l < linesPerPage; l++) {
+                    lines.add(sentence(random, 12));
+                }
+
+                float top = page.getMediaBox().getUpperRightY() - MARGIN;
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, FONT_SIZE);
+                    content.setLeading(LEADING);
+                    content.newLineAtOffset(MARGIN, top);
+                    for (String line : lines) {
+                        content.showText(line);
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+
+                for (int l = 0; l < linesPerPage; l += highlightEvery) {
+                    float width = PDType1Font.HELVETICA.getStringWidth(lines.get(l)) / 1000 * FONT_SIZE;
+                    float baseline = top - l * LEADING;
+                    page.getAnnotations().add(highlight(MARGIN, baseline - 3, MARGIN + width, baseline + FONT_SIZE,
+                        COLORS[(p + l) % COLORS.length]));
+                }
+            }
+            document.save(bytes);
+        }
+        return PDDocument.load(bytes.toByteArray());
+    }
+
+    static PDAnnotationTextMarkup highlight(float x1, float y1, float x2, float y2, float[] rgb) {
+        PDAnnotationTextMarkup markup = new PDAnnotationTextMarkup(PDAnnotationTextMarkup.SUB_TYPE_HIGHLIGHT);
+        markup.setRectangle(new PDRectangle(x1, y1, x2 - x1, y2 - y1));
+        markup.setQuadPoints(new float[] {x1, y2, x2, y2, x1, y1, x2, y1});
+        markup.setColor(new PDColor(rgb, PDDeviceRGB.INSTANCE));
+        return markup;
+    }
+
+    /**
+     * Synthetic highlights as the extractors produce them, for the output benchmarks.
+     */
+    static List<HighlightedText> highlights(int count) {
+        Random random = new Random(42);
+        HighlightColor[] colors = HighlightColor.values();
+        List<HighlightedText> highlights = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float x = 72 + random.nextInt(200);
+            float y = 72 + random.nextInt(600);
+            highlights.add(new HighlightedText(sentence(random, 3 + random.nextInt(10)), colors[i % colors.length],
+                1 + i / 20, new PDRectangle(x, y, 100 + random.nextInt(300), 12)));
+        }
+        return highlights;
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.Color;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classifying annotation colors, which runs once for every markup annotation in a document.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColorMatchingBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    private PDAnnotationTextMarkup[] markups;
+    private Color[] colors;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        markups = new PDAnnotationTextMarkup[SAMPLES];
+        colors = new Color[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            // Mostly target colors, with some arbitrary ones that match nothing
+            float[] rgb = i % 4 == 3
+                ? new float[] {random.nextFloat(), random.nextFloat(), random.nextFloat()}
+                : BenchmarkDocuments.COLORS[i % BenchmarkDocuments.COLORS.length];
+            markups[i] = BenchmarkDocuments.highlight(72, 700, 300, 712, rgb);
+            colors[i] = new Color(rgb[0], rgb[1], rgb[2]);
+        }
+    }
+
+    /**
+     * Reads the annotation's /C array and classifies it, as the extractors do.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void fromAnnotation(Blackhole blackhole) {
+        for (PDAnnotationTextMarkup markup : markups) {
+            blackhole.consume(HighlightColor.fromAnnotation(markup));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void fromColor(Blackhole blackhole) {
+        for (Color color : colors) {
+            blackhole.consume(HighlightColor.fromColor(color));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading extraction results back: the grouped JSON document, JSON lines and the binary archive, each decoded
+ * from memory into highlights. Encoding is measured by {@link JsonOutputBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HighlightArchiveBenchmark {
+
+    private static final String METHOD = "Benchmark";
+
+    @Param({"100", "10000"})
+    public int highlightCount;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private byte[] jsonReport;
+    private byte[] jsonLines;
+    private byte[] archive;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<HighlightedText> highlights = BenchmarkDocuments.highlights(highlightCount);
+        jsonReport = mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(HighlightJsonReport.build(mapper, highlights, METHOD));
+
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        try (JsonLinesWriter writer = new JsonLinesWriter(lines, false, "benchmark.pdf", METHOD)) {
+            writer.writePage(highlights);
+        }
+        jsonLines = lines.toByteArray();
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (HighlightArchiveWriter writer = new HighlightArchiveWriter(encoded)) {
+            writer.startDocument("benchmark.pdf", METHOD);
+            writer.writePage(highlights);
+        }
+        archive = encoded.toByteArray();
+    }
+
+    @Benchmark
+    public List<HighlightedText> jsonReport() throws IOException {
+        List<HighlightedText> highlights = new ArrayList<>();
+        Iterator<Map.Entry<String, JsonNode>> groups = mapper.readTree(jsonReport).get("highlightsByColor").fields();
+        while (groups.hasNext()) {
+            Map.Entry<String, JsonNode> group = groups.next();
+            String color = group.getKey().toUpperCase();
+            for (JsonNode node : group.getValue()) {
+                highlights.add(new HighlightedText(node.get("text").asText(), color, node.get("page").asInt(),
+                                                   parseRectangle(node.get("coordinates").asText())));
+            }
+        }
+        return highlights;
+    }
+
+    @Benchmark
+    public List<HighlightedText> jsonLines() throws IOException {
+        List<HighlightedText> highlights = new ArrayList<>();
+        Iterator<JsonNode> lines = mapper.readerFor(JsonNode.class).readValues(jsonLines);
+        while (lines.hasNext()) {
+            JsonNode node = lines.next();
+            JsonNode coordinates = node.get("coordinates");
+            float llx = coordinates.get("llx").floatValue();
+            float lly = coordinates.get("lly").floatValue();
+            highlights.add(new HighlightedText(node.get("text").asText(), node.get("color").asText(), node.get("page").asInt(),
+                new PDRectangle(llx, lly, coordinates.get("urx").floatValue() - llx, coordinates.get("ury").floatValue() - lly)));
+        }
+        return highlights;
+    }
+
+    @Benchmark
+    public List<HighlightedText> archive() throws IOException {
+        try (HighlightArchiveReader reader = new HighlightArchiveReader(new ByteArrayInputStream(archive))) {
+            return reader.readAll();
+        }
+    }
+
+    // PDRectangle.toString() has the form [llx,lly,urx,ury]
+    private static PDRectangle parseRectangle(String value) {
+        String[] parts = value.substring(1, value.length() - 1).split(",");
+        float llx = Float.parseFloat(parts[0]);
+        float lly = Float.parseFloat(parts[1]);
+        return new PDRectangle(llx, lly, Float.parseFloat(parts[2]) - llx, Float.parseFloat(parts[3]) - lly);
+    }
+}
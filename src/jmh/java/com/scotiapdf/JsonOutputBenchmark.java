@@ -0,0 +1,88 @@
+package com.scotiapdf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing extraction results: the grouped JSON document, JSON lines and the binary archive,
+ * each into a discarding stream so only encoding is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonOutputBenchmark {
+
+    private static final String METHOD = "Benchmark";
+
+    @Param({"100", "10000"})
+    public int highlightCount;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private List<HighlightedText> highlights;
+    private List<List<HighlightedText>> pages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        highlights = BenchmarkDocuments.highlights(highlightCount);
+        pages = new ArrayList<>();
+        for (int start = 0; start < highlights.size(); start += 20) {
+            pages.add(highlights.subList(start, Math.min(start + 20, highlights.size())));
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<HighlightedText>> groupByColor() {
+        return HighlightJsonReport.groupByColor(highlights);
+    }
+
+    /**
+     * The grouped report the single-document extractors save, built and serialized.
+     */
+    @Benchmark
+    public void jsonReport() throws IOException {
+        ObjectNode root = HighlightJsonReport.build(mapper, highlights, METHOD);
+        mapper.writerWithDefaultPrettyPrinter().writeValue(new DiscardingOutputStream(), root);
+    }
+
+    @Benchmark
+    public long jsonLines() throws IOException {
+        try (JsonLinesWriter writer = new JsonLinesWriter(new DiscardingOutputStream(), false, "benchmark.pdf", METHOD)) {
+            for (List<HighlightedText> page : pages) {
+                writer.writePage(page);
+            }
+            return writer.getLinesWritten();
+        }
+    }
+
+    @Benchmark
+    public long archive() throws IOException {
+        try (HighlightArchiveWriter writer = new HighlightArchiveWriter(new DiscardingOutputStream())) {
+            writer.startDocument("benchmark.pdf", METHOD);
+            for (List<HighlightedText> page : pages) {
+                writer.writePage(page);
+            }
+            return writer.getHighlightsWritten();
+        }
+    }
+
+    private static final class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
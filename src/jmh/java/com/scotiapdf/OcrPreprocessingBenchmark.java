@@ -0,0 +1,49 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Image preparation before Tesseract runs: the 2x upscale of a highlight region cut from the
+ * rendered page. Tesseract itself is not benchmarked, since it depends on the native install.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OcrPreprocessingBenchmark {
+
+    /**
+     * Region size in pixels at 300 DPI, from a short phrase to a paragraph-sized block.
+     */
+    @Param({"300", "1800"})
+    public int regionWidth;
+
+    @Param({"60", "600"})
+    public int regionHeight;
+
+    private BufferedImage region;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (PDDocument document = BenchmarkDocuments.generate(1, 40, 3)) {
+            BufferedImage page = new PDFRenderer(document).renderImageWithDPI(0, 300, ImageType.RGB);
+            // Start at the top margin, where the text and highlights are
+            region = page.getSubimage(300, 300, Math.min(regionWidth, page.getWidth() - 300),
+                Math.min(regionHeight, page.getHeight() - 300));
+        }
+    }
+
+    @Benchmark
+    public BufferedImage enhanceImageForOcr() {
+        return OcrPdfHighlightExtractor.enhanceImageForOcr(region);
+    }
+}
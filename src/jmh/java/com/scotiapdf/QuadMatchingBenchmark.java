@@ -0,0 +1,121 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching highlight geometry against page glyphs: the per-annotation cost once a page's glyphs
+ * are known, and the text stripper pass that produces them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuadMatchingBenchmark {
+
+    @Param({"20", "60"})
+    public int linesPerPage;
+
+    private PDDocument document;
+    private PDPage page;
+    private PageContext context;
+    private PageGlyphs glyphs;
+    private List<PDAnnotationTextMarkup> markups;
+    private List<PDAnnotationTextMarkup> wordMarkups;
+    private List<PDRectangle> rectangles;
+    private final AdvancedPdfHighlightExtractor advanced = new AdvancedPdfHighlightExtractor();
+    private final QuadPointTextStrategy quadPointStrategy = new QuadPointTextStrategy();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        document = BenchmarkDocuments.generate(1, linesPerPage, 3);
+        page = document.getPage(0);
+        glyphs = PageGlyphs.extract(document, page, 1);
+        context = new PageContext(document, page, 1, new CancellablePdfRenderer(document));
+        context.getGlyphs();
+
+        markups = new ArrayList<>();
+        wordMarkups = new ArrayList<>();
+        rectangles = new ArrayList<>();
+        for (PDAnnotation annotation : page.getAnnotations()) {
+            if (annotation instanceof PDAnnotationTextMarkup) {
+                markups.add((PDAnnotationTextMarkup) annotation);
+                wordMarkups.add(splitIntoWords((PDAnnotationTextMarkup) annotation, 8));
+                rectangles.add(annotation.getRectangle());
+            }
+        }
+    }
+
+    /**
+     * The same highlight with one quad per word, as some viewers write them.
+     */
+    private static PDAnnotationTextMarkup splitIntoWords(PDAnnotationTextMarkup markup, int words) {
+        PDRectangle rect = markup.getRectangle();
+        float[] quadPoints = new float[words * 8];
+        for (int w = 0; w < words; w++) {
+            float x1 = rect.getLowerLeftX() + rect.getWidth() * w / words;
+            float x2 = rect.getLowerLeftX() + rect.getWidth() * (w + 1) / words;
+            float[] quad = {x1, rect.getUpperRightY(), x2, rect.getUpperRightY(), x1, rect.getLowerLeftY(), x2, rect.getLowerLeftY()};
+            System.arraycopy(quad, 0, quadPoints, w * 8, 8);
+        }
+        PDAnnotationTextMarkup split = BenchmarkDocuments.highlight(rect.getLowerLeftX(), rect.getLowerLeftY(),
+            rect.getUpperRightX(), rect.getUpperRightY(), markup.getColor().getComponents());
+        split.setQuadPoints(quadPoints);
+        return split;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        document.close();
+    }
+
+    /**
+     * All highlights of the page through the pipeline's quad point strategy (PDF-space glyph centers).
+     */
+    @Benchmark
+    public void quadPointStrategy(Blackhole blackhole) throws IOException {
+        for (PDAnnotationTextMarkup markup : markups) {
+            blackhole.consume(quadPointStrategy.extractText(markup, context));
+        }
+    }
+
+    /**
+     * The same highlights with one quad per word, which {@link QuadGeometry} merges back into lines.
+     */
+    @Benchmark
+    public void quadPointStrategyWordQuads(Blackhole blackhole) throws IOException {
+        for (PDAnnotationTextMarkup markup : wordMarkups) {
+            blackhole.consume(quadPointStrategy.extractText(markup, context));
+        }
+    }
+
+    /**
+     * All highlight rectangles of the page through the advanced extractor's rectangle scan.
+     */
+    @Benchmark
+    public void advancedRectangle(Blackhole blackhole) {
+        for (PDRectangle rect : rectangles) {
+            blackhole.consume(advanced.extractTextFromRectangle(rect, glyphs));
+        }
+    }
+
+    /**
+     * The text stripper pass and raw-order sort, paid once per page that is not in the glyph cache.
+     */
+    @Benchmark
+    public PageGlyphs extractGlyphs() throws IOException {
+        return PageGlyphs.extract(document, page, 1);
+    }
+}
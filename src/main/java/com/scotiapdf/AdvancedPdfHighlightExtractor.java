@@ -5,24 +5,71 @@ import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.pdfbox.text.TextPosition;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-import java.awt.Color;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AdvancedPdfHighlightExtractor {
     
+    static {
+        QuietMode.init();
+    }
+    
+    private static final Logger LOG = LoggerFactory.getLogger(AdvancedPdfHighlightExtractor.class);
+    
+    static final String EXTRACTION_METHOD = "Advanced coordinate-based text extraction";
+    
+    /** Pages with at least this many target highlights are matched in parallel; {@value #PARALLEL_PROPERTY} overrides it. */
+    public static final String PARALLEL_PROPERTY = "highlight.parallelMatching.minRegions";
+    private static final int PARALLEL_MIN_REGIONS = Integer.getInteger(PARALLEL_PROPERTY, 64);
+    // Smallest number of regions handed to one matching task
+    private static final int PARALLEL_CHUNK = 16;
+    private static final int MATCHING_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final AtomicInteger MATCHING_THREAD_IDS = new AtomicInteger();
+    // Shared by every extractor; daemon threads so it never keeps the JVM alive
+    private static final ExecutorService MATCHING_POOL = Executors.newFixedThreadPool(MATCHING_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "highlight-matcher-" + MATCHING_THREAD_IDS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private HighlightResultWriter resultWriter;
+    
+    /**
+     * A target highlight read from its annotation: the color, quad points and a detached copy of the rectangle,
+     * so matching tasks never touch the document's objects.
+     */
+    private static final class MarkupRegion {
+        final String colorName;
+        final float[] quadPoints;
+        final PDRectangle rectangle;
+        
+        MarkupRegion(String colorName, float[] quadPoints, PDRectangle rectangle) {
+            this.colorName = colorName;
+            this.quadPoints = quadPoints;
+            this.rectangle = rectangle;
+        }
+    }
+    
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java AdvancedPdfHighlightExtractor <pdf-file-path>");
+        args = QuietMode.apply(args);
+        if (args.length != 1 && !(args.length == 3 && HighlightResultWriter.isOutputOption(args[1]))) {
+            System.out.println("Usage: java AdvancedPdfHighlightExtractor <pdf-file-path> [--quiet] [--jsonl <output.jsonl[.gz]> | --archive <output.hla>]");
             System.exit(1);
         }
         
@@ -30,53 +77,62 @@ public class AdvancedPdfHighlightExtractor {
         AdvancedPdfHighlightExtractor extractor = new AdvancedPdfHighlightExtractor();
         
         try {
-            extractor.extractHighlightsWithText(pdfPath);
+            if (args.length == 3) {
+                try (HighlightResultWriter writer = HighlightResultWriter.open(args[1], new File(args[2]), new File(pdfPath).getName(), EXTRACTION_METHOD)) {
+                    extractor.setResultWriter(writer);
+                    extractor.extractHighlightsWithText(pdfPath);
+                }
+            } else {
+                extractor.extractHighlightsWithText(pdfPath);
+            }
         } catch (IOException e) {
-            System.err.println("Error processing PDF: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error processing PDF {}", pdfPath, e);
         }
     }
     
+    public void setResultWriter(HighlightResultWriter resultWriter) {
+        this.resultWriter = resultWriter;
+    }
+    
     public void extractHighlightsWithText(String pdfPath) throws IOException {
         List<HighlightedText> highlights = new ArrayList<>();
         
-        try (PDDocument document = PDDocument.load(new File(pdfPath))) {
-            System.out.println("=".repeat(60));
-            System.out.println("ADVANCED PDF HIGHLIGHT EXTRACTION");
-            System.out.println("=".repeat(60));
-            System.out.println("File: " + pdfPath);
-            System.out.println("Total pages: " + document.getNumberOfPages());
-            System.out.println();
+        StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(pdfPath);
+        try (PDDocument document = DocumentLoader.load(new File(pdfPath).length(), () -> PDDocument.load(new File(pdfPath)))) {
+            LOG.info("Advanced extraction of {} ({} pages)", pdfPath, document.getNumberOfPages());
             
+            PageWindow pageWindow = PageWindow.fromSystemProperties();
             for (int pageNum = 0; pageNum < document.getNumberOfPages(); pageNum++) {
+                pageWindow.beforePage(document, pageNum, 0);
                 PDPage page = document.getPage(pageNum);
-                System.out.println("Processing page " + (pageNum + 1) + "...");
                 
                 // Extract highlights using coordinate-based text extraction
+                PageExtractionEvent pageEvent = PageExtractionEvent.start();
                 List<HighlightedText> pageHighlights = extractHighlightsFromPage(document, page, pageNum + 1);
+                pageEvent.finish(pageNum + 1, "advanced", pageHighlights.size());
                 highlights.addAll(pageHighlights);
+
+                if (resultWriter != null) {
+                    resultWriter.writePage(pageHighlights);
+                }
                 
-                System.out.println("Found " + pageHighlights.size() + " highlights on page " + (pageNum + 1));
+                LOG.debug("Found {} highlights on page {}", pageHighlights.size(), pageNum + 1);
             }
             
             // Output results
             outputResults(highlights);
             
+        } finally {
+            timer.close();
         }
     }
     
     private List<HighlightedText> extractHighlightsFromPage(PDDocument document, PDPage page, int pageNumber) throws IOException {
-        List<HighlightedText> highlights = new ArrayList<>();
-        
         // Get all annotations on the page
-        List<PDAnnotation> annotations = page.getAnnotations();
-        
-        // Create a text stripper for this page to get all text positions
-        TextPositionExtractor textExtractor = new TextPositionExtractor();
-        textExtractor.setStartPage(pageNumber);
-        textExtractor.setEndPage(pageNumber);
-        textExtractor.getText(document); // This populates the text positions
+        List<PDAnnotation> annotations = StageMetrics.shared().time(ExtractionStage.ANNOTATIONS, page::getAnnotations);
         
+        // Read the target highlights here: PDFBox objects stay on this thread, matching only sees copies
+        List<MarkupRegion> regions = new ArrayList<>();
         for (PDAnnotation annotation : annotations) {
             if (annotation instanceof PDAnnotationTextMarkup) {
                 PDAnnotationTextMarkup markup = (PDAnnotationTextMarkup) annotation;
@@ -84,56 +140,119 @@ public class AdvancedPdfHighlightExtractor {
                 // Check if this is a target color
                 String colorName = getColorName(markup);
                 if (colorName != null) {
-                    
-                    // Extract actual text from the highlighted area
-                    String extractedText = extractTextFromHighlightArea(markup, textExtractor.getTextPositions(), page);
-                    
-                    if (extractedText != null && !extractedText.trim().isEmpty()) {
-                        highlights.add(new HighlightedText(
-                            extractedText.trim(),
-                            colorName,
-                            pageNumber,
-                            markup.getRectangle()
-                        ));
-                        
-                        System.out.println("  " + colorName + ": " + 
-                                         (extractedText.length() > 50 ? extractedText.substring(0, 50) + "..." : extractedText));
-                    }
+                    PDRectangle rect = markup.getRectangle();
+                    regions.add(new MarkupRegion(colorName, markup.getQuadPoints(),
+                        rect != null ? new PDRectangle(rect.getLowerLeftX(), rect.getLowerLeftY(), rect.getWidth(), rect.getHeight()) : null));
                 }
             }
         }
+        if (regions.isEmpty()) {
+            return new ArrayList<>();
+        }
         
+        // Glyph positions come from the shared page cache and are only fetched once a target highlight is found.
+        // PageGlyphs is immutable and carries its raw-coordinate order, so matching tasks share it as is.
+        PageGlyphs glyphs = PageGlyphCache.shared().get(document, page, pageNumber);
+        
+        HighlightedText[] matched = new HighlightedText[regions.size()];
+        if (regions.size() < PARALLEL_MIN_REGIONS || MATCHING_THREADS < 2) {
+            matchRegions(regions, 0, regions.size(), pageNumber, glyphs, matched);
+        } else {
+            matchInParallel(regions, pageNumber, glyphs, matched);
+        }
+        
+        // Gathered in annotation order, whichever thread matched them
+        List<HighlightedText> highlights = new ArrayList<>();
+        for (HighlightedText highlight : matched) {
+            if (highlight != null) {
+                highlights.add(highlight);
+            }
+        }
         return highlights;
     }
     
-    private String extractTextFromHighlightArea(PDAnnotationTextMarkup markup, List<TextPosition> allTextPositions, PDPage page) {
+    /**
+     * Splits the regions of an annotation-dense page into contiguous chunks matched on the shared matching pool.
+     * Each task works for the document of the calling thread, so its region events and CPU time are attributed to it.
+     */
+    private void matchInParallel(List<MarkupRegion> regions, int pageNumber, PageGlyphs glyphs,
+                                 HighlightedText[] matched) throws IOException {
+        String documentId = StageMetrics.shared().currentDocumentId();
+        DocumentResources resources = StageMetrics.shared().currentResources();
+        int chunk = Math.max(PARALLEL_CHUNK, (regions.size() + MATCHING_THREADS * 4 - 1) / (MATCHING_THREADS * 4));
+        
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < regions.size(); from += chunk) {
+            int start = from;
+            int end = Math.min(regions.size(), from + chunk);
+            tasks.add(() -> {
+                if (documentId == null || resources == null) {
+                    matchRegions(regions, start, end, pageNumber, glyphs, matched);
+                    return null;
+                }
+                StageMetrics.DocumentTimer part = StageMetrics.shared().startDocumentPart(documentId, resources);
+                try {
+                    matchRegions(regions, start, end, pageNumber, glyphs, matched);
+                } finally {
+                    part.close();
+                }
+                return null;
+            });
+        }
+        
+        try {
+            for (Future<Void> result : MATCHING_POOL.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while matching highlights on page " + pageNumber);
+        } catch (ExecutionException e) {
+            throw new IOException("Matching failed on page " + pageNumber + ": " + e.getCause(), e.getCause());
+        }
+    }
+    
+    // Matches regions [from, to) into the same slots of matched; tasks write disjoint slots
+    private void matchRegions(List<MarkupRegion> regions, int from, int to, int pageNumber, PageGlyphs glyphs,
+                              HighlightedText[] matched) {
+        for (int i = from; i < to; i++) {
+            MarkupRegion region = regions.get(i);
+            
+            // Extract actual text from the highlighted area
+            HighlightRegionEvent regionEvent = HighlightRegionEvent.start();
+            String extractedText = extractTextFromHighlightArea(region.quadPoints, region.rectangle, glyphs);
+            regionEvent.finish(pageNumber, "advanced", region.colorName, region.rectangle, extractedText);
+            
+            if (extractedText != null && !extractedText.trim().isEmpty()) {
+                matched[i] = new HighlightedText(
+                    extractedText.trim(),
+                    region.colorName,
+                    pageNumber,
+                    region.rectangle
+                );
+                
+                LOG.debug("  {}: {}", region.colorName, extractedText);
+            }
+        }
+    }
+    
+    private String extractTextFromHighlightArea(float[] quadPoints, PDRectangle rectangle, PageGlyphs glyphs) {
         try {
-            // Get the quad points that define the highlighted area
-            float[] quadPoints = markup.getQuadPoints();
+            // The quad points define the highlighted area
             if (quadPoints == null || quadPoints.length == 0) {
                 // Fallback to rectangle if no quad points
-                PDRectangle rect = markup.getRectangle();
-                return extractTextFromRectangle(rect, allTextPositions);
+                return extractTextFromRectangle(rectangle, glyphs);
             }
             
-            // Convert quad points to rectangles and extract text
+            // Merge the quads into lines; each line scans the page once and its quads only check the line's glyphs
             StringBuilder extractedText = new StringBuilder();
             
-            // Process quad points in groups of 8 (4 points = 1 rectangle)
-            for (int i = 0; i < quadPoints.length; i += 8) {
-                if (i + 7 < quadPoints.length) {
-                    // Create rectangle from quad points
-                    float minX = Math.min(Math.min(quadPoints[i], quadPoints[i + 2]), 
-                                         Math.min(quadPoints[i + 4], quadPoints[i + 6]));
-                    float maxX = Math.max(Math.max(quadPoints[i], quadPoints[i + 2]), 
-                                         Math.max(quadPoints[i + 4], quadPoints[i + 6]));
-                    float minY = Math.min(Math.min(quadPoints[i + 1], quadPoints[i + 3]), 
-                                         Math.min(quadPoints[i + 5], quadPoints[i + 7]));
-                    float maxY = Math.max(Math.max(quadPoints[i + 1], quadPoints[i + 3]), 
-                                         Math.max(quadPoints[i + 5], quadPoints[i + 7]));
-                    
-                    PDRectangle rect = new PDRectangle(minX, minY, maxX - minX, maxY - minY);
-                    String rectText = extractTextFromRectangle(rect, allTextPositions);
+            for (QuadGeometry.Line line : QuadGeometry.lines(quadPoints)) {
+                int[] lineGlyphs = glyphsInRectangle(line.toRectangle(), glyphs);
+                for (int q = 0; q < line.getQuadCount(); q++) {
+                    float[] quad = line.getQuad(q);
+                    PDRectangle rect = new PDRectangle(quad[0], quad[1], quad[2] - quad[0], quad[3] - quad[1]);
+                    String rectText = extractTextFromRectangle(rect, glyphs, lineGlyphs);
                     
                     if (rectText != null && !rectText.trim().isEmpty()) {
                         if (extractedText.length() > 0) {
@@ -147,82 +266,74 @@ public class AdvancedPdfHighlightExtractor {
             return extractedText.toString();
             
         } catch (Exception e) {
-            System.out.println("    Error extracting text: " + e.getMessage());
+            LOG.warn("Error extracting text: {}", e.getMessage());
             return null;
         }
     }
     
-    private String extractTextFromRectangle(PDRectangle rect, List<TextPosition> allTextPositions) {
+    // Scans the page's glyphs in raw order, top to bottom, then left to right
+    String extractTextFromRectangle(PDRectangle rect, PageGlyphs glyphs) {
         StringBuilder text = new StringBuilder();
         
-        // Sort text positions by Y coordinate (top to bottom), then X coordinate (left to right)
-        List<TextPosition> sortedPositions = new ArrayList<>(allTextPositions);
-        sortedPositions.sort((t1, t2) -> {
-            int yCompare = Float.compare(t2.getY(), t1.getY()); // Reverse Y (PDF coordinates)
-            if (yCompare != 0) return yCompare;
-            return Float.compare(t1.getX(), t2.getX());
-        });
-        
         float tolerance = 2.0f; // Tolerance for coordinate matching
         
-        for (TextPosition textPos : sortedPositions) {
+        for (int i = 0; i < glyphs.size(); i++) {
+            int glyph = glyphs.getRawOrder(i);
             // Check if this text position is within the rectangle bounds
-            if (isTextPositionInRectangle(textPos, rect, tolerance)) {
-                text.append(textPos.getUnicode());
+            if (isTextPositionInRectangle(glyphs.getX(glyph), glyphs.getY(glyph), rect, tolerance)) {
+                glyphs.appendUnicode(glyph, text);
             }
         }
         
         return text.toString();
     }
     
-    private boolean isTextPositionInRectangle(TextPosition textPos, PDRectangle rect, float tolerance) {
-        float textX = textPos.getX();
-        float textY = textPos.getY();
+    // Same scan restricted to candidates, which are already in raw order
+    private String extractTextFromRectangle(PDRectangle rect, PageGlyphs glyphs, int[] candidates) {
+        StringBuilder text = new StringBuilder();
         
-        return textX >= (rect.getLowerLeftX() - tolerance) &&
-               textX <= (rect.getUpperRightX() + tolerance) &&
-               textY >= (rect.getLowerLeftY() - tolerance) &&
-               textY <= (rect.getUpperRightY() + tolerance);
-    }
-    
-    private String getColorName(PDAnnotationTextMarkup markup) {
-        try {
-            if (markup.getColor() == null) return null;
-            
-            float[] colorComponents = markup.getColor().getComponents();
-            if (colorComponents.length < 3) return null;
-            
-            Color color = new Color(colorComponents[0], colorComponents[1], colorComponents[2]);
-            return identifyTargetColor(color);
-            
-        } catch (Exception e) {
-            return null;
+        float tolerance = 2.0f;
+        
+        for (int glyph : candidates) {
+            if (isTextPositionInRectangle(glyphs.getX(glyph), glyphs.getY(glyph), rect, tolerance)) {
+                glyphs.appendUnicode(glyph, text);
+            }
         }
+        
+        return text.toString();
     }
     
-    private String identifyTargetColor(Color color) {
-        if (color == null) return null;
-        
-        int r = color.getRed();
-        int g = color.getGreen();
-        int b = color.getBlue();
+    // The glyphs inside the rectangle, in raw order
+    private int[] glyphsInRectangle(PDRectangle rect, PageGlyphs glyphs) {
+        int[] matches = new int[16];
+        int count = 0;
         
-        // Green-ish colors (including light green like RGB(197, 251, 114))
-        if (g > 200 && g > r && g > b) {
-            return "GREEN";
-        }
+        float tolerance = 2.0f;
         
-        // Yellow-ish colors (including orange-yellow like RGB(255, 193, 0))
-        if (r > 200 && g > 150 && b < 100) {
-            return "YELLOW";
+        for (int i = 0; i < glyphs.size(); i++) {
+            int glyph = glyphs.getRawOrder(i);
+            if (isTextPositionInRectangle(glyphs.getX(glyph), glyphs.getY(glyph), rect, tolerance)) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = glyph;
+            }
         }
         
-        // Purple-ish colors (including RGB(150, 67, 252))
-        if (b > 200 && r > 100 && g < 150) {
-            return "PURPLE";
-        }
+        return Arrays.copyOf(matches, count);
+    }
+    
+    private boolean isTextPositionInRectangle(float textX, float textY, PDRectangle rect, float tolerance) {
         
-        return null;
+        return textX >= (rect.getLowerLeftX() - tolerance) &&
+               textX <= (rect.getUpperRightX() + tolerance) &&
+               textY >= (rect.getLowerLeftY() - tolerance) &&
+               textY <= (rect.getUpperRightY() + tolerance);
+    }
+    
+    private String getColorName(PDAnnotationTextMarkup markup) {
+        HighlightColor color = HighlightColor.fromAnnotation(markup);
+        return color != null ? color.name() : null;
     }
     
     private void outputResults(List<HighlightedText> highlights) {
@@ -264,32 +375,15 @@ public class AdvancedPdfHighlightExtractor {
         }
         
         // Save to JSON file
-        saveToJsonFile(highlights, groupedHighlights);
+        saveToJsonFile(highlights);
     }
     
-    private void saveToJsonFile(List<HighlightedText> highlights, Map<String, List<HighlightedText>> groupedHighlights) {
+    private void saveToJsonFile(List<HighlightedText> highlights) {
+        long start = System.nanoTime();
         try {
             ObjectMapper mapper = new ObjectMapper();
-            ObjectNode root = mapper.createObjectNode();
-            
-            root.put("totalHighlights", highlights.size());
-            root.put("extractionDate", new Date().toString());
-            root.put("extractionMethod", "Advanced coordinate-based text extraction");
-            
-            ObjectNode colorGroups = mapper.createObjectNode();
-            for (Map.Entry<String, List<HighlightedText>> entry : groupedHighlights.entrySet()) {
-                ArrayNode colorArray = mapper.createArrayNode();
-                for (HighlightedText highlight : entry.getValue()) {
-                    ObjectNode highlightNode = mapper.createObjectNode();
-                    highlightNode.put("text", highlight.getText());
-                    highlightNode.put("page", highlight.getPageNumber());
-                    highlightNode.put("coordinates", highlight.getCoordinates().toString());
-                    colorArray.add(highlightNode);
-                }
-                colorGroups.set(entry.getKey().toLowerCase(), colorArray);
-            }
-            
-            root.set("highlightsByColor", colorGroups);
+            ObjectNode root = HighlightJsonReport.build(mapper, highlights, EXTRACTION_METHOD);
+            HighlightJsonReport.putResources(mapper, root, StageMetrics.shared().currentResources());
             
             // Save to file
             String outputFileName = "advanced-highlights-extraction.json";
@@ -301,30 +395,9 @@ public class AdvancedPdfHighlightExtractor {
             }
             
         } catch (Exception e) {
-            System.out.println("Error saving JSON file: " + e.getMessage());
-        }
-    }
-    
-    // Custom text stripper to collect all text positions
-    private static class TextPositionExtractor extends PDFTextStripper {
-        private List<TextPosition> textPositions = new ArrayList<>();
-        
-        public TextPositionExtractor() throws IOException {
-            super();
-        }
-        
-        @Override
-        protected void processTextPosition(TextPosition text) {
-            textPositions.add(text);
-            super.processTextPosition(text);
-        }
-        
-        public List<TextPosition> getTextPositions() {
-            return textPositions;
-        }
-        
-        public void clearTextPositions() {
-            textPositions.clear();
+            LOG.error("Error saving JSON file", e);
+        } finally {
+            StageMetrics.shared().record(ExtractionStage.SERIALIZE, start);
         }
     }
 }
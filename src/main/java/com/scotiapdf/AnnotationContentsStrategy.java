@@ -0,0 +1,19 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+
+/**
+ * Uses the /Contents text that some annotation tools store on the highlight itself.
+ */
+public class AnnotationContentsStrategy implements HighlightExtractionStrategy {
+    
+    @Override
+    public String getName() {
+        return "annotation-contents";
+    }
+    
+    @Override
+    public String extractText(PDAnnotationTextMarkup markup, PageContext page) {
+        return markup.getContents();
+    }
+}
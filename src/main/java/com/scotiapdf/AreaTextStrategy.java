@@ -0,0 +1,42 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+import org.apache.pdfbox.text.PDFTextStripperByArea;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+
+/**
+ * Extracts the text inside the annotation rectangle with PDFBox's area text stripper.
+ */
+public class AreaTextStrategy implements HighlightExtractionStrategy {
+    
+    @Override
+    public String getName() {
+        return "area-stripper";
+    }
+    
+    @Override
+    public String extractText(PDAnnotationTextMarkup markup, PageContext page) throws IOException {
+        PDFTextStripperByArea stripper = new PDFTextStripperByArea();
+        stripper.setSortByPosition(true);
+        
+        // The stripper expects regions in display coordinates (origin top-left of the crop box)
+        PDRectangle rect = markup.getRectangle();
+        PDRectangle cropBox = page.getPage().getCropBox();
+        Rectangle2D region = new Rectangle2D.Float(
+            rect.getLowerLeftX() - cropBox.getLowerLeftX(),
+            cropBox.getUpperRightY() - rect.getUpperRightY(),
+            rect.getWidth(),
+            rect.getHeight()
+        );
+        
+        stripper.addRegion("highlight", region);
+        StageMetrics.shared().time(ExtractionStage.TEXT, () -> {
+            stripper.extractRegions(page.getPage());
+            return null;
+        });
+        return stripper.getTextForRegion("highlight");
+    }
+}
@@ -0,0 +1,722 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Processes many PDFs in one JVM on a shared work-stealing executor, writing one result
+ * file per document. Inputs may be PDF files, directories (searched recursively), glob
+ * patterns such as "scans/**.pdf", or "@manifest.txt" files listing one input per line.
+ *
+ * Documents are pre-scanned for a cost estimate and, by default, scheduled largest first
+ * (longest-processing-time-first) so a few huge files do not finish last on an otherwise idle
+ * pool. Documents above the split threshold are processed as independent page ranges and
+ * merged in page order before their result file is written.
+ *
+ * Every document (or page range) reserves its estimated peak memory from a shared
+ * {@link MemoryBudget} before it is loaded, so concurrent OCR renders cannot exhaust the heap.
+ *
+ * With a job id, completed documents and page ranges are recorded in a {@link CheckpointJournal};
+ * rerunning the same job skips them.
+ */
+public class BatchHighlightExtractor {
+
+    static {
+        QuietMode.init();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchHighlightExtractor.class);
+
+    enum OutputFormat {
+        JSON(".highlights.json"),
+        JSONL(".highlights.jsonl"),
+        ARCHIVE(".highlights.hla");
+
+        final String extension;
+
+        OutputFormat(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * Writes a complete result file for one document. JSON results include the resources the document
+         * used, when known.
+         */
+        void write(List<HighlightedText> highlights, Path pdf, Path output, DocumentResources resources) throws IOException {
+            if (this == JSON) {
+                ObjectMapper mapper = new ObjectMapper();
+                ObjectNode root = HighlightJsonReport.build(mapper, highlights, HighlightExtractionPipeline.EXTRACTION_METHOD);
+                HighlightJsonReport.putResources(mapper, root, resources);
+                HighlightJsonReport.save(mapper, root, output.toFile());
+            } else {
+                try (HighlightResultWriter writer = openWriter(pdf, output)) {
+                    writer.writePage(highlights);
+                }
+            }
+        }
+
+        /**
+         * Opens a page-by-page writer; not supported for JSON, which is written in one piece.
+         */
+        HighlightResultWriter openWriter(Path pdf, Path output) throws IOException {
+            String documentId = pdf.getFileName().toString();
+            if (this == ARCHIVE) {
+                return HighlightArchiveWriter.open(output.toFile(), documentId, HighlightExtractionPipeline.EXTRACTION_METHOD);
+            }
+            return JsonLinesWriter.open(output.toFile(), documentId, HighlightExtractionPipeline.EXTRACTION_METHOD);
+        }
+    }
+
+    private final HighlightExtractionPipeline pipeline;
+    private final Path outputDir;
+    private final OutputFormat format;
+    private final int threads;
+    private final LatencyStats latency = new LatencyStats();
+    private DocumentCostEstimator costEstimator = new DocumentCostEstimator(false);
+    private boolean largestFirst = true;
+    private int splitPages = 0;
+    private MemoryBudget memoryBudget = MemoryBudget.ofMaxHeap(0.75);
+    private boolean tempFileLoading = false;
+    private CheckpointJournal journal;
+    private long progressIntervalSeconds = ProgressReporter.DEFAULT_INTERVAL_SECONDS;
+    private volatile ProgressReporter progress;
+
+    public BatchHighlightExtractor(HighlightExtractionPipeline pipeline, Path outputDir, OutputFormat format, int threads) {
+        this.pipeline = pipeline;
+        this.outputDir = outputDir;
+        this.format = format;
+        this.threads = threads;
+    }
+
+    public void setCostEstimator(DocumentCostEstimator costEstimator) {
+        this.costEstimator = costEstimator;
+    }
+
+    /**
+     * Schedules the most expensive documents first (default) instead of in input order.
+     */
+    public void setLargestFirst(boolean largestFirst) {
+        this.largestFirst = largestFirst;
+    }
+
+    /**
+     * Splits documents with more pages than this into ranges of this many pages; 0 disables splitting.
+     */
+    public void setSplitPages(int splitPages) {
+        this.splitPages = splitPages;
+    }
+
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Buffers document streams in temp files instead of the heap (PDFBox MemoryUsageSetting).
+     */
+    public void setTempFileLoading(boolean tempFileLoading) {
+        this.tempFileLoading = tempFileLoading;
+    }
+
+    /**
+     * Records completed work in the journal and skips work it already lists.
+     */
+    public void setCheckpointJournal(CheckpointJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Seconds between progress lines; 0 disables them.
+     */
+    public void setProgressIntervalSeconds(long progressIntervalSeconds) {
+        this.progressIntervalSeconds = progressIntervalSeconds;
+    }
+
+    /**
+     * The journal of a job lives in a hidden directory of the output directory, next to its page-range part files.
+     */
+    static Path checkpointJournalPath(Path outputDir, String jobId) {
+        return outputDir.resolve(".checkpoint-" + jobId).resolve("journal.log");
+    }
+
+    public static void main(String[] args) {
+        args = QuietMode.apply(args);
+        Path outputDir = Paths.get("batch-output");
+        OutputFormat format = OutputFormat.JSON;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean includeOcr = false;
+        boolean largestFirst = true;
+        int splitPages = 0;
+        long memoryBudgetMb = 0;
+        boolean tempFileLoading = false;
+        String jobId = null;
+        Path metricsFile = null;
+        long progressInterval = ProgressReporter.DEFAULT_INTERVAL_SECONDS;
+        List<String> inputs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--output-dir":
+                        outputDir = Paths.get(args[++i]);
+                        break;
+                    case "--format":
+                        format = OutputFormat.valueOf(args[++i].toUpperCase());
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--ocr":
+                        includeOcr = true;
+                        break;
+                    case "--schedule":
+                        largestFirst = !"fifo".equalsIgnoreCase(args[++i]);
+                        break;
+                    case "--split-pages":
+                        splitPages = Integer.parseInt(args[++i]);
+                        break;
+                    case "--memory-budget-mb":
+                        memoryBudgetMb = Long.parseLong(args[++i]);
+                        break;
+                    case "--load-mode":
+                        tempFileLoading = "tempfile".equalsIgnoreCase(args[++i]);
+                        break;
+                    case "--job-id":
+                        jobId = args[++i];
+                        break;
+                    case "--metrics-file":
+                        metricsFile = Paths.get(args[++i]);
+                        break;
+                    case "--progress-interval":
+                        progressInterval = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        inputs.add(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            inputs.clear();
+        }
+
+        if (inputs.isEmpty() || threads < 1) {
+            System.out.println("Usage: java BatchHighlightExtractor [--output-dir <dir>] [--format json|jsonl|archive] "
+                               + "[--threads <n>] [--ocr] [--schedule lpt|fifo] [--split-pages <n>] "
+                               + "[--memory-budget-mb <mb>] [--load-mode memory|tempfile] [--job-id <id>] "
+                               + "[--metrics-file <file.prom>] [--progress-interval <seconds>] [--quiet] <pdf-file | directory | glob | @manifest>...");
+            System.exit(1);
+        }
+
+        CheckpointJournal journal = null;
+        try {
+            List<Path> documents = resolveInputs(inputs);
+            LOG.info("Documents to process: {}", documents.size());
+
+            BatchHighlightExtractor batch = new BatchHighlightExtractor(
+                HighlightExtractionPipeline.withDefaultStrategies(includeOcr), outputDir, format, threads);
+            batch.setCostEstimator(new DocumentCostEstimator(includeOcr));
+            batch.setLargestFirst(largestFirst);
+            batch.setSplitPages(splitPages);
+            batch.setTempFileLoading(tempFileLoading);
+            batch.setProgressIntervalSeconds(progressInterval);
+            if (memoryBudgetMb > 0) {
+                batch.setMemoryBudget(new MemoryBudget(memoryBudgetMb * 1024 * 1024));
+            }
+            if (jobId != null) {
+                journal = CheckpointJournal.open(checkpointJournalPath(outputDir, jobId), 200);
+                batch.setCheckpointJournal(journal);
+            }
+            List<DocumentResult> results = batch.run(documents);
+            if (journal != null) {
+                journal.close();
+            }
+            if (metricsFile != null) {
+                StageMetrics.shared().writePrometheusFile(metricsFile);
+                LOG.info("Stage metrics written to {}", metricsFile.toAbsolutePath());
+            }
+
+            long failures = results.stream().filter(r -> !r.isSuccess()).count();
+            if (failures > 0) {
+                System.exit(2);
+            }
+        } catch (IOException | InterruptedException e) {
+            LOG.error("Batch failed", e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Expands files, directories, glob patterns and @manifest files into a de-duplicated list of PDFs.
+     */
+    public static List<Path> resolveInputs(List<String> inputs) throws IOException {
+        Set<Path> documents = new LinkedHashSet<>();
+        for (String input : inputs) {
+            resolveInput(input, Paths.get(""), documents);
+        }
+        return new ArrayList<>(documents);
+    }
+
+    private static void resolveInput(String input, Path baseDir, Set<Path> documents) throws IOException {
+        if (input.startsWith("@")) {
+            Path manifest = baseDir.resolve(input.substring(1));
+            for (String line : Files.readAllLines(manifest)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    // Relative entries are resolved against the manifest's directory
+                    Path manifestDir = manifest.toAbsolutePath().getParent();
+                    resolveInput(line, manifestDir, documents);
+                }
+            }
+        } else if (isGlob(input)) {
+            resolveGlob(input, baseDir, documents);
+        } else {
+            Path path = baseDir.resolve(input);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    walk.filter(Files::isRegularFile)
+                        .filter(BatchHighlightExtractor::isPdf)
+                        .sorted()
+                        .forEach(p -> documents.add(p.toAbsolutePath().normalize()));
+                }
+            } else if (Files.isRegularFile(path)) {
+                documents.add(path.toAbsolutePath().normalize());
+            } else {
+                throw new NoSuchFileException(path.toString(), null, "Input not found");
+            }
+        }
+    }
+
+    private static boolean isGlob(String input) {
+        return input.indexOf('*') >= 0 || input.indexOf('?') >= 0 || input.indexOf('[') >= 0 || input.indexOf('{') >= 0;
+    }
+
+    private static void resolveGlob(String pattern, Path baseDir, Set<Path> documents) throws IOException {
+        // Walk from the longest directory prefix that contains no glob characters
+        String normalized = pattern.replace('\\', '/');
+        int firstGlob = normalized.length();
+        for (char c : new char[] {'*', '?', '[', '{'}) {
+            int index = normalized.indexOf(c);
+            if (index >= 0) firstGlob = Math.min(firstGlob, index);
+        }
+        int lastSeparator = normalized.lastIndexOf('/', firstGlob);
+        Path root = baseDir.resolve(lastSeparator >= 0 ? normalized.substring(0, lastSeparator + 1) : ".");
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + normalized.substring(lastSeparator + 1));
+
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.filter(Files::isRegularFile)
+                .filter(p -> matcher.matches(root.relativize(p)))
+                .sorted()
+                .forEach(p -> documents.add(p.toAbsolutePath().normalize()));
+        }
+    }
+
+    static boolean isPdf(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".pdf");
+    }
+
+    public List<DocumentResult> run(List<Path> documents) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        Map<Path, Path> outputs = assignOutputFiles(documents, outputDir, format);
+
+        ExecutorService executor = Executors.newWorkStealingPool(threads);
+        StageMetrics.shared().setMemoryBudget(memoryBudget);
+        long start = System.nanoTime();
+        List<DocumentResult> results = new ArrayList<>();
+
+        List<Path> pending = documents;
+        if (journal != null) {
+            pending = new ArrayList<>();
+            for (Path document : documents) {
+                int highlightCount = journal.completedHighlightCount(document, outputs.get(document));
+                if (highlightCount >= 0) {
+                    results.add(new DocumentResult(document, outputs.get(document), highlightCount, 0, null));
+                } else {
+                    pending.add(document);
+                }
+            }
+            LOG.info("Resuming from {}: {} documents already completed", journal.getFile(), results.size());
+        }
+
+        try {
+            List<DocumentJob> jobs = planJobs(pending, outputs, executor);
+            progress = new ProgressReporter("documents", jobs.size(), progressIntervalSeconds);
+
+            // Work items are queued most expensive first; the pool picks them up in submission order
+            List<RangeTask> tasks = new ArrayList<>();
+            for (DocumentJob job : jobs) {
+                for (int i = 0; i < job.ranges.size(); i++) {
+                    tasks.add(new RangeTask(job, i));
+                }
+            }
+            if (largestFirst) {
+                tasks.sort(Comparator.comparingDouble(RangeTask::cost).reversed());
+            }
+            for (RangeTask task : tasks) {
+                executor.execute(() -> processRange(task.job, task.rangeIndex));
+            }
+
+            for (DocumentJob job : jobs) {
+                try {
+                    results.add(job.result.get());
+                } catch (ExecutionException e) {
+                    // processRange reports failures in the result; only errors like OOM complete it exceptionally
+                    throw new IOException("Worker failed: " + e.getCause(), e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            if (progress != null) {
+                progress.close();
+            }
+        }
+
+        printReport(results, System.nanoTime() - start);
+        return results;
+    }
+
+    /**
+     * Pre-scans all documents in parallel and cuts large ones into page ranges.
+     */
+    List<DocumentJob> planJobs(List<Path> documents, Map<Path, Path> outputs, ExecutorService executor) throws InterruptedException {
+        List<Callable<DocumentCostEstimator.Estimate>> scans = new ArrayList<>();
+        for (Path document : documents) {
+            scans.add(() -> costEstimator.estimate(document));
+        }
+        List<Future<DocumentCostEstimator.Estimate>> estimates = executor.invokeAll(scans);
+
+        List<DocumentJob> jobs = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            DocumentCostEstimator.Estimate estimate;
+            try {
+                estimate = estimates.get(i).get();
+            } catch (ExecutionException e) {
+                estimate = new DocumentCostEstimator.Estimate(0, -1, 0, 0, PDRectangle.LETTER.getWidth(), PDRectangle.LETTER.getHeight());
+            }
+            jobs.add(new DocumentJob(documents.get(i), outputs.get(documents.get(i)), estimate, splitPages));
+        }
+
+        if (largestFirst && !jobs.isEmpty()) {
+            DocumentJob largest = Collections.max(jobs, Comparator.comparingDouble(job -> job.estimate.getCost()));
+            LOG.info("Largest document: {} ({})", largest.pdf.getFileName(), largest.estimate);
+        }
+        long splitCount = jobs.stream().filter(job -> job.ranges.size() > 1).count();
+        if (splitCount > 0) {
+            LOG.info("Documents split into page ranges: {}", splitCount);
+        }
+        return jobs;
+    }
+
+    /**
+     * Gives every document its own output file. Documents sharing a file name get a path hash suffix.
+     */
+    static Map<Path, Path> assignOutputFiles(List<Path> documents, Path outputDir, OutputFormat format) {
+        Map<String, Long> nameCounts = documents.stream()
+            .collect(Collectors.groupingBy(BatchHighlightExtractor::baseName, Collectors.counting()));
+
+        Map<Path, Path> outputs = new HashMap<>();
+        for (Path document : documents) {
+            String name = baseName(document);
+            if (nameCounts.get(name) > 1) {
+                name = name + "-" + String.format("%08x", document.toString().hashCode());
+            }
+            outputs.put(document, outputDir.resolve(name + format.extension));
+        }
+        return outputs;
+    }
+
+    static String baseName(Path document) {
+        String fileName = document.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    void processRange(DocumentJob job, int rangeIndex) {
+        long reserved = 0;
+        try {
+            int[] range = job.ranges.get(rangeIndex);
+            Path completedPart = journal != null && job.ranges.size() > 1 ? journal.completedRange(job.pdf, range[0], range[1]) : null;
+
+            if (completedPart != null) {
+                job.markStarted();
+                try (HighlightArchiveReader reader = HighlightArchiveReader.open(completedPart.toFile())) {
+                    job.rangeResults.set(rangeIndex, reader.readAll());
+                }
+            } else {
+                reserved = memoryBudget.reserve(
+                    costEstimator.estimatePeakMemory(job.estimate, OcrPdfHighlightExtractor.DPI, tempFileLoading));
+                job.markStarted();
+
+                // Split documents are spread over threads, so only whole documents get per-document stage times
+                String documentId = job.pdf.toString();
+                try (StageMetrics.DocumentTimer timer = job.ranges.size() == 1
+                         ? StageMetrics.shared().startDocument(documentId, job.resources)
+                         : StageMetrics.shared().startDocumentPart(documentId, job.resources);
+                     PDDocument document = DocumentLoader.load(job.pdf.toFile().length(), () -> PDDocument.load(job.pdf.toFile(), loadingSetting()))) {
+                    if (job.ranges.size() == 1) {
+                        job.rangeResults.set(rangeIndex, extractAndWrite(document, job.pdf, job.output, timer));
+                    } else {
+                        List<HighlightedText> highlights = pipeline.extractHighlights(document, range[0], range[1], null);
+                        checkpointRange(job, range, highlights);
+                        job.rangeResults.set(rangeIndex, highlights);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail(e);
+        } catch (Exception e) {
+            job.fail(e);
+        } catch (Error e) {
+            // Errors like OOM fail the whole batch through run() instead of one document
+            job.fail(e);
+            job.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            memoryBudget.release(reserved);
+            // A range that failed before it started still needs a start time for the elapsed time
+            job.markStarted();
+            if (job.remainingRanges.decrementAndGet() == 0) {
+                completeJob(job);
+            }
+        }
+    }
+
+    /**
+     * Saves a completed page range to a part file next to the journal and records it.
+     */
+    private void checkpointRange(DocumentJob job, int[] range, List<HighlightedText> highlights) throws IOException {
+        if (journal == null) {
+            return;
+        }
+        Path part = partFile(job, range[0]);
+        Path temp = part.resolveSibling(part.getFileName() + ".tmp");
+        try (HighlightArchiveWriter writer = HighlightArchiveWriter.open(temp.toFile(), job.pdf.getFileName().toString(), HighlightExtractionPipeline.EXTRACTION_METHOD)) {
+            writer.writePage(highlights);
+        }
+        Files.move(temp, part, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.recordRange(job.pdf, job.inputVersion, range[0], range[1], part, highlights.size());
+    }
+
+    private Path partFile(DocumentJob job, int startPage) {
+        return journal.getFile().resolveSibling(job.output.getFileName() + ".p" + startPage + ".hla");
+    }
+
+    private MemoryUsageSetting loadingSetting() {
+        return tempFileLoading ? MemoryUsageSetting.setupTempFileOnly() : MemoryUsageSetting.setupMainMemoryOnly();
+    }
+
+    private void completeJob(DocumentJob job) {
+        if (job.result.isDone()) {
+            // A range failed with an Error, which run() rethrows
+            return;
+        }
+        // All ranges have closed their timers, so the worker threads' usage is in the account
+        long elapsed = System.nanoTime() - job.startNanos;
+        if (job.ranges.size() > 1) {
+            job.resources.setWallNanos(elapsed);
+        }
+
+        List<HighlightedText> highlights = new ArrayList<>();
+        if (job.error == null) {
+            for (int i = 0; i < job.ranges.size(); i++) {
+                List<HighlightedText> rangeResult = job.rangeResults.get(i);
+                if (rangeResult != null) {
+                    highlights.addAll(rangeResult);
+                }
+            }
+            if (job.ranges.size() > 1) {
+                try {
+                    format.write(highlights, job.pdf, job.output, job.resources);
+                } catch (Exception e) {
+                    job.fail(e);
+                }
+            }
+        }
+
+        if (job.error == null && journal != null) {
+            try {
+                journal.recordDocument(job.pdf, job.inputVersion, job.output, highlights.size());
+                if (job.ranges.size() > 1) {
+                    for (int[] range : job.ranges) {
+                        Files.deleteIfExists(partFile(job, range[0]));
+                    }
+                }
+            } catch (IOException e) {
+                // The result itself is complete; without the record it is just redone on resume
+                LOG.warn("Could not checkpoint {}: {}", job.pdf.getFileName(), e.getMessage());
+            }
+        }
+
+        latency.record(elapsed);
+        progress.itemCompleted(highlights.size());
+        if (job.error == null) {
+            LOG.info("{}: {} highlights in {} ms", job.pdf.getFileName(), highlights.size(), String.format("%.1f", elapsed / 1_000_000.0));
+            job.result.complete(new DocumentResult(job.pdf, job.output, highlights.size(), elapsed, null, job.resources));
+        } else {
+            LOG.warn("{} failed: {}", job.pdf.getFileName(), job.error);
+            job.result.complete(new DocumentResult(job.pdf, job.output, 0, elapsed, job.error, job.resources));
+        }
+    }
+
+    private List<HighlightedText> extractAndWrite(PDDocument document, Path pdf, Path output, StageMetrics.DocumentTimer timer) throws IOException {
+        if (format == OutputFormat.JSON) {
+            List<HighlightedText> highlights = pipeline.extractHighlights(document, null);
+            format.write(highlights, pdf, output, timer.getResources());
+            return highlights;
+        }
+        // Streaming formats are written page by page
+        try (HighlightResultWriter writer = format.openWriter(pdf, output)) {
+            return pipeline.extractHighlights(document, writer);
+        }
+    }
+
+    private void printReport(List<DocumentResult> results, long elapsedNanos) {
+        long succeeded = results.stream().filter(DocumentResult::isSuccess).count();
+        long highlights = results.stream().mapToLong(DocumentResult::getHighlightCount).sum();
+        double seconds = elapsedNanos / 1_000_000_000.0;
+
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("BATCH RESULTS");
+        System.out.println("=".repeat(60));
+        System.out.println("Documents: " + results.size() + " (" + succeeded + " succeeded, " + (results.size() - succeeded) + " failed)");
+        System.out.println("Highlights: " + highlights);
+        System.out.println(String.format("Wall time: %.1f s, throughput: %.2f docs/sec", seconds, seconds > 0 ? results.size() / seconds : 0.0));
+        System.out.println("Output directory: " + outputDir.toAbsolutePath());
+        // The rest is diagnostics, which quiet mode leaves out
+        if (!QuietMode.isEnabled()) {
+            System.out.println("Latency per document: " + latency);
+            printResourceTotals(results);
+            System.out.println("Memory budget: " + memoryBudget);
+            System.out.println("Page glyph cache: " + PageGlyphCache.shared());
+            System.out.println("Shared resource cache: " + SharedResourceCache.shared());
+            if (journal != null) {
+                System.out.println("Checkpoint journal: " + journal);
+            }
+            System.out.println();
+            pipeline.printStrategyReport();
+            System.out.println();
+            StageMetrics.shared().printReport();
+        }
+
+        for (DocumentResult result : results) {
+            if (!result.isSuccess()) {
+                System.out.println("FAILED: " + result.getInput() + " - " + result.getError());
+            }
+        }
+    }
+
+    private void printResourceTotals(List<DocumentResult> results) {
+        long cpuNanos = 0;
+        long allocatedBytes = 0;
+        DocumentResult heaviest = null;
+        for (DocumentResult result : results) {
+            DocumentResources resources = result.getResources();
+            if (resources == null) {
+                continue;
+            }
+            cpuNanos += resources.getCpuNanos();
+            allocatedBytes += resources.getAllocatedBytes();
+            if (heaviest == null || resources.getCpuNanos() > heaviest.getResources().getCpuNanos()) {
+                heaviest = result;
+            }
+        }
+        if (heaviest != null) {
+            System.out.println(String.format("CPU time: %.1f s, allocated: %.1f MB", cpuNanos / 1e9, allocatedBytes / (1024.0 * 1024.0)));
+            System.out.println("Most expensive document: " + heaviest.getInput().getFileName() + " (" + heaviest.getResources() + ")");
+        }
+    }
+
+    /**
+     * One document of the batch, possibly cut into page ranges that are processed independently.
+     */
+    static class DocumentJob {
+        final Path pdf;
+        final Path output;
+        final DocumentCostEstimator.Estimate estimate;
+        // Taken before any range reads the PDF, so the journal never marks a newer version as done
+        final CheckpointJournal.InputVersion inputVersion;
+        final List<int[]> ranges = new ArrayList<>();
+        final AtomicReferenceArray<List<HighlightedText>> rangeResults;
+        final AtomicInteger remainingRanges;
+        final CompletableFuture<DocumentResult> result = new CompletableFuture<>();
+        final DocumentResources resources = new DocumentResources();
+        private final AtomicBoolean started = new AtomicBoolean();
+        volatile long startNanos;
+        volatile String error;
+
+        DocumentJob(Path pdf, Path output, DocumentCostEstimator.Estimate estimate, int splitPages) {
+            this.pdf = pdf;
+            this.output = output;
+            this.estimate = estimate;
+            this.inputVersion = CheckpointJournal.InputVersion.of(pdf);
+
+            int pageCount = estimate.getPageCount();
+            if (splitPages > 0 && pageCount > splitPages) {
+                for (int start = 0; start < pageCount; start += splitPages) {
+                    ranges.add(new int[] {start, Math.min(pageCount, start + splitPages)});
+                }
+            } else {
+                ranges.add(new int[] {0, Integer.MAX_VALUE});
+            }
+            this.rangeResults = new AtomicReferenceArray<>(ranges.size());
+            this.remainingRanges = new AtomicInteger(ranges.size());
+        }
+
+        void markStarted() {
+            if (started.compareAndSet(false, true)) {
+                startNanos = System.nanoTime();
+            }
+        }
+
+        void fail(Throwable e) {
+            if (error == null) {
+                error = e.toString();
+            }
+        }
+
+        double rangeCost(int rangeIndex) {
+            if (ranges.size() == 1) {
+                return estimate.getCost();
+            }
+            int[] range = ranges.get(rangeIndex);
+            return estimate.getCost() * (range[1] - range[0]) / estimate.getPageCount();
+        }
+    }
+
+    private static class RangeTask {
+        final DocumentJob job;
+        final int rangeIndex;
+
+        RangeTask(DocumentJob job, int rangeIndex) {
+            this.job = job;
+            this.rangeIndex = rangeIndex;
+        }
+
+        double cost() {
+            return job.rangeCost(rangeIndex);
+        }
+    }
+}
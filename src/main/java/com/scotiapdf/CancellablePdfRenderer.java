@@ -0,0 +1,61 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.rendering.PageDrawer;
+import org.apache.pdfbox.rendering.PageDrawerParameters;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A PDFRenderer that gives up on a page once a {@link Deadline} passes, so a corrupt or pathological
+ * content stream cannot hold a worker. The deadline is checked between content stream operators, including
+ * those of nested forms; a single long operator (one huge image) still runs to completion.
+ */
+public class CancellablePdfRenderer extends PDFRenderer {
+
+    // Reading the clock costs more than many operators, so it is read once per this many operators
+    private static final int CHECK_INTERVAL = 256;
+
+    private Deadline deadline = Deadline.NONE;
+
+    public CancellablePdfRenderer(PDDocument document) {
+        super(document);
+    }
+
+    /**
+     * Renders the page, throwing an {@link ExtractionTimeoutException} if the deadline passes first.
+     */
+    public BufferedImage renderImageWithDPI(int pageIndex, float dpi, ImageType imageType, Deadline deadline) throws IOException {
+        this.deadline = deadline;
+        try {
+            return renderImageWithDPI(pageIndex, dpi, imageType);
+        } finally {
+            this.deadline = Deadline.NONE;
+        }
+    }
+
+    @Override
+    protected PageDrawer createPageDrawer(PageDrawerParameters parameters) throws IOException {
+        Deadline pageDeadline = deadline;
+        if (!pageDeadline.isBounded()) {
+            return super.createPageDrawer(parameters);
+        }
+        return new PageDrawer(parameters) {
+            private int operators;
+
+            @Override
+            protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+                if (++operators % CHECK_INTERVAL == 0) {
+                    pageDeadline.check();
+                }
+                super.processOperator(operator, operands);
+            }
+        };
+    }
+}
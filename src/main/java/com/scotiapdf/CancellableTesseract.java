@@ -0,0 +1,59 @@
+package com.scotiapdf;
+
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A Tesseract instance whose recognition stops once a {@link Deadline} passes. Recognition runs through the
+ * C API with a progress monitor, and Tesseract polls the monitor's cancel callback between words, so a
+ * region that makes it spin returns its partial text instead of holding the thread. Not thread-safe, like
+ * Tesseract itself.
+ */
+class CancellableTesseract extends Tesseract {
+
+    private final ITessAPI.ETEXT_DESC monitor = new ITessAPI.ETEXT_DESC();
+    // Kept in a field: the native side only holds a pointer, which must not outlive the callback object
+    private final ITessAPI.CANCEL_FUNC cancel;
+    private Deadline deadline = Deadline.NONE;
+    private boolean cancelled;
+
+    CancellableTesseract() {
+        cancel = (cancelThis, words) -> {
+            cancelled = cancelled || deadline.isExpired();
+            return cancelled;
+        };
+        monitor.cancel = cancel;
+    }
+
+    /**
+     * OCRs the image, throwing an {@link ExtractionTimeoutException} if the deadline passes before or during
+     * recognition. The partial text of a cancelled call is discarded.
+     */
+    String doOCR(BufferedImage image, Deadline deadline) throws TesseractException, ExtractionTimeoutException {
+        deadline.check();
+        this.deadline = deadline;
+        cancelled = false;
+        String text;
+        try {
+            text = doOCR(image);
+        } finally {
+            this.deadline = Deadline.NONE;
+        }
+        if (cancelled) {
+            throw new ExtractionTimeoutException(deadline.getScope());
+        }
+        return text;
+    }
+
+    @Override
+    protected String getOCRText(String filename, int pageNum) {
+        if (deadline.isBounded()) {
+            // Recognize with the monitor first; reading the text afterwards reuses that result
+            getAPI().TessBaseAPIRecognize(getHandle(), monitor);
+        }
+        return super.getOCRText(filename, pageNum);
+    }
+}
@@ -0,0 +1,277 @@
+package com.scotiapdf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only write-ahead journal of completed batch work, one JSON object per line:
+ *   {"type":"DOC","input":...,"inputSize":n,"inputModified":ms,"output":...,"highlights":n,"outputSize":n}
+ *   {"type":"RANGE","input":...,"inputSize":n,"inputModified":ms,"start":n,"end":n,"part":...,"highlights":n}
+ *
+ * Records are written straight to the file but fsynced in batches by a background thread (group commit),
+ * so a record costs one small write instead of one disk flush. A crash can lose the last unsynced records,
+ * which only means that work is done again. A torn last line does not parse and is ignored on replay.
+ * Result files are written before their record, and a DOC record only counts if the output file still
+ * exists with the recorded size. Records only count for the input version they were made from (size and
+ * modification time as seen when the work started), and a RANGE record only for the same page range.
+ */
+public class CheckpointJournal implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointJournal.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path file;
+    private final FileChannel channel;
+    private final ScheduledExecutorService syncer;
+    private final Map<String, JsonNode> completedDocuments = new ConcurrentHashMap<>();
+    private final Map<String, JsonNode> completedRanges = new ConcurrentHashMap<>();
+    private boolean dirty = false;
+    private long recordsWritten = 0;
+    private long syncs = 0;
+
+    private CheckpointJournal(Path file, long syncIntervalMillis) throws IOException {
+        this.file = file;
+        replay();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        terminateTornLine();
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens (or creates) the journal and loads the records of earlier runs.
+     */
+    public static CheckpointJournal open(Path file, long syncIntervalMillis) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        return new CheckpointJournal(file, syncIntervalMillis);
+    }
+
+    private void replay() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode record;
+                try {
+                    record = mapper.readTree(line);
+                } catch (IOException e) {
+                    // Torn write from a crash
+                    continue;
+                }
+                if (record == null) {
+                    continue;
+                }
+                String type = record.path("type").asText();
+                if ("DOC".equals(type)) {
+                    completedDocuments.put(record.path("input").asText(), record);
+                } else if ("RANGE".equals(type)) {
+                    completedRanges.put(rangeKey(record.path("input").asText(), record.path("start").asInt()), record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends a partial last line left by a crash, so the next record starts on a line of its own.
+     */
+    private void terminateTornLine() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+            reader.read(last, size - 1);
+        }
+        if (last.get(0) != '\n') {
+            channel.write(ByteBuffer.wrap(new byte[] {'\n'}));
+        }
+    }
+
+    /**
+     * Returns the recorded highlight count if the document was completed in an earlier run and its
+     * output is still intact, or -1 if it has to be processed.
+     */
+    public int completedHighlightCount(Path input, Path output) {
+        JsonNode record = completedDocuments.get(input.toString());
+        if (record == null || !record.path("output").asText().equals(output.toString()) || !isSameInput(record, input)) {
+            return -1;
+        }
+        try {
+            if (Files.size(output) != record.path("outputSize").asLong()) {
+                return -1;
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return record.path("highlights").asInt();
+    }
+
+    /**
+     * Returns the part file of a completed page range, or null if the range has to be processed. A part
+     * recorded with a different end page (e.g. another --split-pages value) does not count.
+     */
+    public Path completedRange(Path input, int startPage, int endPage) {
+        JsonNode record = completedRanges.get(rangeKey(input.toString(), startPage));
+        if (record == null || record.path("end").asInt() != endPage || !isSameInput(record, input)) {
+            return null;
+        }
+        Path part = file.resolveSibling(record.path("part").asText());
+        return Files.exists(part) ? part : null;
+    }
+
+    private static boolean isSameInput(JsonNode record, Path input) {
+        InputVersion current = InputVersion.of(input);
+        return current.size >= 0
+            && record.path("inputSize").asLong(-1) == current.size
+            && record.path("inputModified").asLong(-1) == current.modifiedMillis;
+    }
+
+    /**
+     * Records a completed document. The input version is the one taken before the document was read,
+     * so a PDF changed while it was processed is not considered done.
+     */
+    public void recordDocument(Path input, InputVersion inputVersion, Path output, int highlightCount) throws IOException {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("type", "DOC");
+        record.put("input", input.toString());
+        record.put("inputSize", inputVersion.size);
+        record.put("inputModified", inputVersion.modifiedMillis);
+        record.put("output", output.toString());
+        record.put("highlights", highlightCount);
+        record.put("outputSize", Files.size(output));
+        append(record);
+        completedDocuments.put(input.toString(), record);
+    }
+
+    /**
+     * Records a completed page range whose highlights were written to the given part file, which must
+     * be in the journal's directory.
+     */
+    public void recordRange(Path input, InputVersion inputVersion, int startPage, int endPage, Path part, int highlightCount) throws IOException {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("type", "RANGE");
+        record.put("input", input.toString());
+        record.put("inputSize", inputVersion.size);
+        record.put("inputModified", inputVersion.modifiedMillis);
+        record.put("start", startPage);
+        record.put("end", endPage);
+        record.put("part", part.getFileName().toString());
+        record.put("highlights", highlightCount);
+        append(record);
+        completedRanges.put(rangeKey(input.toString(), startPage), record);
+    }
+
+    private synchronized void append(ObjectNode record) throws IOException {
+        byte[] line = (mapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        dirty = true;
+        recordsWritten++;
+    }
+
+    private void sync() throws IOException {
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            syncs++;
+        }
+        // Outside the lock, so appends are not held up by the flush
+        channel.force(false);
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            LOG.warn("Could not sync checkpoint journal {}: {}", file, e.getMessage());
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getCompletedDocumentCount() {
+        return completedDocuments.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d records written, %d fsyncs", recordsWritten, syncs);
+    }
+
+    /**
+     * Stops the background syncer, waiting for a flush in progress (interrupting it would close the channel),
+     * then syncs the remaining records and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing checkpoint journal " + file);
+        }
+        sync();
+        channel.close();
+    }
+
+    private static String rangeKey(String input, int startPage) {
+        return input + "#" + startPage;
+    }
+
+    /**
+     * Size and modification time of an input file; -1 when it cannot be read.
+     */
+    public static final class InputVersion {
+        final long size;
+        final long modifiedMillis;
+
+        private InputVersion(long size, long modifiedMillis) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        public static InputVersion of(Path input) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+                return new InputVersion(attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                return new InputVersion(-1, -1);
+            }
+        }
+    }
+}
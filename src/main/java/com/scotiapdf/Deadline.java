@@ -0,0 +1,70 @@
+package com.scotiapdf;
+
+/**
+ * A point in time after which work is abandoned. Cancellation is cooperative: loops check the deadline
+ * between units of work, the page renderer between content stream operators and Tesseract through its cancel
+ * callback. The scope names the budget that set the deadline ("document", "page" or "ocr"), so a timeout
+ * can be reported against it.
+ */
+public final class Deadline {
+
+    /** No time limit. */
+    public static final Deadline NONE = new Deadline(null, 0);
+
+    private final String scope;
+    private final long expiresAtNanos;
+
+    private Deadline(String scope, long expiresAtNanos) {
+        this.scope = scope;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * A deadline the given number of milliseconds from now, or {@link #NONE} if millis is 0 or less.
+     */
+    public static Deadline after(String scope, long millis) {
+        return millis > 0 ? new Deadline(scope, System.nanoTime() + millis * 1_000_000) : NONE;
+    }
+
+    public boolean isBounded() {
+        return scope != null;
+    }
+
+    public boolean isExpired() {
+        return scope != null && System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * The deadline that expires first.
+     */
+    public Deadline earliest(Deadline other) {
+        if (!other.isBounded()) {
+            return this;
+        }
+        if (!isBounded()) {
+            return other;
+        }
+        return other.expiresAtNanos - expiresAtNanos < 0 ? other : this;
+    }
+
+    /**
+     * Throws if the deadline has passed.
+     */
+    public void check() throws ExtractionTimeoutException {
+        if (isExpired()) {
+            throw new ExtractionTimeoutException(scope);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (!isBounded()) {
+            return "none";
+        }
+        return String.format("%s deadline in %.1f ms", scope, (expiresAtNanos - System.nanoTime()) / 1_000_000.0);
+    }
+}
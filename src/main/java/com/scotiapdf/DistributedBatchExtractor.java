@@ -0,0 +1,434 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch mode for several workers (processes on one or more hosts) sharing a directory, typically on NFS.
+ * Every worker is started with the same inputs and work directory; there is no coordinator.
+ *
+ * Work is cut into units: whole documents, or page ranges of documents above the split threshold.
+ * A worker claims a unit with an expiring lease file (see {@link LeaseManager}), processes it and commits
+ * the result by writing a temp file and renaming it into place atomically. A committed result marks the
+ * unit as done. Range results are written as part files and merged into the final result by whichever
+ * worker first finds all parts of a document present. Leases of crashed workers expire and are reclaimed.
+ *
+ * Layout of the work directory:
+ *   leases/   lease files
+ *   parts/    committed page-range results (binary archive format)
+ *   failed/   one marker per document that could not be processed, holding the error
+ * Final results go to the output directory, named as in {@link BatchHighlightExtractor}.
+ */
+public class DistributedBatchExtractor {
+
+    static {
+        QuietMode.init();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(DistributedBatchExtractor.class);
+
+    private static final String PART_EXTENSION = ".part.hla";
+
+    private final HighlightExtractionPipeline pipeline;
+    private final Path outputDir;
+    private final Path partsDir;
+    private final Path failedDir;
+    private final BatchHighlightExtractor.OutputFormat format;
+    private final LeaseManager leases;
+    private final int threads;
+    private final long pollMillis;
+    private final LatencyStats latency = new LatencyStats();
+    private final AtomicInteger unitsProcessed = new AtomicInteger();
+    private final AtomicInteger documentsMerged = new AtomicInteger();
+    private int splitPages = 0;
+    private long progressIntervalSeconds = ProgressReporter.DEFAULT_INTERVAL_SECONDS;
+    private volatile ProgressReporter progress;
+
+    public DistributedBatchExtractor(HighlightExtractionPipeline pipeline, Path workDir, Path outputDir,
+                                     BatchHighlightExtractor.OutputFormat format, int threads, long leaseMillis) throws IOException {
+        this.pipeline = pipeline;
+        this.outputDir = outputDir;
+        this.partsDir = workDir.resolve("parts");
+        this.failedDir = workDir.resolve("failed");
+        this.format = format;
+        this.threads = threads;
+        this.leases = new LeaseManager(workDir.resolve("leases"), defaultWorkerId(), leaseMillis);
+        this.pollMillis = Math.max(200, leaseMillis / 4);
+    }
+
+    /**
+     * Splits documents with more pages than this into ranges of this many pages; 0 disables splitting.
+     * All workers must use the same value.
+     */
+    public void setSplitPages(int splitPages) {
+        this.splitPages = splitPages;
+    }
+
+    /**
+     * Seconds between progress lines; 0 disables them.
+     */
+    public void setProgressIntervalSeconds(long progressIntervalSeconds) {
+        this.progressIntervalSeconds = progressIntervalSeconds;
+    }
+
+    public static void main(String[] args) {
+        args = QuietMode.apply(args);
+        Path workDir = null;
+        Path outputDir = Paths.get("batch-output");
+        BatchHighlightExtractor.OutputFormat format = BatchHighlightExtractor.OutputFormat.JSON;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean includeOcr = false;
+        int splitPages = 0;
+        long leaseSeconds = 60;
+        long progressInterval = ProgressReporter.DEFAULT_INTERVAL_SECONDS;
+        List<String> inputs = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--work-dir":
+                        workDir = Paths.get(args[++i]);
+                        break;
+                    case "--output-dir":
+                        outputDir = Paths.get(args[++i]);
+                        break;
+                    case "--format":
+                        format = BatchHighlightExtractor.OutputFormat.valueOf(args[++i].toUpperCase());
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--ocr":
+                        includeOcr = true;
+                        break;
+                    case "--split-pages":
+                        splitPages = Integer.parseInt(args[++i]);
+                        break;
+                    case "--lease-seconds":
+                        leaseSeconds = Long.parseLong(args[++i]);
+                        break;
+                    case "--progress-interval":
+                        progressInterval = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        inputs.add(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            inputs.clear();
+        }
+
+        if (workDir == null || inputs.isEmpty() || threads < 1 || leaseSeconds < 1) {
+            System.out.println("Usage: java DistributedBatchExtractor --work-dir <shared-dir> [--output-dir <dir>] "
+                               + "[--format json|jsonl|archive] [--threads <n>] [--ocr] [--split-pages <n>] "
+                               + "[--lease-seconds <s>] [--progress-interval <seconds>] [--quiet] <pdf-file | directory | glob | @manifest>...");
+            System.exit(1);
+        }
+
+        try {
+            List<Path> documents = BatchHighlightExtractor.resolveInputs(inputs);
+            DistributedBatchExtractor worker = new DistributedBatchExtractor(
+                HighlightExtractionPipeline.withDefaultStrategies(includeOcr), workDir, outputDir, format, threads, leaseSeconds * 1000);
+            worker.setSplitPages(splitPages);
+            worker.setProgressIntervalSeconds(progressInterval);
+            worker.run(documents);
+        } catch (IOException | InterruptedException e) {
+            LOG.error("Worker failed", e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Processes units until every document has a committed result, then returns.
+     */
+    public void run(List<Path> documents) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        Files.createDirectories(partsDir);
+        Files.createDirectories(failedDir);
+        List<WorkUnit> units = planUnits(documents);
+        LOG.info("Worker {}: {} documents, {} units", leases.getWorkerId(), documents.size(), units.size());
+        // Other workers take part of the units, so this worker's share and its ETA are unknown
+        progress = new ProgressReporter("units", 0, progressIntervalSeconds);
+
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+        long renewMillis = Math.max(100, leases.getLeaseMillis() / 3);
+        heartbeat.scheduleAtFixedRate(leases::renewAll, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> loops = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                // Each loop starts at a different unit so workers spread out instead of racing for the same leases
+                int offset = Math.floorMod(leases.getWorkerId().hashCode() + i * 7919, Math.max(1, units.size()));
+                loops.add(executor.submit(() -> workLoop(units, offset)));
+            }
+            for (Future<?> loop : loops) {
+                try {
+                    loop.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Work loop failed: " + e.getCause(), e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            heartbeat.shutdownNow();
+            progress.close();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("WORKER RESULTS: " + leases.getWorkerId());
+        System.out.println("=".repeat(60));
+        System.out.println("Units processed by this worker: " + unitsProcessed.get() + " of " + units.size());
+        System.out.println("Documents merged by this worker: " + documentsMerged.get());
+        try (DirectoryStream<Path> failures = Files.newDirectoryStream(failedDir)) {
+            for (Path failure : failures) {
+                System.out.println("FAILED: " + failure.getFileName() + " - " + String.join(" ", Files.readAllLines(failure)));
+            }
+        }
+        System.out.println(String.format("Wall time: %.1f s", seconds));
+        System.out.println("Output directory: " + outputDir.toAbsolutePath());
+        // The rest is diagnostics, which quiet mode leaves out
+        if (!QuietMode.isEnabled()) {
+            System.out.println("Leases: " + leases);
+            System.out.println("Latency per unit: " + latency);
+            System.out.println();
+            StageMetrics.shared().printReport();
+        }
+    }
+
+    /**
+     * Cuts documents into units. Every worker derives the same list from the same inputs.
+     */
+    List<WorkUnit> planUnits(List<Path> documents) {
+        Map<Path, Path> outputs = BatchHighlightExtractor.assignOutputFiles(documents, outputDir, format);
+
+        List<WorkUnit> units = new ArrayList<>();
+        for (Path pdf : documents) {
+            Path output = outputs.get(pdf);
+            String documentKey = output.getFileName().toString();
+            int pageCount = splitPages > 0 ? readPageCount(pdf) : -1;
+
+            if (splitPages > 0 && pageCount > splitPages) {
+                int rangeCount = (pageCount + splitPages - 1) / splitPages;
+                for (int start = 0; start < pageCount; start += splitPages) {
+                    units.add(new WorkUnit(pdf, output, documentKey, start, Math.min(pageCount, start + splitPages), rangeCount));
+                }
+            } else {
+                units.add(new WorkUnit(pdf, output, documentKey, 0, Integer.MAX_VALUE, 1));
+            }
+        }
+        return units;
+    }
+
+    // Only the page tree root is read, so planning costs one small read per input rather than a parse
+    private static int readPageCount(Path pdf) {
+        try {
+            return DocumentCostEstimator.readPageCount(pdf);
+        } catch (IOException | RuntimeException e) {
+            // Unreadable documents stay whole and report their own error when processed
+            return -1;
+        }
+    }
+
+    private void workLoop(List<WorkUnit> units, int offset) {
+        while (!Thread.currentThread().isInterrupted()) {
+            boolean remaining = false;
+
+            for (int i = 0; i < units.size(); i++) {
+                WorkUnit unit = units.get((offset + i) % units.size());
+                if (isDone(unit)) {
+                    continue;
+                }
+                remaining = true;
+
+                try {
+                    if (!unit.isRange() || !Files.exists(partFile(unit))) {
+                        if (leases.tryAcquire(unit.id())) {
+                            try {
+                                process(unit);
+                            } finally {
+                                leases.release(unit.id());
+                            }
+                        }
+                    }
+                    if (unit.isRange() && unit.startPage == 0) {
+                        tryMerge(unit);
+                    }
+                } catch (Exception e) {
+                    // Left for a retry by this or another worker once the lease is gone
+                    LOG.warn("{} failed, left for a retry: {}", unit.id(), e.toString());
+                }
+            }
+
+            if (!remaining) {
+                return;
+            }
+            try {
+                // Everything left is leased by other workers; wait for results or expired leases
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private boolean isDone(WorkUnit unit) {
+        return Files.exists(unit.output) || Files.exists(failedMarker(unit));
+    }
+
+    private void process(WorkUnit unit) throws IOException {
+        // Another worker may have committed it between our existence check and the claim
+        if (isDone(unit) || (unit.isRange() && Files.exists(partFile(unit)))) {
+            return;
+        }
+
+        // A range is only part of a document, so per-document stage times are kept for whole documents only
+        String documentId = unit.pdf.toString();
+        try (StageMetrics.DocumentTimer timer = unit.isRange()
+                 ? StageMetrics.shared().startDocumentPart(documentId, new DocumentResources())
+                 : StageMetrics.shared().startDocument(documentId)) {
+            extract(unit, timer);
+        }
+    }
+
+    private void extract(WorkUnit unit, StageMetrics.DocumentTimer timer) throws IOException {
+        long start = System.nanoTime();
+        List<HighlightedText> highlights;
+        try (PDDocument document = DocumentLoader.load(unit.pdf.toFile().length(), () -> PDDocument.load(unit.pdf.toFile()))) {
+            highlights = pipeline.extractHighlights(document, unit.startPage, unit.endPage, null);
+        } catch (IOException | RuntimeException e) {
+            // Retrying an unreadable document on every worker would never finish; record it as failed instead
+            Path temp = tempFile(failedMarker(unit));
+            Files.write(temp, (unit.id() + ": " + e).getBytes(StandardCharsets.UTF_8));
+            commit(temp, failedMarker(unit));
+            LOG.warn("{} failed: {}", unit.id(), e.toString());
+            return;
+        }
+
+        if (unit.isRange()) {
+            Path temp = tempFile(partFile(unit));
+            try (HighlightArchiveWriter writer = HighlightArchiveWriter.open(temp.toFile(), unit.documentKey, HighlightExtractionPipeline.EXTRACTION_METHOD)) {
+                writer.writePage(highlights);
+            }
+            commit(temp, partFile(unit));
+        } else {
+            Path temp = tempFile(unit.output);
+            format.write(highlights, unit.pdf, temp, timer.getResources());
+            commit(temp, unit.output);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        latency.record(elapsed);
+        unitsProcessed.incrementAndGet();
+        progress.itemCompleted(highlights.size());
+        LOG.info("{}: {} highlights in {} ms", unit.id(), highlights.size(), String.format("%.1f", elapsed / 1_000_000.0));
+    }
+
+    /**
+     * Merges the part files of a split document once all of them are committed. Called with the document's first unit.
+     */
+    private void tryMerge(WorkUnit first) throws IOException {
+        List<Path> parts = new ArrayList<>();
+        for (int start = 0, i = 0; i < first.rangeCount; i++, start += first.endPage - first.startPage) {
+            Path part = partsDir.resolve(first.documentKey + ".p" + start + PART_EXTENSION);
+            if (!Files.exists(part)) {
+                return;
+            }
+            parts.add(part);
+        }
+
+        String mergeId = first.documentKey + ".merge";
+        if (!leases.tryAcquire(mergeId)) {
+            return;
+        }
+        try {
+            if (isDone(first)) {
+                return;
+            }
+            List<HighlightedText> highlights = new ArrayList<>();
+            for (Path part : parts) {
+                try (HighlightArchiveReader reader = HighlightArchiveReader.open(part.toFile())) {
+                    highlights.addAll(reader.readAll());
+                }
+            }
+
+            Path temp = tempFile(first.output);
+            // Parts may have run on other hosts, so a merged document has no resource account
+            format.write(highlights, first.pdf, temp, null);
+            commit(temp, first.output);
+            documentsMerged.incrementAndGet();
+            LOG.info("{}: merged {} parts, {} highlights", first.documentKey, parts.size(), highlights.size());
+
+            for (Path part : parts) {
+                Files.deleteIfExists(part);
+            }
+        } finally {
+            leases.release(mergeId);
+        }
+    }
+
+    private Path failedMarker(WorkUnit unit) {
+        return failedDir.resolve(unit.documentKey + ".failed");
+    }
+
+    private Path partFile(WorkUnit unit) {
+        return partsDir.resolve(unit.documentKey + ".p" + unit.startPage + PART_EXTENSION);
+    }
+
+    private Path tempFile(Path target) {
+        return target.resolveSibling(target.getFileName() + "." + leases.getWorkerId() + "." + Thread.currentThread().getId() + ".tmp");
+    }
+
+    private static void commit(Path temp, Path target) throws IOException {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Host name and process id, e.g. "12345@scanner-01", made safe for file names.
+     */
+    static String defaultWorkerId() {
+        return ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9._@-]", "_");
+    }
+
+    /**
+     * A whole document, or the pages from startPage (inclusive) to endPage (exclusive) of one.
+     */
+    static class WorkUnit {
+        final Path pdf;
+        final Path output;
+        final String documentKey;
+        final int startPage;
+        final int endPage;
+        final int rangeCount;
+
+        WorkUnit(Path pdf, Path output, String documentKey, int startPage, int endPage, int rangeCount) {
+            this.pdf = pdf;
+            this.output = output;
+            this.documentKey = documentKey;
+            this.startPage = startPage;
+            this.endPage = endPage;
+            this.rangeCount = rangeCount;
+        }
+
+        boolean isRange() {
+            return rangeCount > 1;
+        }
+
+        String id() {
+            return isRange() ? documentKey + ".p" + startPage : documentKey;
+        }
+    }
+}
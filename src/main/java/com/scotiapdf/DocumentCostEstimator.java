@@ -0,0 +1,268 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.io.RandomAccessBufferedFileInputStream;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.pdfparser.PDFParser;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Estimates the relative processing cost of a document before it is scheduled, from its file size,
+ * the page count in the page tree root and the number of annotations per page. The pre-scan looks up
+ * the catalog and the page tree dictionaries through the cross-reference table one by one, instead of
+ * loading the document, which in PDFBox 2 parses every object reachable from the catalog. Annotation
+ * objects, resources and content streams are never read.
+ */
+public class DocumentCostEstimator {
+    
+    // Relative weights in "page equivalents"; OCR makes every annotation far more expensive
+    private static final double COST_PER_PAGE = 1.0;
+    private static final double COST_PER_MEGABYTE = 0.5;
+    private static final double COST_PER_ANNOTATION = 0.2;
+    private static final double COST_PER_ANNOTATION_OCR = 10.0;
+    
+    // Peak memory model: fixed overhead, parsed document size relative to the file, rendered page buffers
+    private static final long BASE_MEMORY_BYTES = 16L * 1024 * 1024;
+    private static final long MAIN_MEMORY_LOAD_FACTOR = 4;
+    private static final long TEMP_FILE_LOAD_FACTOR = 1;
+    private static final long BYTES_PER_PIXEL = 4; // TYPE_INT_RGB
+    private static final long RENDER_BUFFERS = 2;  // page image plus enhanced OCR regions and scratch
+    
+    private final boolean ocrEnabled;
+    
+    public DocumentCostEstimator(boolean ocrEnabled) {
+        this.ocrEnabled = ocrEnabled;
+    }
+    
+    public Estimate estimate(Path pdf) {
+        long fileSize = 0;
+        try {
+            fileSize = Files.size(pdf);
+        } catch (IOException e) {
+            // Unreadable files fail quickly in the batch itself
+        }
+        
+        int pageCount = -1;
+        int annotationCount = 0;
+        PDRectangle largestPage = PDRectangle.LETTER;
+        try (PageTreeScanner scanner = PageTreeScanner.open(pdf)) {
+            scanner.scanPages();
+            pageCount = scanner.declaredPageCount() >= 0 ? scanner.declaredPageCount() : scanner.countedPages;
+            annotationCount = scanner.annotationCount;
+            largestPage = scanner.largestPage;
+        } catch (Exception e) {
+            // Fall back to a size-only estimate; the document will report its own error when processed
+            pageCount = -1;
+            annotationCount = 0;
+            largestPage = PDRectangle.LETTER;
+        }
+        
+        return new Estimate(fileSize, pageCount, annotationCount, cost(fileSize, pageCount, annotationCount),
+                            largestPage.getWidth(), largestPage.getHeight());
+    }
+    
+    /**
+     * Page count from the page tree root alone, for splitting a document without walking its pages.
+     */
+    public static int readPageCount(Path pdf) throws IOException {
+        try (PageTreeScanner scanner = PageTreeScanner.open(pdf)) {
+            if (scanner.declaredPageCount() >= 0) {
+                return scanner.declaredPageCount();
+            }
+            scanner.scanPages();
+            return scanner.countedPages;
+        }
+    }
+    
+    /**
+     * Estimates peak heap use while processing the document: fixed overhead, the parsed document
+     * (depending on whether streams are buffered in memory or in temp files) and, with OCR enabled,
+     * the render buffers for the largest page at the given DPI.
+     */
+    public long estimatePeakMemory(Estimate estimate, float dpi, boolean tempFileLoading) {
+        long loadFactor = tempFileLoading ? TEMP_FILE_LOAD_FACTOR : MAIN_MEMORY_LOAD_FACTOR;
+        long bytes = BASE_MEMORY_BYTES + estimate.getFileSize() * loadFactor;
+        
+        if (ocrEnabled) {
+            long widthPixels = (long) Math.ceil(estimate.getMaxPageWidth() / 72.0 * dpi);
+            long heightPixels = (long) Math.ceil(estimate.getMaxPageHeight() / 72.0 * dpi);
+            bytes += widthPixels * heightPixels * BYTES_PER_PIXEL * RENDER_BUFFERS;
+        }
+        return bytes;
+    }
+    
+    private double cost(long fileSize, int pageCount, int annotationCount) {
+        double annotationWeight = ocrEnabled ? COST_PER_ANNOTATION_OCR : COST_PER_ANNOTATION;
+        return COST_PER_PAGE * Math.max(pageCount, 1)
+             + COST_PER_MEGABYTE * fileSize / (1024.0 * 1024.0)
+             + annotationWeight * annotationCount;
+    }
+    
+    /**
+     * Pre-scan result for one document. A page count of -1 means the document could not be pre-scanned.
+     */
+    public static class Estimate {
+        private final long fileSize;
+        private final int pageCount;
+        private final int annotationCount;
+        private final double cost;
+        private final float maxPageWidth;
+        private final float maxPageHeight;
+        
+        Estimate(long fileSize, int pageCount, int annotationCount, double cost, float maxPageWidth, float maxPageHeight) {
+            this.fileSize = fileSize;
+            this.pageCount = pageCount;
+            this.annotationCount = annotationCount;
+            this.cost = cost;
+            this.maxPageWidth = maxPageWidth;
+            this.maxPageHeight = maxPageHeight;
+        }
+        
+        public long getFileSize() {
+            return fileSize;
+        }
+        
+        public int getPageCount() {
+            return pageCount;
+        }
+        
+        public int getAnnotationCount() {
+            return annotationCount;
+        }
+        
+        public double getCost() {
+            return cost;
+        }
+        
+        /**
+         * Width in points of the largest page (by area).
+         */
+        public float getMaxPageWidth() {
+            return maxPageWidth;
+        }
+        
+        public float getMaxPageHeight() {
+            return maxPageHeight;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("pages=%d annotations=%d size=%dKB cost=%.1f", pageCount, annotationCount, fileSize / 1024, cost);
+        }
+    }
+    
+    /**
+     * Parses the trailer and the catalog, then resolves page tree nodes on demand. PDFParser's own initial
+     * parse would load the whole object graph.
+     */
+    private static final class PageTreeScanner extends PDFParser implements Closeable {
+        private static final int MAX_DEPTH = 64;
+        
+        private final RandomAccessRead input;
+        private COSDictionary pages;
+        int countedPages;
+        int annotationCount;
+        PDRectangle largestPage = PDRectangle.LETTER;
+        private float maxPageArea;
+        
+        private PageTreeScanner(RandomAccessRead input) throws IOException {
+            super(input);
+            this.input = input;
+        }
+        
+        static PageTreeScanner open(Path pdf) throws IOException {
+            RandomAccessRead input = new RandomAccessBufferedFileInputStream(pdf.toFile());
+            PageTreeScanner scanner = null;
+            try {
+                scanner = new PageTreeScanner(input);
+                scanner.parse();
+                return scanner;
+            } catch (IOException | RuntimeException e) {
+                if (scanner != null) {
+                    scanner.close();
+                } else {
+                    input.close();
+                }
+                throw e;
+            }
+        }
+        
+        @Override
+        protected void initialParse() throws IOException {
+            COSBase root = parseTrailerValuesDynamically(retrieveTrailer());
+            if (!(root instanceof COSDictionary)) {
+                throw new IOException("Missing document catalog");
+            }
+            COSBase pageTree = resolve(((COSDictionary) root).getItem(COSName.PAGES));
+            if (!(pageTree instanceof COSDictionary)) {
+                throw new IOException("Missing page tree");
+            }
+            pages = (COSDictionary) pageTree;
+            initialParseDone = true;
+        }
+        
+        int declaredPageCount() throws IOException {
+            COSBase count = resolve(pages.getItem(COSName.COUNT));
+            return count instanceof COSNumber ? ((COSNumber) count).intValue() : -1;
+        }
+        
+        // Counts pages and annotation references and finds the largest media box; annotations are not resolved
+        void scanPages() throws IOException {
+            scanNode(pages, null, 0);
+        }
+        
+        private void scanNode(COSDictionary node, COSArray inheritedMediaBox, int depth) throws IOException {
+            COSBase mediaBox = resolve(node.getItem(COSName.MEDIA_BOX));
+            COSArray box = mediaBox instanceof COSArray ? (COSArray) mediaBox : inheritedMediaBox;
+            
+            COSBase kids = resolve(node.getItem(COSName.KIDS));
+            if (kids instanceof COSArray) {
+                if (depth >= MAX_DEPTH) {
+                    throw new IOException("Page tree deeper than " + MAX_DEPTH + " levels");
+                }
+                for (COSBase kid : (COSArray) kids) {
+                    COSBase child = resolve(kid);
+                    if (child instanceof COSDictionary) {
+                        scanNode((COSDictionary) child, box, depth + 1);
+                    }
+                }
+                return;
+            }
+            
+            countedPages++;
+            COSBase annots = resolve(node.getItem(COSName.ANNOTS));
+            if (annots instanceof COSArray) {
+                annotationCount += ((COSArray) annots).size();
+            }
+            PDRectangle pageBox = box != null ? new PDRectangle(box) : PDRectangle.LETTER;
+            float area = pageBox.getWidth() * pageBox.getHeight();
+            if (area > maxPageArea) {
+                maxPageArea = area;
+                largestPage = pageBox;
+            }
+        }
+        
+        private COSBase resolve(COSBase value) throws IOException {
+            return value instanceof COSObject ? parseObjectDynamically((COSObject) value, false) : value;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                document.close();
+            } finally {
+                input.close();
+            }
+        }
+    }
+}
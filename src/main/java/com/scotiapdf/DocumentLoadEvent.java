@@ -0,0 +1,53 @@
+package com.scotiapdf;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * JFR event for parsing one PDF file. Record with {@code -XX:StartFlightRecording} and read with
+ * {@code jfr print --events com.scotiapdf.DocumentLoad}.
+ */
+@Name("com.scotiapdf.DocumentLoad")
+@Label("Document Load")
+@Category({"PDF Highlight Extractor"})
+@Description("Parsing a PDF file before any page is processed")
+public class DocumentLoadEvent extends Event {
+
+    @Label("Document")
+    String documentId;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Pages")
+    int pages;
+
+    @Label("Failed")
+    boolean failed;
+
+    static DocumentLoadEvent start() {
+        DocumentLoadEvent event = new DocumentLoadEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event; document is null when loading failed.
+     */
+    void finish(long bytes, PDDocument document) {
+        end();
+        if (shouldCommit()) {
+            this.documentId = StageMetrics.shared().currentDocumentId();
+            this.bytes = bytes;
+            this.pages = document != null ? document.getNumberOfPages() : 0;
+            this.failed = document == null;
+            commit();
+        }
+    }
+}
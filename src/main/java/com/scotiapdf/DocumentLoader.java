@@ -0,0 +1,44 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+
+/**
+ * The way every extractor loads a PDF. Loading is timed as {@link ExtractionStage#LOAD}, the input size is billed
+ * to the document started on this thread with {@link StageMetrics#startDocument(String)}, a
+ * {@link DocumentLoadEvent} is emitted, and the document gets the {@link SharedResourceCache} so repeat fonts and
+ * images are not parsed again.
+ */
+public final class DocumentLoader {
+
+    private DocumentLoader() {
+    }
+
+    /**
+     * Loads a document with the given loader; inputBytes is the size of the file or upload it is read from.
+     */
+    public static PDDocument load(long inputBytes, StageMetrics.IOSupplier<PDDocument> loader) throws IOException {
+        StageMetrics.shared().addBytesRead(inputBytes);
+        DocumentLoadEvent event = DocumentLoadEvent.start();
+        PDDocument document = null;
+        try {
+            PDDocument loaded = StageMetrics.shared().time(ExtractionStage.LOAD, loader);
+            try {
+                SharedResourceCache.shared().install(loaded);
+            } catch (RuntimeException e) {
+                // The caller never gets the document, so it can't close it
+                try {
+                    loaded.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            document = loaded;
+            return document;
+        } finally {
+            event.finish(inputBytes, document);
+        }
+    }
+}
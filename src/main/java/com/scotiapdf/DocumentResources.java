@@ -0,0 +1,164 @@
+package com.scotiapdf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resources one document consumed, summed over every thread that worked on it. Threads add their CPU time
+ * and allocated bytes when their {@link StageMetrics.DocumentTimer} is closed, so the totals of a document
+ * split into page ranges are complete once all its ranges are done.
+ *
+ * CPU time and allocated bytes come from the JVM's per-thread counters and are -1 when the JVM does not
+ * support them. Work abandoned because a {@link TimeBudget} ran out is listed here too.
+ */
+public final class DocumentResources {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = enableCpuTime();
+    private static final boolean ALLOCATION_SUPPORTED = enableAllocatedMemory();
+
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder pagesRendered = new LongAdder();
+    private final LongAdder ocrCalls = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final Queue<TimedOutWork> timeouts = new ConcurrentLinkedQueue<>();
+    private volatile long wallNanos;
+
+    private static boolean enableCpuTime() {
+        try {
+            if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+                return false;
+            }
+            if (!THREADS.isThreadCpuTimeEnabled()) {
+                THREADS.setThreadCpuTimeEnabled(true);
+            }
+            return true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    private static boolean enableAllocatedMemory() {
+        try {
+            if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+                return false;
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                return false;
+            }
+            if (!threads.isThreadAllocatedMemoryEnabled()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+            return true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * CPU time of the current thread in nanoseconds, or 0 when unsupported.
+     */
+    static long currentThreadCpuNanos() {
+        return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * Bytes allocated by the current thread so far, or 0 when unsupported.
+     */
+    static long currentThreadAllocatedBytes() {
+        return ALLOCATION_SUPPORTED
+            ? ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    void addThreadUsage(long cpuNanos, long allocatedBytes) {
+        this.cpuNanos.add(cpuNanos);
+        this.allocatedBytes.add(allocatedBytes);
+    }
+
+    /**
+     * Counts a timed call that is billed per document: page renders and OCR calls.
+     */
+    void recordCall(ExtractionStage stage) {
+        if (stage == ExtractionStage.RENDER) {
+            pagesRendered.increment();
+        } else if (stage == ExtractionStage.OCR) {
+            ocrCalls.increment();
+        }
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    void addTimeout(TimedOutWork work) {
+        timeouts.add(work);
+    }
+
+    void setWallNanos(long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    public long getCpuNanos() {
+        return CPU_TIME_SUPPORTED ? cpuNanos.sum() : -1;
+    }
+
+    public long getAllocatedBytes() {
+        return ALLOCATION_SUPPORTED ? allocatedBytes.sum() : -1;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getPagesRendered() {
+        return pagesRendered.sum();
+    }
+
+    public long getOcrCalls() {
+        return ocrCalls.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * The timed-out work in page order.
+     */
+    public List<TimedOutWork> getTimeouts() {
+        List<TimedOutWork> sorted = new ArrayList<>(timeouts);
+        sorted.sort(Comparator.comparingInt(TimedOutWork::getPageNumber));
+        return sorted;
+    }
+
+    public ObjectNode toJson(ObjectMapper mapper) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("wallMillis", wallNanos / 1_000_000.0);
+        node.put("cpuMillis", CPU_TIME_SUPPORTED ? cpuNanos.sum() / 1_000_000.0 : -1);
+        node.put("allocatedBytes", getAllocatedBytes());
+        node.put("pagesRendered", getPagesRendered());
+        node.put("ocrCalls", getOcrCalls());
+        node.put("bytesRead", getBytesRead());
+        node.put("timeouts", timeouts.size());
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        String usage = String.format("wall %.1f ms, cpu %.1f ms, allocated %.1f MB, %d pages rendered, %d OCR calls, %d bytes read",
+            wallNanos / 1_000_000.0, getCpuNanos() / 1_000_000.0, getAllocatedBytes() / (1024.0 * 1024.0),
+            getPagesRendered(), getOcrCalls(), getBytesRead());
+        return timeouts.isEmpty() ? usage : usage + ", " + timeouts.size() + " timeouts";
+    }
+}
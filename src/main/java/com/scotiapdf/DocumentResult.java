@@ -0,0 +1,59 @@
+package com.scotiapdf;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of processing one document in a batch run.
+ */
+public class DocumentResult {
+    private final Path input;
+    private final Path output;
+    private final int highlightCount;
+    private final long elapsedNanos;
+    private final String error;
+    private final DocumentResources resources;
+    
+    public DocumentResult(Path input, Path output, int highlightCount, long elapsedNanos, String error) {
+        this(input, output, highlightCount, elapsedNanos, error, null);
+    }
+    
+    public DocumentResult(Path input, Path output, int highlightCount, long elapsedNanos, String error, DocumentResources resources) {
+        this.input = input;
+        this.output = output;
+        this.highlightCount = highlightCount;
+        this.elapsedNanos = elapsedNanos;
+        this.error = error;
+        this.resources = resources;
+    }
+    
+    public Path getInput() {
+        return input;
+    }
+    
+    public Path getOutput() {
+        return output;
+    }
+    
+    public int getHighlightCount() {
+        return highlightCount;
+    }
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    /**
+     * Resources used by the document, or null when it was not processed in this run (resumed from a checkpoint).
+     */
+    public DocumentResources getResources() {
+        return resources;
+    }
+    
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -12,6 +12,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
@@ -20,9 +23,20 @@ import java.util.List;
 
 public class EnhancedPdfHighlightExtractor {
     
+    static {
+        QuietMode.init();
+    }
+    
+    private static final Logger LOG = LoggerFactory.getLogger(EnhancedPdfHighlightExtractor.class);
+    
+    static final String EXTRACTION_METHOD = "Annotation analysis";
+    
+    private HighlightResultWriter resultWriter;
+    
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java EnhancedPdfHighlightExtractor <pdf-file-path>");
+        args = QuietMode.apply(args);
+        if (args.length != 1 && !(args.length == 3 && HighlightResultWriter.isOutputOption(args[1]))) {
+            System.out.println("Usage: java EnhancedPdfHighlightExtractor <pdf-file-path> [--quiet] [--jsonl <output.jsonl[.gz]> | --archive <output.hla>]");
             System.exit(1);
         }
         
@@ -30,51 +44,65 @@ public class EnhancedPdfHighlightExtractor {
         EnhancedPdfHighlightExtractor extractor = new EnhancedPdfHighlightExtractor();
         
         try {
-            extractor.analyzeAndExtractHighlights(pdfPath);
+            if (args.length == 3) {
+                try (HighlightResultWriter writer = HighlightResultWriter.open(args[1], new File(args[2]), new File(pdfPath).getName(), EXTRACTION_METHOD)) {
+                    extractor.setResultWriter(writer);
+                    extractor.analyzeAndExtractHighlights(pdfPath);
+                }
+            } else {
+                extractor.analyzeAndExtractHighlights(pdfPath);
+            }
         } catch (IOException e) {
-            System.err.println("Error processing PDF: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error processing PDF {}", pdfPath, e);
         }
     }
     
+    public void setResultWriter(HighlightResultWriter resultWriter) {
+        this.resultWriter = resultWriter;
+    }
+    
     public void analyzeAndExtractHighlights(String pdfPath) throws IOException {
         List<HighlightedText> highlights = new ArrayList<>();
         
-        try (PDDocument document = PDDocument.load(new File(pdfPath))) {
-            System.out.println("=".repeat(60));
-            System.out.println("PDF ANALYSIS REPORT");
-            System.out.println("=".repeat(60));
-            System.out.println("File: " + pdfPath);
-            System.out.println("Total pages: " + document.getNumberOfPages());
-            System.out.println();
+        StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(pdfPath);
+        try (PDDocument document = DocumentLoader.load(new File(pdfPath).length(), () -> PDDocument.load(new File(pdfPath)))) {
+            LOG.info("Analyzing {} ({} pages)", pdfPath, document.getNumberOfPages());
             
+            PageWindow pageWindow = PageWindow.fromSystemProperties();
             for (int pageNum = 0; pageNum < document.getNumberOfPages(); pageNum++) {
+                pageWindow.beforePage(document, pageNum, 0);
                 PDPage page = document.getPage(pageNum);
-                System.out.println("PAGE " + (pageNum + 1) + " ANALYSIS:");
-                System.out.println("-".repeat(40));
+                LOG.debug("Page {} analysis", pageNum + 1);
+                int pageStart = highlights.size();
+                PageExtractionEvent pageEvent = PageExtractionEvent.start();
                 
                 // Analyze annotations
                 analyzeAnnotations(page, pageNum + 1, highlights);
                 
                 // Analyze text content and formatting
                 analyzeTextContent(document, pageNum, highlights);
+                pageEvent.finish(pageNum + 1, "enhanced", highlights.size() - pageStart);
                 
-                System.out.println();
+                if (resultWriter != null) {
+                    resultWriter.writePage(highlights.subList(pageStart, highlights.size()));
+                }
             }
             
             // Output final results
             outputDetailedResults(highlights);
             
+        } finally {
+            timer.close();
         }
     }
     
     private void analyzeAnnotations(PDPage page, int pageNumber, List<HighlightedText> highlights) throws IOException {
-        List<PDAnnotation> annotations = page.getAnnotations();
-        System.out.println("Annotations found: " + annotations.size());
+        List<PDAnnotation> annotations = StageMetrics.shared().time(ExtractionStage.ANNOTATIONS, page::getAnnotations);
+        LOG.debug("Page {}: {} annotations", pageNumber, annotations.size());
         
         int highlightCount = 0;
         for (PDAnnotation annotation : annotations) {
-            System.out.println("  - Annotation type: " + annotation.getSubtype());
+            LOG.debug("  Annotation type: {}", annotation.getSubtype());
             
             if (annotation instanceof PDAnnotationTextMarkup) {
                 PDAnnotationTextMarkup markup = (PDAnnotationTextMarkup) annotation;
@@ -85,55 +113,42 @@ public class EnhancedPdfHighlightExtractor {
             }
         }
         
-        System.out.println("Highlight annotations: " + highlightCount);
+        LOG.debug("Page {}: {} markup annotations", pageNumber, highlightCount);
     }
     
     private void analyzeMarkupAnnotation(PDAnnotationTextMarkup markup, int pageNumber, List<HighlightedText> highlights) {
         try {
-            System.out.println("    Markup Details:");
-            System.out.println("      - Subtype: " + markup.getSubtype());
+            // Arguments are only formatted when DEBUG is enabled; SLF4J renders the float array itself
+            LOG.debug("  Markup {}: color components {}", markup.getSubtype(),
+                      markup.getColor() != null ? markup.getColor().getComponents() : null);
             
             // Check for color information
             if (markup.getColor() != null) {
                 float[] colorComponents = markup.getColor().getComponents();
-                System.out.println("      - Color components: " + Arrays.toString(colorComponents));
                 
                 if (colorComponents.length >= 3) {
                     Color color = new Color(colorComponents[0], colorComponents[1], colorComponents[2]);
-                    System.out.println("      - RGB Color: " + color.getRed() + ", " + color.getGreen() + ", " + color.getBlue());
                     
                     String colorName = identifyTargetColor(color);
                     if (colorName != null) {
-                        System.out.println("      - Matched target color: " + colorName);
+                        LOG.debug("    RGB {}, {}, {} matches {}", color.getRed(), color.getGreen(), color.getBlue(), colorName);
                         
                         String text = extractTextFromAnnotation(markup);
                         highlights.add(new HighlightedText(text, colorName, pageNumber, markup.getRectangle()));
                     } else {
-                        System.out.println("      - Color does not match target colors (green, yellow, purple)");
+                        LOG.debug("    RGB {}, {}, {} does not match the target colors", color.getRed(), color.getGreen(), color.getBlue());
                     }
                 }
-            } else {
-                System.out.println("      - No color information available");
             }
             
-            // Check for contents
-            String contents = markup.getContents();
-            if (contents != null && !contents.trim().isEmpty()) {
-                System.out.println("      - Contents: " + contents);
+            if (LOG.isDebugEnabled()) {
+                float[] quadPoints = markup.getQuadPoints();
+                LOG.debug("    Contents: {}, quad point coordinates: {}, rectangle: {}", markup.getContents(),
+                          quadPoints != null ? quadPoints.length : 0, markup.getRectangle());
             }
             
-            // Check for quad points
-            float[] quadPoints = markup.getQuadPoints();
-            if (quadPoints != null && quadPoints.length > 0) {
-                System.out.println("      - Quad points available: " + quadPoints.length + " coordinates");
-            }
-            
-            // Rectangle information
-            PDRectangle rect = markup.getRectangle();
-            System.out.println("      - Rectangle: " + rect);
-            
         } catch (Exception e) {
-            System.out.println("      - Error analyzing markup: " + e.getMessage());
+            LOG.warn("Error analyzing markup on page {}: {}", pageNumber, e.getMessage());
         }
     }
     
@@ -156,18 +171,15 @@ public class EnhancedPdfHighlightExtractor {
     }
     
     private void analyzeTextContent(PDDocument document, int pageNum, List<HighlightedText> highlights) throws IOException {
-        System.out.println("Text Analysis:");
-        
         // Create a custom text stripper to analyze text properties
         DetailedTextStripper stripper = new DetailedTextStripper(pageNum + 1);
         stripper.setStartPage(pageNum + 1);
         stripper.setEndPage(pageNum + 1);
         
-        String text = stripper.getText(document);
+        String text = StageMetrics.shared().time(ExtractionStage.TEXT, () -> stripper.getText(document));
         
-        System.out.println("  - Text characters processed: " + stripper.getCharacterCount());
-        System.out.println("  - Unique fonts found: " + stripper.getUniqueFonts().size());
-        System.out.println("  - Font sizes found: " + stripper.getFontSizes());
+        LOG.debug("Page {} text: {} characters, {} fonts, font sizes {}", pageNum + 1, stripper.getCharacterCount(),
+                  stripper.getUniqueFonts().size(), stripper.getFontSizes());
         
         // Add any potential highlights found through text analysis
         highlights.addAll(stripper.getPotentialHighlights());
@@ -270,6 +282,7 @@ public class EnhancedPdfHighlightExtractor {
             
             root.put("totalHighlights", highlights.size());
             root.put("extractionDate", new Date().toString());
+            HighlightJsonReport.putResources(mapper, root, StageMetrics.shared().currentResources());
             
             ObjectNode colorGroups = mapper.createObjectNode();
             for (Map.Entry<String, List<HighlightedText>> entry : groupedHighlights.entrySet()) {
@@ -287,7 +300,8 @@ public class EnhancedPdfHighlightExtractor {
             root.set("highlightsByColor", colorGroups);
             
             // Generate JSON string
-            String jsonOutput = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(root);
+            String jsonOutput = StageMetrics.shared().time(ExtractionStage.SERIALIZE,
+                () -> mapper.writerWithDefaultPrettyPrinter().writeValueAsString(root));
             
             // Save to file
             String outputFileName = "highlights-extraction-results.json";
@@ -305,7 +319,7 @@ public class EnhancedPdfHighlightExtractor {
             System.out.println(preview);
             
         } catch (Exception e) {
-            System.out.println("Error generating JSON output: " + e.getMessage());
+            LOG.error("Error generating JSON output", e);
         }
     }
     
@@ -0,0 +1,26 @@
+package com.scotiapdf;
+
+/**
+ * The stages every extractor goes through, timed by {@link StageMetrics}.
+ */
+public enum ExtractionStage {
+    /** Parsing the PDF file. */
+    LOAD,
+    /** Reading a page's annotation array. */
+    ANNOTATIONS,
+    /** Running a text stripper over a page or region. */
+    TEXT,
+    /** Rendering a page to an image. */
+    RENDER,
+    /** Tesseract calls, including image preparation. */
+    OCR,
+    /** Encoding and writing results. */
+    SERIALIZE;
+
+    /**
+     * Lower-case name used in metric labels and reports.
+     */
+    public String label() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,26 @@
+package com.scotiapdf;
+
+import java.io.IOException;
+
+/**
+ * Thrown when work runs past its {@link Deadline}. It is an IOException because it is raised from PDFBox
+ * callbacks, which may only throw IOExceptions, and travels up through the same methods as read errors.
+ */
+public class ExtractionTimeoutException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String scope;
+
+    public ExtractionTimeoutException(String scope) {
+        super(scope + " time budget exceeded");
+        this.scope = scope;
+    }
+
+    /**
+     * The budget that ran out: "document", "page" or "ocr".
+     */
+    public String getScope() {
+        return scope;
+    }
+}
@@ -0,0 +1,187 @@
+package com.scotiapdf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads archives produced by {@link HighlightArchiveWriter}.
+ * Run as a program to dump an archive as JSON Lines.
+ */
+public class HighlightArchiveReader implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HighlightArchiveReader.class);
+
+    private final DataInputStream in;
+    private final List<HighlightColor> colors = new ArrayList<>();
+    private String documentId;
+    private String extractionMethod;
+    private byte[] recordBuffer = new byte[256];
+
+    public HighlightArchiveReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+
+        byte[] magic = new byte[HighlightArchiveWriter.MAGIC.length];
+        this.in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != HighlightArchiveWriter.MAGIC[i]) {
+                throw new IOException("Not a highlight archive");
+            }
+        }
+
+        int version = this.in.readUnsignedByte();
+        if (version != HighlightArchiveWriter.VERSION) {
+            throw new IOException("Unsupported highlight archive version: " + version);
+        }
+    }
+
+    public static HighlightArchiveReader open(File file) throws IOException {
+        return new HighlightArchiveReader(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: java HighlightArchiveReader <archive-file>");
+            System.exit(1);
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        try (HighlightArchiveReader reader = HighlightArchiveReader.open(new File(args[0]))) {
+            HighlightedText highlight;
+            while ((highlight = reader.next()) != null) {
+                ObjectNode line = mapper.createObjectNode();
+                line.put("documentId", reader.getDocumentId());
+                line.put("page", highlight.getPageNumber());
+                line.put("color", highlight.getColor());
+                line.put("text", highlight.getText());
+                if (highlight.hasCoordinates()) {
+                    ObjectNode coordinates = line.putObject("coordinates");
+                    coordinates.put("llx", highlight.getLowerLeftX());
+                    coordinates.put("lly", highlight.getLowerLeftY());
+                    coordinates.put("urx", highlight.getUpperRightX());
+                    coordinates.put("ury", highlight.getUpperRightY());
+                }
+                line.put("extractionMethod", reader.getExtractionMethod());
+                System.out.println(mapper.writeValueAsString(line));
+            }
+        } catch (IOException e) {
+            LOG.error("Error reading archive {}", args[0], e);
+        }
+    }
+
+    /**
+     * Returns the next highlight, or null at the end of the archive.
+     */
+    public HighlightedText next() throws IOException {
+        while (true) {
+            int tag = in.read();
+            if (tag < 0) {
+                return null;
+            }
+
+            int length = readVarInt(in);
+            if (recordBuffer.length < length) {
+                recordBuffer = new byte[Math.max(length, recordBuffer.length * 2)];
+            }
+            in.readFully(recordBuffer, 0, length);
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(recordBuffer, 0, length));
+
+            switch (tag) {
+                case HighlightArchiveWriter.TAG_DOCUMENT:
+                    documentId = readString(record);
+                    extractionMethod = readString(record);
+                    break;
+                case HighlightArchiveWriter.TAG_COLOR:
+                    int id = readVarInt(record);
+                    HighlightColor color = HighlightColor.fromName(readString(record));
+                    while (colors.size() <= id) {
+                        colors.add(null);
+                    }
+                    colors.set(id, color);
+                    break;
+                case HighlightArchiveWriter.TAG_HIGHLIGHT:
+                    return readHighlight(record);
+                default:
+                    // Unknown record types are skipped thanks to the length prefix
+                    break;
+            }
+        }
+    }
+
+    public List<HighlightedText> readAll() throws IOException {
+        List<HighlightedText> highlights = new ArrayList<>();
+        HighlightedText highlight;
+        while ((highlight = next()) != null) {
+            highlights.add(highlight);
+        }
+        return highlights;
+    }
+
+    private HighlightedText readHighlight(DataInputStream record) throws IOException {
+        int colorId = readVarInt(record);
+        if (colorId >= colors.size() || colors.get(colorId) == null) {
+            throw new IOException("Highlight references undefined color id " + colorId);
+        }
+
+        int page = readVarInt(record);
+        float llx = record.readFloat();
+        float lly = record.readFloat();
+        float urx = record.readFloat();
+        float ury = record.readFloat();
+        String text = readString(record);
+
+        if (Float.isNaN(llx)) {
+            return new HighlightedText(text, colors.get(colorId), page, null);
+        }
+        return new HighlightedText(text, colors.get(colorId), page, llx, lly, urx, ury);
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getExtractionMethod() {
+        return extractionMethod;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated highlight archive");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in highlight archive");
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
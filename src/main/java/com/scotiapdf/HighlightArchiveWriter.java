@@ -0,0 +1,150 @@
+package com.scotiapdf;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes highlights in a compact, length-prefixed binary archive format.
+ *
+ * Layout: the magic bytes "HLA" and a version byte, followed by records of the form
+ * [tag byte][payload length varint][payload]. Record types:
+ *   'D' document:   documentId string, extractionMethod string
+ *   'C' color:      color id varint, color name string (emitted once, before first use)
+ *   'H' highlight:  color id varint, page varint, llx/lly/urx/ury floats, text string
+ * Strings are a varint byte length followed by UTF-8 bytes. Readers skip unknown tags.
+ */
+public class HighlightArchiveWriter implements HighlightResultWriter {
+
+    static final byte[] MAGIC = {'H', 'L', 'A'};
+    static final int VERSION = 1;
+
+    static final int TAG_DOCUMENT = 'D';
+    static final int TAG_COLOR = 'C';
+    static final int TAG_HIGHLIGHT = 'H';
+
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream payloadBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream payload = new DataOutputStream(payloadBuffer);
+    private final Map<HighlightColor, Integer> colorIds = new EnumMap<>(HighlightColor.class);
+    private long highlightsWritten = 0;
+
+    public HighlightArchiveWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.out.write(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    public static HighlightArchiveWriter open(File file, String documentId, String extractionMethod) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            HighlightArchiveWriter writer = new HighlightArchiveWriter(out);
+            writer.startDocument(documentId, extractionMethod);
+            return writer;
+        } catch (IOException | RuntimeException e) {
+            // The header and document record are written here; don't leak the file if that fails
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a new document section; highlights written afterwards belong to this document.
+     */
+    public synchronized void startDocument(String documentId, String extractionMethod) throws IOException {
+        payloadBuffer.reset();
+        writeString(payload, documentId);
+        writeString(payload, extractionMethod);
+        flushRecord(TAG_DOCUMENT);
+    }
+
+    @Override
+    public synchronized void writePage(List<HighlightedText> pageHighlights) throws IOException {
+        long start = System.nanoTime();
+        try {
+            for (HighlightedText highlight : pageHighlights) {
+                write(highlight);
+            }
+            out.flush();
+        } finally {
+            StageMetrics.shared().record(ExtractionStage.SERIALIZE, start);
+        }
+    }
+
+    public synchronized void write(HighlightedText highlight) throws IOException {
+        int colorId = colorId(highlight.getHighlightColor());
+
+        payloadBuffer.reset();
+        writeVarInt(payload, colorId);
+        writeVarInt(payload, highlight.getPageNumber());
+
+        if (highlight.hasCoordinates()) {
+            payload.writeFloat(highlight.getLowerLeftX());
+            payload.writeFloat(highlight.getLowerLeftY());
+            payload.writeFloat(highlight.getUpperRightX());
+            payload.writeFloat(highlight.getUpperRightY());
+        } else {
+            // NaN coordinates mark a highlight without a location
+            for (int i = 0; i < 4; i++) {
+                payload.writeFloat(Float.NaN);
+            }
+        }
+
+        writeString(payload, highlight.getText());
+        flushRecord(TAG_HIGHLIGHT);
+        highlightsWritten++;
+    }
+
+    private int colorId(HighlightColor color) throws IOException {
+        Integer id = colorIds.get(color);
+        if (id != null) {
+            return id;
+        }
+
+        id = colorIds.size();
+        colorIds.put(color, id);
+
+        payloadBuffer.reset();
+        writeVarInt(payload, id);
+        writeString(payload, color.name());
+        flushRecord(TAG_COLOR);
+        return id;
+    }
+
+    private void flushRecord(int tag) throws IOException {
+        out.writeByte(tag);
+        writeVarInt(out, payloadBuffer.size());
+        payloadBuffer.writeTo(out);
+    }
+
+    public long getHighlightsWritten() {
+        return highlightsWritten;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+}
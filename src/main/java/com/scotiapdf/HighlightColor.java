@@ -0,0 +1,69 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+
+import java.awt.Color;
+import java.util.Locale;
+
+/**
+ * Highlight colors recognised by the extractors.
+ */
+public enum HighlightColor {
+    GREEN,
+    YELLOW,
+    PURPLE;
+
+    /**
+     * Resolves a color name as used in the extractors and JSON output (case-insensitive, in any default locale).
+     *
+     * @throws IllegalArgumentException if the name is null or not one of the colors
+     */
+    public static HighlightColor fromName(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Highlight color must not be null");
+        }
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the target color of a markup annotation, or null if it has no color or none matches.
+     */
+    public static HighlightColor fromAnnotation(PDAnnotationTextMarkup markup) {
+        try {
+            if (markup.getColor() == null) return null;
+            
+            float[] colorComponents = markup.getColor().getComponents();
+            if (colorComponents.length < 3) return null;
+            
+            return fromColor(new Color(colorComponents[0], colorComponents[1], colorComponents[2]));
+            
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static HighlightColor fromColor(Color color) {
+        if (color == null) return null;
+        
+        int r = color.getRed();
+        int g = color.getGreen();
+        int b = color.getBlue();
+        
+        // Green-ish colors (including light green like RGB(197, 251, 114))
+        if (g > 200 && g > r && g > b) {
+            return GREEN;
+        }
+        
+        // Yellow-ish colors (including orange-yellow like RGB(255, 193, 0))
+        if (r > 200 && g > 150 && b < 100) {
+            return YELLOW;
+        }
+        
+        // Purple-ish colors (including RGB(150, 67, 252))
+        if (b > 200 && r > 100 && g < 150) {
+            return PURPLE;
+        }
+        
+        return null;
+    }
+}
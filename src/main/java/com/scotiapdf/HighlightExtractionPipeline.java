@@ -0,0 +1,438 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a list of extraction strategies over every target-color highlight, cheapest first,
+ * and keeps the first acceptable result. Per-strategy timings and hit rates are recorded
+ * so the order can be tuned.
+ *
+ * Work is bounded by a {@link TimeBudget}: a region whose OCR call runs out of time is skipped, a page past its
+ * budget gives up its remaining regions and a document past its budget its remaining pages. What was given up
+ * is listed in the document's {@link DocumentResources}.
+ */
+public class HighlightExtractionPipeline {
+
+    static {
+        QuietMode.init();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(HighlightExtractionPipeline.class);
+
+    static final String EXTRACTION_METHOD = "Cost-ordered extraction pipeline";
+
+    private final List<HighlightExtractionStrategy> strategies;
+    private final Map<String, StrategyStats> stats = new LinkedHashMap<>();
+    private final StrategyStats unresolved = new StrategyStats("unresolved");
+    private HighlightResultWriter resultWriter;
+    private TimeBudget timeBudget = TimeBudget.fromSystemProperties();
+    private PageWindow pageWindow = PageWindow.fromSystemProperties();
+
+    public HighlightExtractionPipeline(List<HighlightExtractionStrategy> strategies) {
+        if (strategies.isEmpty()) {
+            throw new IllegalArgumentException("At least one extraction strategy is required");
+        }
+        this.strategies = new ArrayList<>(strategies);
+        for (HighlightExtractionStrategy strategy : strategies) {
+            stats.put(strategy.getName(), new StrategyStats(strategy.getName()));
+        }
+    }
+
+    /**
+     * Annotation contents, quad-point text and the area stripper; OCR is appended when requested
+     * because it needs a Tesseract installation.
+     */
+    public static HighlightExtractionPipeline withDefaultStrategies(boolean includeOcr) {
+        List<HighlightExtractionStrategy> strategies = new ArrayList<>();
+        strategies.add(new AnnotationContentsStrategy());
+        strategies.add(new QuadPointTextStrategy());
+        strategies.add(new AreaTextStrategy());
+        if (includeOcr) {
+            strategies.add(new OcrTextStrategy());
+        }
+        return new HighlightExtractionPipeline(strategies);
+    }
+
+    public static void main(String[] args) {
+        List<String> arguments = new ArrayList<>(Arrays.asList(QuietMode.apply(args)));
+        boolean includeOcr = arguments.remove("--ocr");
+
+        if (arguments.size() != 1 && !(arguments.size() == 3 && HighlightResultWriter.isOutputOption(arguments.get(1)))) {
+            System.out.println("Usage: java HighlightExtractionPipeline <pdf-file-path> [--ocr] [--quiet] [--jsonl <output.jsonl[.gz]> | --archive <output.hla>]");
+            System.exit(1);
+        }
+
+        String pdfPath = arguments.get(0);
+        HighlightExtractionPipeline pipeline = withDefaultStrategies(includeOcr);
+
+        try (StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(pdfPath)) {
+            List<HighlightedText> highlights;
+            if (arguments.size() == 3) {
+                try (HighlightResultWriter writer = HighlightResultWriter.open(arguments.get(1), new File(arguments.get(2)), new File(pdfPath).getName(), EXTRACTION_METHOD)) {
+                    pipeline.setResultWriter(writer);
+                    highlights = pipeline.extractHighlights(new File(pdfPath));
+                }
+            } else {
+                highlights = pipeline.extractHighlights(new File(pdfPath));
+            }
+            pipeline.outputResults(highlights, timer.getResources(), new File("pipeline-highlights-extraction.json"));
+        } catch (IOException e) {
+            LOG.error("Error processing PDF {}", pdfPath, e);
+        }
+    }
+
+    public void setResultWriter(HighlightResultWriter resultWriter) {
+        this.resultWriter = resultWriter;
+    }
+
+    /**
+     * Limits the time spent on a document, each page and each OCR call; defaults to the timeout system properties.
+     */
+    public void setTimeBudget(TimeBudget timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    public TimeBudget getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * Releases parsed page state every few pages, or reloads the document for each window; defaults to the
+     * page window system properties.
+     */
+    public void setPageWindow(PageWindow pageWindow) {
+        this.pageWindow = pageWindow;
+    }
+
+    public PageWindow getPageWindow() {
+        return pageWindow;
+    }
+
+    /**
+     * Returns a lazy iterator over the highlights of a document. Pages are processed on demand and the
+     * document is closed once the iterator is exhausted; close it explicitly when stopping early.
+     */
+    public HighlightIterator iterate(File pdfFile) throws IOException {
+        return iterate(pdfFile, EnumSet.allOf(HighlightColor.class));
+    }
+
+    /**
+     * Like {@link #iterate(File)}, but only extracts highlights of the given colors.
+     */
+    public HighlightIterator iterate(File pdfFile, Set<HighlightColor> colors) throws IOException {
+        DocumentResources resources = new DocumentResources();
+        long start = System.nanoTime();
+        StageMetrics.DocumentTimer part = StageMetrics.shared().startDocumentPart(pdfFile.getPath(), resources);
+        try {
+            PDDocument document = DocumentLoader.load(pdfFile.length(), () -> PDDocument.load(pdfFile));
+            return new HighlightIterator(this, pdfFile.getPath(), resources, start, document, colors);
+        } finally {
+            part.close();
+        }
+    }
+
+    /**
+     * Returns a lazy, sequential stream over the highlights of a document. Use it in a
+     * try-with-resources block so the document is closed when the caller stops early, e.g.
+     * {@code try (Stream<HighlightedText> s = pipeline.stream(file)) { s.limit(10)... }}.
+     */
+    public Stream<HighlightedText> stream(File pdfFile) throws IOException {
+        return stream(pdfFile, EnumSet.allOf(HighlightColor.class));
+    }
+
+    public Stream<HighlightedText> stream(File pdfFile, Set<HighlightColor> colors) throws IOException {
+        HighlightIterator iterator = iterate(pdfFile, colors);
+        Spliterator<HighlightedText> spliterator = Spliterators.spliteratorUnknownSize(
+            iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+    }
+
+    public List<HighlightedText> extractHighlights(File pdfFile) throws IOException {
+        StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(pdfFile.getPath());
+        try {
+            if (pageWindow.isReopen()) {
+                return extractReopening(pdfFile);
+            }
+            try (PDDocument document = DocumentLoader.load(pdfFile.length(), () -> PDDocument.load(pdfFile))) {
+                LOG.info("Processing PDF {} ({} pages)", pdfFile, document.getNumberOfPages());
+                return extractHighlights(document);
+            }
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * Loads the document once per page window, so nothing parsed for one window is kept for the next.
+     */
+    private List<HighlightedText> extractReopening(File pdfFile) throws IOException {
+        List<HighlightedText> highlights = new ArrayList<>();
+        Deadline documentDeadline = timeBudget.startDocument();
+        int pageCount = Integer.MAX_VALUE;
+
+        for (int start = 0; start < pageCount; start += pageWindow.getPages()) {
+            try (PDDocument document = DocumentLoader.load(pdfFile.length(), () -> PDDocument.load(pdfFile))) {
+                pageCount = document.getNumberOfPages();
+                if (start == 0) {
+                    LOG.info("Processing PDF {} ({} pages, reopened every {} pages)", pdfFile, pageCount, pageWindow.getPages());
+                }
+                int end = Math.min(pageCount, start + pageWindow.getPages());
+                if (!extractPages(document, start, end, pageCount, resultWriter, documentDeadline, highlights)) {
+                    break;
+                }
+            }
+        }
+        return highlights;
+    }
+
+    public List<HighlightedText> extractHighlights(PDDocument document) throws IOException {
+        return extractHighlights(document, resultWriter);
+    }
+
+    /**
+     * Extracts all pages, streaming each page's highlights to the given writer (which may be null).
+     */
+    public List<HighlightedText> extractHighlights(PDDocument document, HighlightResultWriter pageWriter) throws IOException {
+        return extractHighlights(document, 0, document.getNumberOfPages(), pageWriter);
+    }
+
+    /**
+     * Extracts the pages with zero-based indexes from startPage (inclusive) to endPage (exclusive).
+     */
+    public List<HighlightedText> extractHighlights(PDDocument document, int startPage, int endPage,
+                                                  HighlightResultWriter pageWriter) throws IOException {
+        List<HighlightedText> highlights = new ArrayList<>();
+        int lastPage = Math.min(endPage, document.getNumberOfPages());
+        extractPages(document, startPage, lastPage, lastPage, pageWriter, timeBudget.startDocument(), highlights);
+        return highlights;
+    }
+
+    /**
+     * Adds the highlights of pages startPage to lastPage (exclusive) to the list. Returns false when the document
+     * ran out of time, recording the pages up to skipUntil as skipped.
+     */
+    private boolean extractPages(PDDocument document, int startPage, int lastPage, int skipUntil,
+                                 HighlightResultWriter pageWriter, Deadline documentDeadline,
+                                 List<HighlightedText> highlights) throws IOException {
+        CancellablePdfRenderer renderer = new CancellablePdfRenderer(document);
+
+        for (int pageNum = startPage; pageNum < lastPage; pageNum++) {
+            if (documentDeadline.isExpired()) {
+                recordTimeout(TimedOutWork.document(pageNum + 1, skipUntil - pageNum));
+                return false;
+            }
+            pageWindow.beforePage(document, pageNum, startPage);
+            PageContext page = new PageContext(document, document.getPage(pageNum), pageNum + 1, renderer, timeBudget, documentDeadline);
+            List<HighlightedText> pageHighlights = extractPage(page);
+            highlights.addAll(pageHighlights);
+
+            if (pageWriter != null) {
+                pageWriter.writePage(pageHighlights);
+            }
+        }
+
+        return true;
+    }
+
+    public List<HighlightedText> extractPage(PageContext page) throws IOException {
+        return extractPage(page, EnumSet.allOf(HighlightColor.class));
+    }
+
+    public List<HighlightedText> extractPage(PageContext page, Set<HighlightColor> colors) throws IOException {
+        PageExtractionEvent event = PageExtractionEvent.start();
+        List<HighlightedText> highlights = new ArrayList<>();
+        List<PDAnnotation> annotations = StageMetrics.shared().time(ExtractionStage.ANNOTATIONS, () -> page.getPage().getAnnotations());
+
+        for (int i = 0; i < annotations.size(); i++) {
+            HighlightColor color = targetColor(annotations.get(i), colors);
+            if (color == null) {
+                continue;
+            }
+            try {
+                page.getDeadline().check();
+                HighlightedText highlight = extractHighlight((PDAnnotationTextMarkup) annotations.get(i), color, page);
+                if (highlight != null) {
+                    highlights.add(highlight);
+                }
+            } catch (ExtractionTimeoutException e) {
+                recordTimeout(TimedOutWork.page(e.getScope(), page.getPageNumber(), countTargets(annotations, i, colors)));
+                break;
+            }
+        }
+
+        event.finish(page.getPageNumber(), "pipeline", highlights.size());
+        return highlights;
+    }
+
+    private static HighlightColor targetColor(PDAnnotation annotation, Set<HighlightColor> colors) {
+        if (!(annotation instanceof PDAnnotationTextMarkup)) {
+            return null;
+        }
+        HighlightColor color = HighlightColor.fromAnnotation((PDAnnotationTextMarkup) annotation);
+        return color != null && colors.contains(color) ? color : null;
+    }
+
+    private static int countTargets(List<PDAnnotation> annotations, int from, Set<HighlightColor> colors) {
+        int count = 0;
+        for (int i = from; i < annotations.size(); i++) {
+            if (targetColor(annotations.get(i), colors) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void recordTimeout(TimedOutWork work) {
+        StageMetrics.shared().recordTimeout(work);
+        LOG.warn("Abandoned work: {}", work);
+    }
+
+    /**
+     * Tries the strategies in order and returns the first acceptable result, or null if none succeeds.
+     * A region whose OCR call runs out of time is recorded and left unresolved.
+     *
+     * @throws ExtractionTimeoutException when the page or document runs out of time
+     */
+    public HighlightedText extractHighlight(PDAnnotationTextMarkup markup, HighlightColor color, PageContext page)
+            throws ExtractionTimeoutException {
+        long unresolvedStart = System.nanoTime();
+
+        for (HighlightExtractionStrategy strategy : strategies) {
+            long start = System.nanoTime();
+            HighlightRegionEvent event = HighlightRegionEvent.start();
+            String text = null;
+            boolean error = false;
+            ExtractionTimeoutException timeout = null;
+            try {
+                text = strategy.extractText(markup, page);
+            } catch (ExtractionTimeoutException e) {
+                timeout = e;
+            } catch (Exception e) {
+                error = true;
+                LOG.warn("{} failed on page {}: {}", strategy.getName(), page.getPageNumber(), e.getMessage());
+                LOG.debug("{} failure", strategy.getName(), e);
+            }
+            event.finish(page.getPageNumber(), strategy.getName(), color.name(), markup.getRectangle(), text);
+
+            boolean accepted = isAcceptable(text);
+            stats.get(strategy.getName()).record(System.nanoTime() - start, accepted, error);
+
+            if (timeout != null) {
+                if (!"ocr".equals(timeout.getScope())) {
+                    throw timeout;
+                }
+                recordTimeout(TimedOutWork.region(timeout.getScope(), page.getPageNumber(), markup.getRectangle()));
+            }
+
+            if (accepted) {
+                return new HighlightedText(text.trim(), color, page.getPageNumber(), markup.getRectangle());
+            }
+        }
+
+        unresolved.record(System.nanoTime() - unresolvedStart, false, false);
+        return null;
+    }
+
+    /**
+     * Runs every strategy, not only up to the first that finds text, on the highlights of the document's first
+     * page on the calling thread, so strategies with per-thread state (the OCR strategy's Tesseract instance)
+     * are initialized for it. Unlike extraction, strategy failures are thrown, and statistics are not recorded.
+     * A document without pages warms up nothing.
+     */
+    public void warmUp(PDDocument document) throws IOException {
+        if (document.getNumberOfPages() == 0) {
+            return;
+        }
+        PDPage page = document.getPage(0);
+        PageContext context = new PageContext(document, page, 1, new CancellablePdfRenderer(document));
+        for (PDAnnotation annotation : page.getAnnotations()) {
+            if (annotation instanceof PDAnnotationTextMarkup) {
+                for (HighlightExtractionStrategy strategy : strategies) {
+                    strategy.extractText((PDAnnotationTextMarkup) annotation, context);
+                }
+            }
+        }
+    }
+
+    private boolean isAcceptable(String text) {
+        return text != null && !text.trim().isEmpty();
+    }
+
+    public List<StrategyStats> getStrategyStats() {
+        return new ArrayList<>(stats.values());
+    }
+
+    public long getUnresolvedCount() {
+        return unresolved.getAttempts();
+    }
+
+    public void printStrategyReport() {
+        System.out.println("STRATEGY REPORT:");
+        for (StrategyStats strategyStats : stats.values()) {
+            System.out.println("  " + strategyStats);
+        }
+        System.out.println("  Unresolved highlights: " + getUnresolvedCount());
+    }
+
+    public ObjectNode toJson(ObjectMapper mapper, List<HighlightedText> highlights) {
+        ObjectNode root = HighlightJsonReport.build(mapper, highlights, EXTRACTION_METHOD);
+
+        ArrayNode strategyArray = mapper.createArrayNode();
+        for (StrategyStats strategyStats : stats.values()) {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("strategy", strategyStats.getName());
+            node.put("attempts", strategyStats.getAttempts());
+            node.put("hits", strategyStats.getHits());
+            node.put("errors", strategyStats.getErrors());
+            node.put("hitRate", strategyStats.getHitRate());
+            node.put("totalMillis", strategyStats.getTotalNanos() / 1_000_000.0);
+            strategyArray.add(node);
+        }
+        root.set("strategyStats", strategyArray);
+        root.put("unresolvedHighlights", getUnresolvedCount());
+
+        return root;
+    }
+
+    private void outputResults(List<HighlightedText> highlights, DocumentResources resources, File outputFile) throws IOException {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("PIPELINE EXTRACTION RESULTS");
+        System.out.println("=".repeat(60));
+        System.out.println("Total highlights found: " + highlights.size());
+        for (Map.Entry<String, List<HighlightedText>> entry : HighlightJsonReport.groupByColor(highlights).entrySet()) {
+            System.out.println(entry.getKey() + " highlights: " + entry.getValue().size());
+        }
+        System.out.println();
+        if (!QuietMode.isEnabled()) {
+            printStrategyReport();
+            System.out.println("Resources: " + resources);
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = toJson(mapper, highlights);
+        HighlightJsonReport.putResources(mapper, root, resources);
+        HighlightJsonReport.save(mapper, root, outputFile);
+        System.out.println("\nJSON OUTPUT SAVED TO: " + outputFile.getAbsolutePath());
+        if (!QuietMode.isEnabled()) {
+            System.out.println();
+            StageMetrics.shared().printReport();
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Long-running local HTTP service that keeps PDFBox and Tesseract warm between requests.
+ *
+ *   POST /extract            request body is the PDF (up to the upload limit)
+ *   GET  /extract?path=...   PDF on the local file system, below one of the allowed roots
+ *   GET  /health             liveness check
+ *   GET  /stats              per-strategy counters
+ *   GET  /metrics            stage timing histograms in the Prometheus text format
+ *
+ * Add "ocr=true" to the query to enable the OCR strategy (requires --ocr at startup).
+ * Extraction runs on a fixed pool of maxConcurrent worker threads, each of which keeps its own
+ * warm Tesseract instance. At most maxQueued more requests wait for a worker; requests beyond
+ * that are rejected with 429 instead of piling up.
+ */
+public class HighlightExtractionServer {
+
+    static {
+        QuietMode.init();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(HighlightExtractionServer.class);
+
+    private static final int SPARE_HANDLER_THREADS = 2;
+
+    private final HighlightExtractionPipeline textPipeline;
+    private final HighlightExtractionPipeline ocrPipeline;
+    private final Semaphore admission;
+    private final ThreadPoolExecutor workers;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxUploadBytes;
+    private final List<Path> allowedRoots;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpServer server;
+    private ExecutorService handlers;
+
+    public HighlightExtractionServer(boolean ocrEnabled, int maxConcurrent, int maxQueued,
+                                     long maxUploadBytes, List<Path> allowedRoots) {
+        this.textPipeline = HighlightExtractionPipeline.withDefaultStrategies(false);
+        this.ocrPipeline = ocrEnabled ? HighlightExtractionPipeline.withDefaultStrategies(true) : null;
+        this.admission = new Semaphore(maxConcurrent + maxQueued);
+        this.workers = (ThreadPoolExecutor) Executors.newFixedThreadPool(maxConcurrent);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxUploadBytes = maxUploadBytes;
+        this.allowedRoots = new ArrayList<>();
+        for (Path root : allowedRoots) {
+            this.allowedRoots.add(root.toAbsolutePath().normalize());
+        }
+    }
+
+    public static void main(String[] args) {
+        args = QuietMode.apply(args);
+        String bindAddress = "127.0.0.1";
+        int port = 8085;
+        boolean ocrEnabled = false;
+        int maxConcurrent = Runtime.getRuntime().availableProcessors();
+        int maxQueued = maxConcurrent * 2;
+        long maxUploadMb = 100;
+        List<Path> allowedRoots = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--bind":
+                        bindAddress = args[++i];
+                        break;
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--ocr":
+                        ocrEnabled = true;
+                        break;
+                    case "--max-concurrent":
+                        maxConcurrent = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-queued":
+                        maxQueued = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-upload-mb":
+                        maxUploadMb = Long.parseLong(args[++i]);
+                        break;
+                    case "--allow-path-root":
+                        allowedRoots.add(Paths.get(args[++i]));
+                        break;
+                    default:
+                        throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Usage: java HighlightExtractionServer [--bind <address>] [--port <port>] [--ocr] "
+                               + "[--max-concurrent <n>] [--max-queued <n>] [--max-upload-mb <mb>] [--allow-path-root <dir>]... [--quiet]");
+            System.exit(1);
+        }
+
+        try {
+            HighlightExtractionServer server = new HighlightExtractionServer(
+                ocrEnabled, maxConcurrent, maxQueued, maxUploadMb * 1024 * 1024, allowedRoots);
+            server.start(new InetSocketAddress(bindAddress, port));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        } catch (IOException e) {
+            LOG.error("Could not start server", e);
+            System.exit(1);
+        }
+    }
+
+    public void start(InetSocketAddress address) throws IOException {
+        warmUp();
+
+        server = HttpServer.create(address, 0);
+        // Admitted requests wait here for a worker; the spare threads answer health checks and 429s
+        handlers = Executors.newFixedThreadPool(maxConcurrent + maxQueued + SPARE_HANDLER_THREADS);
+        server.setExecutor(handlers);
+        server.createContext("/extract", this::handleExtract);
+        server.createContext("/health", exchange -> sendText(exchange, 200, "ok"));
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/metrics", this::handleMetrics);
+        server.start();
+
+        LOG.info("Highlight extraction server listening on http://{}:{}", address.getHostString(), server.getAddress().getPort());
+        LOG.info("OCR: {}, max concurrent: {}, max queued: {}", ocrPipeline != null ? "enabled" : "disabled",
+                 maxConcurrent, maxQueued);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            handlers.shutdownNow();
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * Runs a small generated document through the text pipeline so class loading, font setup and JIT
+     * warm-up happen before the first request instead of during it. With OCR, every worker thread also
+     * OCRs the document once, which creates its Tesseract instance and fails fast if Tesseract is not installed.
+     */
+    private void warmUp() throws IOException {
+        long start = System.nanoTime();
+        try (PDDocument document = createWarmUpDocument()) {
+            textPipeline.extractHighlights(document, null);
+        }
+        if (ocrPipeline != null) {
+            warmUpOcrWorkers();
+        }
+        LOG.info("Warm-up completed in {} ms", String.format("%.1f", (System.nanoTime() - start) / 1_000_000.0));
+    }
+
+    private void warmUpOcrWorkers() throws IOException {
+        workers.prestartAllCoreThreads();
+        // Each task waits until all have started, so every worker thread runs exactly one
+        CountDownLatch started = new CountDownLatch(maxConcurrent);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < maxConcurrent; i++) {
+            tasks.add(workers.submit(() -> {
+                started.countDown();
+                started.await();
+                try (PDDocument document = createWarmUpDocument()) {
+                    ocrPipeline.warmUp(document);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during OCR warm-up", e);
+        } catch (ExecutionException e) {
+            throw new IOException("OCR warm-up failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static PDDocument createWarmUpDocument() throws IOException {
+        PDDocument document = new PDDocument();
+        PDPage page = new PDPage(PDRectangle.LETTER);
+        document.addPage(page);
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            content.beginText();
+            content.setFont(PDType1Font.HELVETICA, 12);
+            content.newLineAtOffset(72, 700);
+            content.showText("Warm-up highlight");
+            content.endText();
+        }
+        PDAnnotationTextMarkup highlight = new PDAnnotationTextMarkup(PDAnnotationTextMarkup.SUB_TYPE_HIGHLIGHT);
+        highlight.setRectangle(new PDRectangle(70, 696, 120, 16));
+        highlight.setQuadPoints(new float[] {70, 712, 190, 712, 70, 696, 190, 696});
+        highlight.setColor(new PDColor(new float[] {1, 1, 0}, PDDeviceRGB.INSTANCE));
+        page.getAnnotations().add(highlight);
+        return document;
+    }
+
+    private void handleExtract(HttpExchange exchange) throws IOException {
+        try {
+            if (!admission.tryAcquire()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 429, "Server is at capacity, retry later");
+                return;
+            }
+            try {
+                extract(exchange);
+            } finally {
+                admission.release();
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            sendError(exchange, 503, "Server is shutting down");
+        } catch (ExecutionException e) {
+            LOG.warn("Extraction failed for {}", exchange.getRequestURI(), e.getCause());
+            sendError(exchange, 500, "Extraction failed: " + e.getCause().getMessage());
+        } catch (Exception e) {
+            LOG.warn("Extraction failed for {}", exchange.getRequestURI(), e);
+            sendError(exchange, 500, "Extraction failed: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void extract(HttpExchange exchange) throws IOException, InterruptedException, ExecutionException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        boolean useOcr = Boolean.parseBoolean(query.get("ocr"));
+        if (useOcr && ocrPipeline == null) {
+            sendError(exchange, 400, "OCR is not enabled on this server (start it with --ocr)");
+            return;
+        }
+        HighlightExtractionPipeline pipeline = useOcr ? ocrPipeline : textPipeline;
+
+        String documentId;
+        long inputBytes;
+        StageMetrics.IOSupplier<PDDocument> loader;
+        String method = exchange.getRequestMethod();
+        if (query.containsKey("path")) {
+            Path path = Paths.get(query.get("path")).toAbsolutePath().normalize();
+            if (!isAllowedPath(path)) {
+                sendError(exchange, 403, "Path is outside the allowed roots: " + path);
+                return;
+            }
+            if (!Files.isRegularFile(path)) {
+                sendError(exchange, 404, "File not found: " + path);
+                return;
+            }
+            documentId = path.getFileName().toString();
+            inputBytes = Files.size(path);
+            loader = () -> PDDocument.load(path.toFile());
+        } else if ("POST".equals(method)) {
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                sendError(exchange, 413, "Upload exceeds " + maxUploadBytes + " bytes");
+                return;
+            }
+            documentId = query.getOrDefault("name", "upload.pdf");
+            inputBytes = body.length;
+            loader = () -> PDDocument.load(body);
+        } else {
+            sendError(exchange, 400, "POST a PDF body or pass ?path=<local file>");
+            return;
+        }
+
+        long queuedAt = System.nanoTime();
+        Future<byte[]> result = workers.submit(() -> {
+            long start = System.nanoTime();
+            try (StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(documentId)) {
+                List<HighlightedText> highlights;
+                try (PDDocument document = DocumentLoader.load(inputBytes, loader)) {
+                    highlights = pipeline.extractHighlights(document, null);
+                }
+
+                ObjectNode root = HighlightJsonReport.build(mapper, highlights, HighlightExtractionPipeline.EXTRACTION_METHOD);
+                root.put("documentId", documentId);
+                root.put("queuedMillis", (start - queuedAt) / 1_000_000.0);
+                root.put("elapsedMillis", (System.nanoTime() - start) / 1_000_000.0);
+                HighlightJsonReport.putResources(mapper, root, timer.getResources());
+                return StageMetrics.shared().time(ExtractionStage.SERIALIZE, () -> mapper.writeValueAsBytes(root));
+            }
+        });
+        sendJson(exchange, 200, result.get());
+    }
+
+    private boolean isAllowedPath(Path path) {
+        for (Path root : allowedRoots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the request body, or returns null if it exceeds the upload limit.
+     */
+    private byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (body.size() + read > maxUploadBytes) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            ObjectNode root = mapper.createObjectNode();
+            root.put("running", workers.getActiveCount());
+            root.put("queued", workers.getQueue().size());
+            root.put("maxConcurrent", maxConcurrent);
+            root.put("maxQueued", maxQueued);
+            root.put("completed", workers.getCompletedTaskCount());
+            root.set("text", statsJson(textPipeline));
+            if (ocrPipeline != null) {
+                root.set("ocr", statsJson(ocrPipeline));
+            }
+            sendJson(exchange, 200, root);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        StringWriter text = new StringWriter();
+        StageMetrics.shared().writePrometheus(text);
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        exchange.close();
+    }
+
+    private ArrayNode statsJson(HighlightExtractionPipeline pipeline) {
+        ArrayNode array = mapper.createArrayNode();
+        for (StrategyStats stats : pipeline.getStrategyStats()) {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("strategy", stats.getName());
+            node.put("attempts", stats.getAttempts());
+            node.put("hits", stats.getHits());
+            node.put("errors", stats.getErrors());
+            node.put("totalMillis", stats.getTotalNanos() / 1_000_000.0);
+            array.add(node);
+        }
+        return array;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            query.put(key, value);
+        }
+        return query;
+    }
+
+    private void sendJson(HttpExchange exchange, int status, ObjectNode body) throws IOException {
+        sendJson(exchange, status, mapper.writeValueAsBytes(body));
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        ObjectNode body = mapper.createObjectNode();
+        body.put("error", message);
+        sendJson(exchange, status, body);
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        exchange.close();
+    }
+}
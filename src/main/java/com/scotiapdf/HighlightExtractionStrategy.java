@@ -0,0 +1,19 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+
+import java.io.IOException;
+
+/**
+ * One way of turning a highlight annotation into text. The pipeline tries strategies
+ * in order of increasing cost and stops at the first one that returns acceptable text.
+ */
+public interface HighlightExtractionStrategy {
+
+    String getName();
+
+    /**
+     * Returns the text under the highlight, or null if this strategy cannot provide it.
+     */
+    String extractText(PDAnnotationTextMarkup markup, PageContext page) throws IOException;
+}
@@ -0,0 +1,117 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Iterates the highlights of a document page by page, processing the next page only when the
+ * highlights of the previous one have been consumed. The document is closed when the last page
+ * has been processed or when {@link #close()} is called, whichever comes first.
+ *
+ * The document's time budget runs from opening it, including the time the consumer spends between pages.
+ */
+public class HighlightIterator implements Iterator<HighlightedText>, Closeable {
+    private final HighlightExtractionPipeline pipeline;
+    private final String documentId;
+    private final DocumentResources resources;
+    private final long startNanos;
+    private final PDDocument document;
+    private final CancellablePdfRenderer renderer;
+    private final Deadline documentDeadline;
+    private final Set<HighlightColor> colors;
+    private final Deque<HighlightedText> pending = new ArrayDeque<>();
+    private int nextPageIndex = 0;
+    private boolean closed = false;
+    
+    HighlightIterator(HighlightExtractionPipeline pipeline, String documentId, DocumentResources resources, long startNanos,
+                      PDDocument document, Set<HighlightColor> colors) {
+        this.pipeline = pipeline;
+        this.documentId = documentId;
+        this.resources = resources;
+        this.startNanos = startNanos;
+        this.document = document;
+        this.renderer = new CancellablePdfRenderer(document);
+        this.documentDeadline = pipeline.getTimeBudget().startDocument();
+        this.colors = colors;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        while (pending.isEmpty() && !closed) {
+            if (nextPageIndex >= document.getNumberOfPages()) {
+                close();
+                break;
+            }
+            
+            if (documentDeadline.isExpired()) {
+                resources.addTimeout(TimedOutWork.document(nextPageIndex + 1, document.getNumberOfPages() - nextPageIndex));
+                close();
+                break;
+            }
+            
+            int pageIndex = nextPageIndex++;
+            pipeline.getPageWindow().beforePage(document, pageIndex, 0);
+            // Pages are pulled by the consumer's thread, so each one carries the document id for its events
+            StageMetrics.DocumentTimer part = StageMetrics.shared().startDocumentPart(documentId, resources);
+            try {
+                PageContext page = new PageContext(document, document.getPage(pageIndex), pageIndex + 1, renderer,
+                                                   pipeline.getTimeBudget(), documentDeadline);
+                pending.addAll(pipeline.extractPage(page, colors));
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Failed to extract highlights from page " + (pageIndex + 1), e);
+            } finally {
+                part.close();
+            }
+        }
+        return !pending.isEmpty();
+    }
+    
+    @Override
+    public HighlightedText next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return pending.poll();
+    }
+    
+    /**
+     * Number of pages processed so far.
+     */
+    public int getPagesProcessed() {
+        return nextPageIndex;
+    }
+
+    /**
+     * Resources used for the pages processed so far, on whichever threads consumed them. Wall time runs
+     * from opening the document until the iterator is closed.
+     */
+    public DocumentResources getResources() {
+        if (!closed) {
+            resources.setWallNanos(System.nanoTime() - startNanos);
+        }
+        return resources;
+    }
+    
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        resources.setWallNanos(System.nanoTime() - startNanos);
+        try {
+            document.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close document", e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.scotiapdf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Builds the grouped-by-color JSON result document written by the extractors.
+ */
+public final class HighlightJsonReport {
+    
+    private HighlightJsonReport() {
+    }
+    
+    public static Map<String, List<HighlightedText>> groupByColor(List<HighlightedText> highlights) {
+        Map<String, List<HighlightedText>> groupedHighlights = new LinkedHashMap<>();
+        for (HighlightedText highlight : highlights) {
+            groupedHighlights.computeIfAbsent(highlight.getColor(), k -> new ArrayList<>()).add(highlight);
+        }
+        return groupedHighlights;
+    }
+    
+    public static ObjectNode build(ObjectMapper mapper, List<HighlightedText> highlights, String extractionMethod) {
+        ObjectNode root = mapper.createObjectNode();
+        
+        root.put("totalHighlights", highlights.size());
+        root.put("extractionDate", new Date().toString());
+        if (extractionMethod != null) {
+            root.put("extractionMethod", extractionMethod);
+        }
+        
+        ObjectNode colorGroups = mapper.createObjectNode();
+        for (Map.Entry<String, List<HighlightedText>> entry : groupByColor(highlights).entrySet()) {
+            ArrayNode colorArray = mapper.createArrayNode();
+            for (HighlightedText highlight : entry.getValue()) {
+                ObjectNode highlightNode = mapper.createObjectNode();
+                highlightNode.put("text", highlight.getText());
+                highlightNode.put("page", highlight.getPageNumber());
+                highlightNode.put("coordinates", String.valueOf(highlight.getCoordinates()));
+                colorArray.add(highlightNode);
+            }
+            colorGroups.set(entry.getKey().toLowerCase(), colorArray);
+        }
+        
+        root.set("highlightsByColor", colorGroups);
+        return root;
+    }
+    
+    /**
+     * Adds the document's resource use as "resources", and the work abandoned on a time budget as "timeouts";
+     * does nothing when they are not known.
+     */
+    public static void putResources(ObjectMapper mapper, ObjectNode root, DocumentResources resources) {
+        if (resources != null) {
+            root.set("resources", resources.toJson(mapper));
+            List<TimedOutWork> timeouts = resources.getTimeouts();
+            if (!timeouts.isEmpty()) {
+                ArrayNode timeoutArray = mapper.createArrayNode();
+                for (TimedOutWork work : timeouts) {
+                    timeoutArray.add(work.toJson(mapper));
+                }
+                root.set("timeouts", timeoutArray);
+            }
+        }
+    }
+    
+    public static void save(ObjectMapper mapper, ObjectNode root, File outputFile) throws IOException {
+        long start = System.nanoTime();
+        try {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(outputFile, root);
+        } finally {
+            StageMetrics.shared().record(ExtractionStage.SERIALIZE, start);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.scotiapdf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * JFR event for one attempt at extracting the text under a highlight. The pipeline emits one per
+ * strategy tried, so a slow region shows which strategy spent the time.
+ */
+@Name("com.scotiapdf.HighlightRegion")
+@Label("Highlight Region Extraction")
+@Category({"PDF Highlight Extractor"})
+@Description("Extracting the text of one highlight region with one strategy")
+@StackTrace(false)
+public class HighlightRegionEvent extends Event {
+
+    @Label("Document")
+    String documentId;
+
+    @Label("Page Number")
+    int pageNumber;
+
+    @Label("Strategy")
+    String strategy;
+
+    @Label("Color")
+    String color;
+
+    @Label("Width (pt)")
+    float width;
+
+    @Label("Height (pt)")
+    float height;
+
+    @Label("Characters")
+    int characters;
+
+    @Label("Accepted")
+    boolean accepted;
+
+    static HighlightRegionEvent start() {
+        HighlightRegionEvent event = new HighlightRegionEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event if it passes the recording's threshold; text is null when nothing was found.
+     */
+    void finish(int pageNumber, String strategy, String color, PDRectangle region, String text) {
+        end();
+        if (shouldCommit()) {
+            this.documentId = StageMetrics.shared().currentDocumentId();
+            this.pageNumber = pageNumber;
+            this.strategy = strategy;
+            this.color = color;
+            this.width = region != null ? region.getWidth() : 0;
+            this.height = region != null ? region.getHeight() : 0;
+            this.characters = text != null ? text.trim().length() : 0;
+            this.accepted = characters > 0;
+            commit();
+        }
+    }
+}
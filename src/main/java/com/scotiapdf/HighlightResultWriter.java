@@ -0,0 +1,32 @@
+package com.scotiapdf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Streaming sink that receives the highlights of each page as soon as the page is processed.
+ */
+public interface HighlightResultWriter extends Closeable {
+
+    void writePage(List<HighlightedText> pageHighlights) throws IOException;
+
+    static boolean isOutputOption(String option) {
+        return "--jsonl".equals(option) || "--archive".equals(option);
+    }
+
+    /**
+     * Opens the writer selected by a command line option ("--jsonl" or "--archive").
+     */
+    static HighlightResultWriter open(String option, File file, String documentId, String extractionMethod) throws IOException {
+        switch (option) {
+            case "--jsonl":
+                return JsonLinesWriter.open(file, documentId, extractionMethod);
+            case "--archive":
+                return HighlightArchiveWriter.open(file, documentId, extractionMethod);
+            default:
+                throw new IllegalArgumentException("Unknown output option: " + option);
+        }
+    }
+}
@@ -4,54 +4,113 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
 
 /**
  * Represents a piece of highlighted text extracted from a PDF document.
+ * Instances are immutable and keep only primitive coordinates, so they never hold on to
+ * objects of the source document once it is closed.
  */
-public class HighlightedText {
-    private String text;
-    private String color;
-    private int pageNumber;
-    private PDRectangle coordinates;
+public final class HighlightedText {
+    private final String text;
+    private final HighlightColor color;
+    private final int pageNumber;
+    private final boolean hasCoordinates;
+    private final float lowerLeftX;
+    private final float lowerLeftY;
+    private final float upperRightX;
+    private final float upperRightY;
+    private final int hash;
     
+    /**
+     * Takes the color by name, see {@link HighlightColor#fromName(String)}.
+     *
+     * @throws IllegalArgumentException if the color is not one of the {@link HighlightColor} names
+     */
     public HighlightedText(String text, String color, int pageNumber, PDRectangle coordinates) {
+        this(text, HighlightColor.fromName(color), pageNumber, coordinates);
+    }
+    
+    public HighlightedText(String text, HighlightColor color, int pageNumber, PDRectangle coordinates) {
+        this(text, color, pageNumber, coordinates != null,
+             coordinates != null ? coordinates.getLowerLeftX() : 0f,
+             coordinates != null ? coordinates.getLowerLeftY() : 0f,
+             coordinates != null ? coordinates.getUpperRightX() : 0f,
+             coordinates != null ? coordinates.getUpperRightY() : 0f);
+    }
+    
+    public HighlightedText(String text, HighlightColor color, int pageNumber,
+                           float lowerLeftX, float lowerLeftY, float upperRightX, float upperRightY) {
+        this(text, color, pageNumber, true, lowerLeftX, lowerLeftY, upperRightX, upperRightY);
+    }
+    
+    private HighlightedText(String text, HighlightColor color, int pageNumber, boolean hasCoordinates,
+                            float lowerLeftX, float lowerLeftY, float upperRightX, float upperRightY) {
+        if (text == null || color == null) {
+            throw new IllegalArgumentException("Highlight text and color must not be null");
+        }
         this.text = text;
         this.color = color;
         this.pageNumber = pageNumber;
-        this.coordinates = coordinates;
+        this.hasCoordinates = hasCoordinates;
+        this.lowerLeftX = lowerLeftX;
+        this.lowerLeftY = lowerLeftY;
+        this.upperRightX = upperRightX;
+        this.upperRightY = upperRightY;
+        this.hash = computeHash();
     }
     
     public String getText() {
         return text;
     }
     
-    public void setText(String text) {
-        this.text = text;
-    }
-    
     public String getColor() {
-        return color;
+        return color.name();
     }
     
-    public void setColor(String color) {
-        this.color = color;
+    public HighlightColor getHighlightColor() {
+        return color;
     }
     
     public int getPageNumber() {
         return pageNumber;
     }
     
-    public void setPageNumber(int pageNumber) {
-        this.pageNumber = pageNumber;
+    /**
+     * Returns a new, detached rectangle for the highlight location, or null if it has none.
+     */
+    public PDRectangle getCoordinates() {
+        if (!hasCoordinates) {
+            return null;
+        }
+        return new PDRectangle(lowerLeftX, lowerLeftY, upperRightX - lowerLeftX, upperRightY - lowerLeftY);
     }
     
-    public PDRectangle getCoordinates() {
-        return coordinates;
+    public boolean hasCoordinates() {
+        return hasCoordinates;
+    }
+    
+    public float getLowerLeftX() {
+        return lowerLeftX;
+    }
+    
+    public float getLowerLeftY() {
+        return lowerLeftY;
     }
     
-    public void setCoordinates(PDRectangle coordinates) {
-        this.coordinates = coordinates;
+    public float getUpperRightX() {
+        return upperRightX;
+    }
+    
+    public float getUpperRightY() {
+        return upperRightY;
+    }
+    
+    public HighlightedText withText(String newText) {
+        return new HighlightedText(newText, color, pageNumber, hasCoordinates, lowerLeftX, lowerLeftY, upperRightX, upperRightY);
     }
     
     @Override
     public String toString() {
+        String coordinates = hasCoordinates
+            ? "[" + lowerLeftX + "," + lowerLeftY + "," + upperRightX + "," + upperRightY + "]"
+            : "null";
         return String.format("HighlightedText{color='%s', page=%d, text='%s', coordinates=%s}", 
                            color, pageNumber, text.length() > 50 ? text.substring(0, 50) + "..." : text, coordinates);
     }
@@ -62,18 +121,30 @@ public class HighlightedText {
         if (obj == null || getClass() != obj.getClass()) return false;
         
         HighlightedText that = (HighlightedText) obj;
-        return pageNumber == that.pageNumber &&
-               text.equals(that.text) &&
-               color.equals(that.color) &&
-               coordinates.equals(that.coordinates);
+        return hash == that.hash &&
+               pageNumber == that.pageNumber &&
+               color == that.color &&
+               hasCoordinates == that.hasCoordinates &&
+               Float.compare(lowerLeftX, that.lowerLeftX) == 0 &&
+               Float.compare(lowerLeftY, that.lowerLeftY) == 0 &&
+               Float.compare(upperRightX, that.upperRightX) == 0 &&
+               Float.compare(upperRightY, that.upperRightY) == 0 &&
+               text.equals(that.text);
     }
     
     @Override
     public int hashCode() {
+        return hash;
+    }
+    
+    private int computeHash() {
         int result = text.hashCode();
-        result = 31 * result + color.hashCode();
+        result = 31 * result + color.ordinal();
         result = 31 * result + pageNumber;
-        result = 31 * result + coordinates.hashCode();
+        result = 31 * result + Float.floatToIntBits(lowerLeftX);
+        result = 31 * result + Float.floatToIntBits(lowerLeftY);
+        result = 31 * result + Float.floatToIntBits(upperRightX);
+        result = 31 * result + Float.floatToIntBits(upperRightY);
         return result;
     }
 }
@@ -0,0 +1,373 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Re-extracts only what changed when a PDF was saved as an incremental update (new revision appended to the file).
+ *
+ * Every run stores a state file with the file length and SHA-256, per-page fingerprints of /Annots and of the
+ * page content, and the extracted highlights. On the next run the file is an appended revision of that state
+ * if it is longer and its first fileLength bytes still hash to the stored SHA-256. Then only pages whose
+ * annotations or content fingerprint changed are processed; the others keep their previous highlights.
+ * Any other change (or a missing state file) falls back to a full extraction.
+ *
+ * Writes the merged full result in the usual JSON format, plus a delta with the highlights added and removed
+ * since the previous revision.
+ */
+public class IncrementalHighlightExtractor {
+
+    static {
+        QuietMode.init();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalHighlightExtractor.class);
+
+    static final String EXTRACTION_METHOD = "Incremental extraction pipeline";
+
+    enum RevisionKind {
+        FULL, APPENDED, UNCHANGED
+    }
+
+    private final HighlightExtractionPipeline pipeline;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public IncrementalHighlightExtractor(HighlightExtractionPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public static void main(String[] args) {
+        args = QuietMode.apply(args);
+        boolean includeOcr = false;
+        Path pdf = null;
+        Path stateFile = null;
+        Path outputFile = null;
+        Path deltaFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--ocr":
+                        includeOcr = true;
+                        break;
+                    case "--state":
+                        stateFile = Paths.get(args[++i]);
+                        break;
+                    case "--output":
+                        outputFile = Paths.get(args[++i]);
+                        break;
+                    case "--delta":
+                        deltaFile = Paths.get(args[++i]);
+                        break;
+                    default:
+                        if (pdf != null) {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                        pdf = Paths.get(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            pdf = null;
+        }
+
+        if (pdf == null) {
+            System.out.println("Usage: java IncrementalHighlightExtractor <pdf-file-path> [--ocr] [--quiet] [--state <state.json>] "
+                               + "[--output <result.json>] [--delta <delta.json>]");
+            System.exit(1);
+        }
+
+        String stem = BatchHighlightExtractor.baseName(pdf);
+        if (stateFile == null) {
+            stateFile = pdf.resolveSibling(stem + ".highlights-state.json");
+        }
+        if (outputFile == null) {
+            outputFile = pdf.resolveSibling(stem + ".highlights.json");
+        }
+        if (deltaFile == null) {
+            deltaFile = pdf.resolveSibling(stem + ".highlights-delta.json");
+        }
+
+        IncrementalHighlightExtractor extractor = new IncrementalHighlightExtractor(HighlightExtractionPipeline.withDefaultStrategies(includeOcr));
+        try {
+            extractor.extract(pdf, stateFile, outputFile, deltaFile);
+        } catch (IOException e) {
+            LOG.error("Error processing PDF {}", pdf, e);
+            System.exit(1);
+        }
+    }
+
+    public void extract(Path pdf, Path stateFile, Path outputFile, Path deltaFile) throws IOException {
+        long start = System.nanoTime();
+        JsonNode prior = loadState(stateFile);
+
+        // One pass over the file yields both the hash of the previous revision's bytes and of the whole file
+        long length = Files.size(pdf);
+        long priorLength = prior != null ? prior.path("fileLength").asLong(-1) : -1;
+        String[] hashes = hashFile(pdf, priorLength > 0 && priorLength <= length ? priorLength : -1);
+        String prefixHash = hashes[0];
+        String fileHash = hashes[1];
+
+        RevisionKind kind = RevisionKind.FULL;
+        if (prior != null && prior.path("sha256").asText().equals(prefixHash)) {
+            kind = length == priorLength ? RevisionKind.UNCHANGED : RevisionKind.APPENDED;
+        }
+
+        Map<Integer, List<HighlightedText>> priorHighlights = new HashMap<>();
+        Map<Integer, String[]> priorPages = new HashMap<>();
+        if (kind != RevisionKind.FULL && !readPriorState(prior, priorPages, priorHighlights)) {
+            LOG.warn("Ignoring state file {} with unknown highlight colors", stateFile);
+            kind = RevisionKind.FULL;
+        }
+        LOG.info("Processing PDF {} ({} bytes, revision: {})", pdf, length, kind.name().toLowerCase());
+
+        List<HighlightedText> merged = new ArrayList<>();
+        List<HighlightedText> added = new ArrayList<>();
+        List<HighlightedText> removed = new ArrayList<>();
+        List<Integer> reprocessed = new ArrayList<>();
+        ArrayNode pageStates = mapper.createArrayNode();
+        int pageCount;
+        DocumentResources resources;
+
+        try (StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(pdf.toString());
+             PDDocument document = DocumentLoader.load(pdf.toFile().length(), () -> PDDocument.load(pdf.toFile()))) {
+            pageCount = document.getNumberOfPages();
+            CancellablePdfRenderer renderer = new CancellablePdfRenderer(document);
+            TimeBudget budget = pipeline.getTimeBudget();
+            Deadline documentDeadline = budget.startDocument();
+            PageWindow pageWindow = pipeline.getPageWindow();
+            resources = timer.getResources();
+
+            for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+                int pageNumber = pageIndex + 1;
+                pageWindow.beforePage(document, pageIndex, 0);
+                PDPage page = document.getPage(pageIndex);
+                String annotations = PageFingerprint.ofAnnotations(page);
+                String content = PageFingerprint.of(page);
+
+                ObjectNode pageState = pageStates.addObject();
+                pageState.put("page", pageNumber);
+                pageState.put("annotations", annotations);
+                pageState.put("content", content);
+
+                String[] before = priorPages.get(pageNumber);
+                if (before != null && before[0].equals(annotations) && before[1].equals(content)) {
+                    merged.addAll(priorHighlights.getOrDefault(pageNumber, Collections.emptyList()));
+                    continue;
+                }
+
+                if (documentDeadline.isExpired()) {
+                    resources.addTimeout(TimedOutWork.document(pageNumber, 1));
+                    forgetPage(pageState);
+                    continue;
+                }
+                reprocessed.add(pageNumber);
+                int timeouts = resources.getTimeouts().size();
+                List<HighlightedText> pageHighlights = pipeline.extractPage(
+                    new PageContext(document, page, pageNumber, renderer, budget, documentDeadline));
+                if (resources.getTimeouts().size() > timeouts) {
+                    forgetPage(pageState);
+                }
+                merged.addAll(pageHighlights);
+                diff(priorHighlights.getOrDefault(pageNumber, Collections.emptyList()), pageHighlights, added, removed);
+            }
+        }
+
+        // Pages that no longer exist lose their highlights
+        for (Map.Entry<Integer, List<HighlightedText>> entry : priorHighlights.entrySet()) {
+            if (entry.getKey() > pageCount) {
+                removed.addAll(entry.getValue());
+            }
+        }
+
+        ObjectNode result = HighlightJsonReport.build(mapper, merged, EXTRACTION_METHOD);
+        result.put("revision", kind.name().toLowerCase());
+        result.put("pagesReprocessed", reprocessed.size());
+        HighlightJsonReport.putResources(mapper, result, resources);
+        HighlightJsonReport.save(mapper, result, outputFile.toFile());
+
+        ObjectNode delta = mapper.createObjectNode();
+        delta.put("documentId", pdf.getFileName().toString());
+        delta.put("revision", kind.name().toLowerCase());
+        delta.put("baseFileLength", kind != RevisionKind.FULL ? priorLength : 0);
+        delta.put("fileLength", length);
+        ArrayNode reprocessedArray = delta.putArray("pagesReprocessed");
+        reprocessed.forEach(reprocessedArray::add);
+        delta.set("added", toJson(added));
+        delta.set("removed", toJson(removed));
+        HighlightJsonReport.save(mapper, delta, deltaFile.toFile());
+
+        ObjectNode state = mapper.createObjectNode();
+        state.put("fileLength", length);
+        state.put("sha256", fileHash);
+        state.set("pages", pageStates);
+        state.set("highlights", toJson(merged));
+        Path tempState = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        mapper.writeValue(tempState.toFile(), state);
+        Files.move(tempState, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        System.out.println(String.format("Pages reprocessed: %d of %d, highlights: %d (+%d / -%d) in %.1f ms",
+            reprocessed.size(), pageCount, merged.size(), added.size(), removed.size(), (System.nanoTime() - start) / 1_000_000.0));
+        System.out.println("Result: " + outputFile.toAbsolutePath());
+        System.out.println("Delta: " + deltaFile.toAbsolutePath());
+    }
+
+    /**
+     * Clears the fingerprints of a page whose extraction was cut short, so the next run processes it again.
+     */
+    private static void forgetPage(ObjectNode pageState) {
+        pageState.put("annotations", "");
+        pageState.put("content", "");
+    }
+
+    /**
+     * Multiset difference of one page's highlights before and after.
+     */
+    private static void diff(List<HighlightedText> before, List<HighlightedText> after,
+                             List<HighlightedText> added, List<HighlightedText> removed) {
+        Map<HighlightedText, Integer> remaining = new HashMap<>();
+        for (HighlightedText highlight : before) {
+            remaining.merge(highlight, 1, Integer::sum);
+        }
+        for (HighlightedText highlight : after) {
+            Integer count = remaining.get(highlight);
+            if (count == null) {
+                added.add(highlight);
+            } else if (count == 1) {
+                remaining.remove(highlight);
+            } else {
+                remaining.put(highlight, count - 1);
+            }
+        }
+        for (HighlightedText highlight : before) {
+            Integer count = remaining.get(highlight);
+            if (count != null) {
+                removed.add(highlight);
+                if (count == 1) {
+                    remaining.remove(highlight);
+                } else {
+                    remaining.put(highlight, count - 1);
+                }
+            }
+        }
+    }
+
+    private JsonNode loadState(Path stateFile) {
+        if (!Files.exists(stateFile)) {
+            return null;
+        }
+        try {
+            return mapper.readTree(stateFile.toFile());
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable state file {}: {}", stateFile, e.getMessage());
+            return null;
+        }
+    }
+
+    // Returns false, with both maps cleared, if a stored highlight has a color this version does not know
+    private static boolean readPriorState(JsonNode prior, Map<Integer, String[]> pages, Map<Integer, List<HighlightedText>> highlights) {
+        for (JsonNode page : prior.path("pages")) {
+            pages.put(page.path("page").asInt(), new String[] {page.path("annotations").asText(), page.path("content").asText()});
+        }
+        for (JsonNode node : prior.path("highlights")) {
+            HighlightColor color;
+            try {
+                color = HighlightColor.fromName(node.path("color").asText());
+            } catch (IllegalArgumentException e) {
+                pages.clear();
+                highlights.clear();
+                return false;
+            }
+            int page = node.path("page").asInt();
+            HighlightedText highlight = node.has("llx")
+                ? new HighlightedText(node.path("text").asText(), color, page,
+                    (float) node.path("llx").asDouble(), (float) node.path("lly").asDouble(),
+                    (float) node.path("urx").asDouble(), (float) node.path("ury").asDouble())
+                : new HighlightedText(node.path("text").asText(), color, page, null);
+            highlights.computeIfAbsent(page, k -> new ArrayList<>()).add(highlight);
+        }
+        return true;
+    }
+
+    private ArrayNode toJson(List<HighlightedText> highlights) {
+        ArrayNode array = mapper.createArrayNode();
+        for (HighlightedText highlight : highlights) {
+            ObjectNode node = array.addObject();
+            node.put("page", highlight.getPageNumber());
+            node.put("color", highlight.getColor());
+            node.put("text", highlight.getText());
+            if (highlight.hasCoordinates()) {
+                node.put("llx", highlight.getLowerLeftX());
+                node.put("lly", highlight.getLowerLeftY());
+                node.put("urx", highlight.getUpperRightX());
+                node.put("ury", highlight.getUpperRightY());
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Returns the hex SHA-256 of the first prefixLength bytes (null if prefixLength is negative) and of the whole file.
+     */
+    static String[] hashFile(Path file, long prefixLength) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        String prefixHash = null;
+        long position = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (prefixLength >= 0 && prefixHash == null && position + read >= prefixLength) {
+                    int head = (int) (prefixLength - position);
+                    digest.update(buffer, 0, head);
+                    prefixHash = hex(cloneDigest(digest).digest());
+                    digest.update(buffer, head, read - head);
+                } else {
+                    digest.update(buffer, 0, read);
+                }
+                position += read;
+            }
+        }
+        return new String[] {prefixHash, hex(digest.digest())};
+    }
+
+    private static MessageDigest cloneDigest(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest cannot be cloned", e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.scotiapdf;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes highlights as JSON Lines (NDJSON): one compact JSON object per highlight.
+ * Lines are flushed after every page so downstream consumers see results as pages complete.
+ */
+public class JsonLinesWriter implements HighlightResultWriter {
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final OutputStream out;
+    private final String documentId;
+    private final String extractionMethod;
+    private long linesWritten = 0;
+
+    public JsonLinesWriter(OutputStream out, boolean gzip, String documentId, String extractionMethod) throws IOException {
+        // Sync flush makes every page flush visible to readers of the compressed stream
+        this.out = gzip ? new GZIPOutputStream(out, 8192, true) : out;
+        this.documentId = documentId;
+        this.extractionMethod = extractionMethod;
+        mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        mapper.getFactory().disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+
+    /**
+     * Opens a writer on the given file. Output is gzip-compressed when the file name ends with ".gz".
+     */
+    public static JsonLinesWriter open(File file, String documentId, String extractionMethod) throws IOException {
+        boolean gzip = file.getName().toLowerCase().endsWith(".gz");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            return new JsonLinesWriter(out, gzip, documentId, extractionMethod);
+        } catch (IOException | RuntimeException e) {
+            // The gzip header is written by the constructor; don't leak the file if that fails
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes one line per highlight of a completed page and flushes the stream.
+     */
+    @Override
+    public synchronized void writePage(List<HighlightedText> pageHighlights) throws IOException {
+        long start = System.nanoTime();
+        try {
+            for (HighlightedText highlight : pageHighlights) {
+                writeLine(highlight);
+            }
+            out.flush();
+        } finally {
+            StageMetrics.shared().record(ExtractionStage.SERIALIZE, start);
+        }
+    }
+
+    private void writeLine(HighlightedText highlight) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("documentId", documentId);
+            generator.writeNumberField("page", highlight.getPageNumber());
+            generator.writeStringField("color", highlight.getColor());
+            generator.writeStringField("text", highlight.getText());
+
+            if (highlight.hasCoordinates()) {
+                generator.writeObjectFieldStart("coordinates");
+                generator.writeNumberField("llx", highlight.getLowerLeftX());
+                generator.writeNumberField("lly", highlight.getLowerLeftY());
+                generator.writeNumberField("urx", highlight.getUpperRightX());
+                generator.writeNumberField("ury", highlight.getUpperRightY());
+                generator.writeEndObject();
+            }
+
+            generator.writeStringField("extractionMethod", extractionMethod);
+            generator.writeEndObject();
+        }
+        out.write(NEWLINE);
+        linesWritten++;
+    }
+
+    public long getLinesWritten() {
+        return linesWritten;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,49 @@
+package com.scotiapdf;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples and reports nearest-rank percentiles. Thread-safe.
+ */
+public class LatencyStats {
+    private long[] samples = new long[64];
+    private int count = 0;
+    
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = nanos;
+    }
+    
+    public synchronized int getCount() {
+        return count;
+    }
+    
+    /**
+     * Returns the given percentile (0-100) in milliseconds, or 0 if no samples were recorded.
+     */
+    public synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, Math.min(count - 1, rank - 1))] / 1_000_000.0;
+    }
+    
+    public synchronized double maxMillis() {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max / 1_000_000.0;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                             percentileMillis(50), percentileMillis(90), percentileMillis(99), maxMillis());
+    }
+}
@@ -0,0 +1,208 @@
+package com.scotiapdf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expiring leases on work units, stored as files in a directory shared by all workers.
+ *
+ * A lease is claimed by creating "&lt;unit&gt;.lease" with CREATE_NEW, which is atomic on local file
+ * systems and NFSv3+. The file holds the owner and an expiry time (wall clock, so worker clocks must be
+ * roughly in sync) and is renewed by the owner well before it expires. A lease that has expired
+ * because its owner died is reclaimed by atomically renaming it out of the way and claiming it again;
+ * only one worker's rename can succeed.
+ *
+ * Leases only prevent duplicate work in the common case. Correctness does not depend on them: results
+ * are committed with an atomic rename, so a unit processed twice after a lost lease just commits the
+ * same result twice.
+ */
+public class LeaseManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LeaseManager.class);
+    private static final String LEASE_SUFFIX = ".lease";
+
+    private final Path leaseDir;
+    private final String workerId;
+    private final long leaseMillis;
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    public LeaseManager(Path leaseDir, String workerId, long leaseMillis) throws IOException {
+        this.leaseDir = Files.createDirectories(leaseDir);
+        this.workerId = workerId;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * Tries to claim the unit, reclaiming an expired lease if necessary. Returns false if another worker holds it.
+     */
+    public boolean tryAcquire(String unitId) throws IOException {
+        Path lease = leasePath(unitId);
+        if (create(lease)) {
+            held.add(unitId);
+            acquired.incrementAndGet();
+            return true;
+        }
+
+        if (!reclaimIfExpired(unitId, lease) || !create(lease)) {
+            return false;
+        }
+        held.add(unitId);
+        acquired.incrementAndGet();
+        reclaimed.incrementAndGet();
+        LOG.info("Reclaimed expired lease: {}", unitId);
+        return true;
+    }
+
+    /**
+     * Deletes the lease after the unit's result has been committed (or the work was abandoned).
+     */
+    public void release(String unitId) {
+        if (!held.remove(unitId)) {
+            return;
+        }
+        try {
+            if (workerId.equals(read(leasePath(unitId)).owner)) {
+                Files.deleteIfExists(leasePath(unitId));
+            }
+        } catch (IOException e) {
+            // Left behind; it expires and is reclaimed by the next worker that needs it
+        }
+    }
+
+    public boolean isHeld(String unitId) {
+        return held.contains(unitId);
+    }
+
+    /**
+     * Extends all leases held by this worker. Call it at a fraction of the lease duration; a lease that
+     * meanwhile belongs to someone else is dropped.
+     */
+    public void renewAll() {
+        for (String unitId : held) {
+            Path lease = leasePath(unitId);
+            try {
+                if (!workerId.equals(read(lease).owner)) {
+                    held.remove(unitId);
+                    lost.incrementAndGet();
+                    LOG.warn("Lost lease: {}", unitId);
+                    continue;
+                }
+                Path temp = leaseDir.resolve(unitId + LEASE_SUFFIX + "." + workerId + ".tmp");
+                Files.write(temp, content());
+                Files.move(temp, lease, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOG.warn("Could not renew lease {}: {}", unitId, e.getMessage());
+            }
+        }
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("acquired=%d, reclaimed=%d, lost=%d", acquired.get(), reclaimed.get(), lost.get());
+    }
+
+    private boolean create(Path lease) throws IOException {
+        try {
+            Files.write(lease, content(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    private boolean reclaimIfExpired(String unitId, Path lease) throws IOException {
+        Lease current;
+        try {
+            current = read(lease);
+        } catch (NoSuchFileException e) {
+            // Released in the meantime
+            return true;
+        }
+        if (!current.isExpired(System.currentTimeMillis())) {
+            return false;
+        }
+
+        Path stale = leaseDir.resolve(unitId + LEASE_SUFFIX + "." + workerId + ".stale");
+        try {
+            Files.move(lease, stale, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // Another worker renamed it first
+            return false;
+        }
+
+        // Between our read and the rename another worker may have reclaimed it with a fresh lease
+        Lease moved = read(stale);
+        if (!moved.isExpired(System.currentTimeMillis())) {
+            try {
+                Files.move(stale, lease);
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(stale);
+            }
+            return false;
+        }
+        Files.deleteIfExists(stale);
+        return true;
+    }
+
+    private Lease read(Path lease) throws IOException {
+        String owner = null;
+        long expires = 0;
+        for (String line : Files.readAllLines(lease, StandardCharsets.UTF_8)) {
+            if (line.startsWith("owner=")) {
+                owner = line.substring("owner=".length());
+            } else if (line.startsWith("expires=")) {
+                try {
+                    expires = Long.parseLong(line.substring("expires=".length()));
+                } catch (NumberFormatException e) {
+                    expires = 0;
+                }
+            }
+        }
+        if (expires == 0) {
+            // Created but not written yet, or truncated: fall back to the file's age
+            expires = Files.getLastModifiedTime(lease).toMillis() + leaseMillis;
+        }
+        return new Lease(owner, expires);
+    }
+
+    private byte[] content() {
+        long expires = System.currentTimeMillis() + leaseMillis;
+        return ("owner=" + workerId + "\nexpires=" + expires + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Path leasePath(String unitId) {
+        return leaseDir.resolve(unitId + LEASE_SUFFIX);
+    }
+
+    private static class Lease {
+        final String owner;
+        final long expires;
+
+        Lease(String owner, long expires) {
+            this.owner = owner;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return now > expires;
+        }
+    }
+}
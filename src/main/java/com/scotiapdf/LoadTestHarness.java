@@ -0,0 +1,415 @@
+package com.scotiapdf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives an extractor over a corpus made by {@link SyntheticCorpusGenerator} at a fixed concurrency and reports
+ * throughput, per-document latency percentiles, peak resident memory and how much of the highlighted text in
+ * the manifest was extracted.
+ *
+ * Text is compared after collapsing whitespace, per page and color. Highlights on scanned pages are counted
+ * separately, since only OCR can read them. The standalone extractors print progress for every page and some
+ * write result files to the working directory; their console output is discarded during the run.
+ */
+public class LoadTestHarness {
+
+    static {
+        // The extractors' progress logging would drown the harness output; warnings still get through
+        if (!QuietMode.launchedWith("--verbose")) {
+            QuietMode.enable();
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTestHarness.class);
+
+    /**
+     * One extraction of one document; implementations must be safe to call from several threads.
+     */
+    interface DocumentExtractor {
+        List<HighlightedText> extract(Path pdf) throws IOException;
+    }
+
+    private static final String[] EXTRACTORS = {"pipeline", "pipeline-ocr", "advanced", "ocr", "simple", "basic", "enhanced"};
+    private static final int MISMATCH_EXAMPLES = 5;
+
+    private final Path corpusDir;
+    private final JsonNode manifest;
+    private final String extractorName;
+    private final DocumentExtractor extractor;
+    private final int concurrency;
+    private final LatencyStats latency = new LatencyStats();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final Map<String, List<HighlightedText>> firstResults = new HashMap<>();
+
+    public LoadTestHarness(Path corpusDir, String extractorName, int concurrency) throws IOException {
+        this.corpusDir = corpusDir;
+        this.manifest = new ObjectMapper().readTree(corpusDir.resolve(SyntheticCorpusGenerator.MANIFEST_FILE).toFile());
+        this.extractorName = extractorName;
+        this.extractor = createExtractor(extractorName);
+        this.concurrency = concurrency;
+    }
+
+    public static void main(String[] args) {
+        Path corpusDir = null;
+        String extractorName = "pipeline";
+        int concurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int iterations = 1;
+        int warmup = 5;
+        Path reportFile = null;
+        boolean verbose = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--extractor":
+                        extractorName = args[++i];
+                        break;
+                    case "--concurrency":
+                        concurrency = Integer.parseInt(args[++i]);
+                        break;
+                    case "--iterations":
+                        iterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--warmup":
+                        warmup = Integer.parseInt(args[++i]);
+                        break;
+                    case "--report":
+                        reportFile = Paths.get(args[++i]);
+                        break;
+                    case "--verbose":
+                        verbose = true;
+                        break;
+                    default:
+                        if (corpusDir != null) {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                        corpusDir = Paths.get(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            corpusDir = null;
+        }
+
+        if (corpusDir == null || !Files.isRegularFile(corpusDir.resolve(SyntheticCorpusGenerator.MANIFEST_FILE))
+                || !List.of(EXTRACTORS).contains(extractorName) || concurrency < 1 || iterations < 1 || warmup < 0) {
+            System.out.println("Usage: java LoadTestHarness <corpus-dir> [--extractor " + String.join("|", EXTRACTORS) + "] "
+                               + "[--concurrency <n>] [--iterations <n>] [--warmup <documents>] [--report <file.json>] [--verbose]");
+            System.exit(1);
+        }
+
+        if (!verbose) {
+            QuietMode.enable();
+        }
+        try {
+            LoadTestHarness harness = new LoadTestHarness(corpusDir, extractorName, concurrency);
+            ObjectNode report = harness.run(iterations, warmup, verbose);
+            if (reportFile != null) {
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), report);
+                System.out.println("Report saved to " + reportFile.toAbsolutePath());
+            }
+        } catch (IOException e) {
+            LOG.error("Load test failed", e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the warm-up, then every document of the corpus {@code iterations} times, prints the results and
+     * returns them as JSON.
+     */
+    public ObjectNode run(int iterations, int warmup, boolean verbose) throws IOException, InterruptedException {
+        List<JsonNode> documents = new ArrayList<>();
+        manifest.path("documents").forEach(documents::add);
+        int pagesPerIteration = manifest.path("totalPages").asInt();
+
+        PrintStream console = System.out;
+        if (!verbose) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8));
+        }
+
+        long wallNanos;
+        try {
+            console.println("Warming up on " + Math.min(warmup, documents.size()) + " documents...");
+            for (int i = 0; i < Math.min(warmup, documents.size()); i++) {
+                try {
+                    extractor.extract(corpusDir.resolve(documents.get(i).path("file").asText()));
+                } catch (IOException e) {
+                    // Counted in the measured run
+                }
+            }
+
+            // Peak RSS and stage times should cover the measured run only, not loading and warm-up
+            boolean peakReset = resetPeakRss();
+            StageMetrics.shared().reset();
+            console.printf("Running %d documents x %d iterations with %d threads (%s extractor)%s...%n", documents.size(),
+                iterations, concurrency, extractorName, peakReset ? "" : ", peak RSS includes warm-up");
+
+            ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            try {
+                for (int iteration = 0; iteration < iterations; iteration++) {
+                    boolean first = iteration == 0;
+                    for (JsonNode document : documents) {
+                        futures.add(pool.submit(() -> extractOne(document.path("file").asText(), first)));
+                    }
+                }
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+                wallNanos = System.nanoTime() - start;
+            } finally {
+                pool.shutdownNow();
+                pool.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            System.setOut(console);
+        }
+
+        return report(documents, iterations, pagesPerIteration, wallNanos);
+    }
+
+    private void extractOne(String file, boolean keepResult) {
+        long start = System.nanoTime();
+        try {
+            List<HighlightedText> highlights = extractor.extract(corpusDir.resolve(file));
+            latency.record(System.nanoTime() - start);
+            if (keepResult) {
+                synchronized (firstResults) {
+                    firstResults.put(file, highlights);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            LOG.warn("{} failed: {}", file, e.getMessage());
+        }
+    }
+
+    private ObjectNode report(List<JsonNode> documents, int iterations, int pagesPerIteration, long wallNanos) {
+        double seconds = wallNanos / 1e9;
+        int runs = documents.size() * iterations;
+
+        // Accuracy against the manifest, from the first iteration of each document
+        Accuracy text = new Accuracy();
+        Accuracy scanned = new Accuracy();
+        int unexpected = 0;
+        List<String> examples = new ArrayList<>();
+        for (JsonNode document : documents) {
+            String file = document.path("file").asText();
+            List<HighlightedText> extracted = firstResults.get(file);
+            if (extracted == null) {
+                continue;
+            }
+            Map<String, Integer> remaining = new HashMap<>();
+            for (HighlightedText highlight : extracted) {
+                remaining.merge(key(highlight.getPageNumber(), highlight.getColor(), highlight.getText()), 1, Integer::sum);
+            }
+            for (JsonNode expected : document.path("highlights")) {
+                String key = key(expected.path("page").asInt(), expected.path("color").asText(), expected.path("text").asText());
+                boolean matched = remaining.getOrDefault(key, 0) > 0;
+                if (matched) {
+                    remaining.merge(key, -1, Integer::sum);
+                } else if (examples.size() < MISMATCH_EXAMPLES) {
+                    examples.add(file + " " + key + (expected.path("scanned").asBoolean() ? " (scanned)" : ""));
+                }
+                (expected.path("scanned").asBoolean() ? scanned : text).add(matched);
+            }
+            for (int count : remaining.values()) {
+                unexpected += count;
+            }
+        }
+
+        long peakRssKb = readProcStatusKb("VmHWM");
+
+        System.out.println();
+        System.out.println("=".repeat(60));
+        System.out.println("LOAD TEST (" + extractorName + ", " + concurrency + " threads)");
+        System.out.println("=".repeat(60));
+        System.out.printf("Documents: %d runs in %.1fs (%d failed)%n", runs, seconds, failures.get());
+        System.out.printf("Throughput: %.2f documents/s, %.1f pages/s%n", runs / seconds, pagesPerIteration * iterations / seconds);
+        System.out.println("Latency per document: " + latency);
+        System.out.println("Peak RSS: " + (peakRssKb >= 0 ? peakRssKb / 1024 + " MB" : "n/a (no /proc/self/status)"));
+        System.out.println("Text-layer highlights matched: " + text);
+        System.out.println("Scanned-page highlights matched: " + scanned);
+        System.out.println("Extracted highlights not in manifest: " + unexpected);
+        if (!examples.isEmpty()) {
+            System.out.println("Missed (first " + examples.size() + "):");
+            for (String example : examples) {
+                System.out.println("  " + example);
+            }
+        }
+        System.out.println();
+        StageMetrics.shared().printReport();
+
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode report = mapper.createObjectNode();
+        report.put("extractor", extractorName);
+        report.put("concurrency", concurrency);
+        report.put("documents", documents.size());
+        report.put("iterations", iterations);
+        report.put("failures", failures.get());
+        report.put("seconds", seconds);
+        report.put("documentsPerSecond", runs / seconds);
+        report.put("pagesPerSecond", pagesPerIteration * iterations / seconds);
+        ObjectNode latencyNode = report.putObject("latencyMillis");
+        latencyNode.put("p50", latency.percentileMillis(50));
+        latencyNode.put("p90", latency.percentileMillis(90));
+        latencyNode.put("p99", latency.percentileMillis(99));
+        latencyNode.put("max", latency.maxMillis());
+        report.put("peakRssKb", peakRssKb);
+        report.set("textAccuracy", text.toJson(mapper));
+        report.set("scannedAccuracy", scanned.toJson(mapper));
+        report.put("unexpected", unexpected);
+        return report;
+    }
+
+    private static String key(int page, String color, String text) {
+        return "page " + page + " " + color + " \"" + text.trim().replaceAll("\\s+", " ") + "\"";
+    }
+
+    /**
+     * Resets the kernel's peak RSS counter (Linux 4.0+), so VmHWM afterwards reflects the measured run.
+     */
+    private static boolean resetPeakRss() {
+        try {
+            Files.write(Paths.get("/proc/self/clear_refs"), "5".getBytes(StandardCharsets.US_ASCII));
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a "kB" field of /proc/self/status, or returns -1 where it is not available.
+     */
+    static long readProcStatusKb(String field) {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+                if (line.startsWith(field + ":")) {
+                    return Long.parseLong(line.substring(field.length() + 1).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux
+        }
+        return -1;
+    }
+
+    private static DocumentExtractor createExtractor(String name) {
+        switch (name) {
+            case "pipeline":
+            case "pipeline-ocr": {
+                HighlightExtractionPipeline pipeline = HighlightExtractionPipeline.withDefaultStrategies(name.endsWith("ocr"));
+                return pdf -> pipeline.extractHighlights(pdf.toFile());
+            }
+            case "advanced": {
+                ThreadLocal<AdvancedPdfHighlightExtractor> extractors = ThreadLocal.withInitial(AdvancedPdfHighlightExtractor::new);
+                return pdf -> collect(writer -> {
+                    extractors.get().setResultWriter(writer);
+                    extractors.get().extractHighlightsWithText(pdf.toString());
+                });
+            }
+            case "ocr": {
+                // One Tesseract instance per thread, created once
+                ThreadLocal<OcrPdfHighlightExtractor> extractors = ThreadLocal.withInitial(OcrPdfHighlightExtractor::new);
+                return pdf -> collect(writer -> {
+                    extractors.get().setResultWriter(writer);
+                    extractors.get().extractHighlightsWithOcr(pdf.toString());
+                });
+            }
+            case "simple":
+                return pdf -> collect(writer -> {
+                    SimplePdfHighlightExtractor extractor = new SimplePdfHighlightExtractor();
+                    extractor.setResultWriter(writer);
+                    extractor.extractHighlightsSimple(pdf.toString());
+                });
+            case "basic":
+                return pdf -> new PdfHighlightExtractor().extractHighlights(pdf.toString());
+            case "enhanced":
+                return pdf -> collect(writer -> {
+                    EnhancedPdfHighlightExtractor extractor = new EnhancedPdfHighlightExtractor();
+                    extractor.setResultWriter(writer);
+                    extractor.analyzeAndExtractHighlights(pdf.toString());
+                });
+            default:
+                throw new IllegalArgumentException("Unknown extractor: " + name);
+        }
+    }
+
+    private interface WriterRun {
+        void run(HighlightResultWriter writer) throws IOException;
+    }
+
+    /**
+     * Runs a standalone extractor with a writer that collects the highlights it reports page by page.
+     */
+    private static List<HighlightedText> collect(WriterRun run) throws IOException {
+        List<HighlightedText> highlights = new ArrayList<>();
+        HighlightResultWriter writer = new HighlightResultWriter() {
+            @Override
+            public void writePage(List<HighlightedText> pageHighlights) {
+                highlights.addAll(pageHighlights);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        run.run(writer);
+        return highlights;
+    }
+
+    private static class Accuracy {
+        private int expected = 0;
+        private int matched = 0;
+
+        void add(boolean wasMatched) {
+            expected++;
+            if (wasMatched) {
+                matched++;
+            }
+        }
+
+        ObjectNode toJson(ObjectMapper mapper) {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("expected", expected);
+            node.put("matched", matched);
+            return node;
+        }
+
+        @Override
+        public String toString() {
+            return expected == 0 ? "none expected"
+                : String.format("%d/%d (%.1f%%)", matched, expected, matched * 100.0 / expected);
+        }
+    }
+}
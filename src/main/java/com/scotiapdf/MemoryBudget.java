@@ -0,0 +1,133 @@
+package com.scotiapdf;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global memory budget for concurrently processed documents. Each document reserves its estimated
+ * peak memory before it starts and releases it when done; documents that do not fit wait in line, first come
+ * first served.
+ * A reservation larger than the whole budget is clamped to the budget, so it runs alone instead of
+ * never running at all.
+ *
+ * A running batch publishes its budget through {@link StageMetrics#setMemoryBudget}, which registers it as an
+ * MXBean and adds it to the Prometheus output.
+ */
+public class MemoryBudget implements MemoryBudgetMXBean {
+    private final long totalBytes;
+    private long reservedBytes = 0;
+    private long peakReservedBytes = 0;
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+    // Waiting reservations in arrival order; only the head may take memory
+    private final Deque<Object> queue = new ArrayDeque<>();
+    
+    public MemoryBudget(long totalBytes) {
+        if (totalBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.totalBytes = totalBytes;
+    }
+    
+    /**
+     * Budget of the given fraction of the maximum heap.
+     */
+    public static MemoryBudget ofMaxHeap(double fraction) {
+        return new MemoryBudget((long) (Runtime.getRuntime().maxMemory() * fraction));
+    }
+    
+    /**
+     * Blocks until the bytes can be reserved and returns the amount actually reserved, which must be
+     * passed to {@link #release(long)}. Waiters are admitted in arrival order, so a large reservation is
+     * not overtaken by a stream of small ones. The calling thread blocks plainly: a ForkJoinPool does not
+     * start a spare worker for it, so no more documents run than the pool has threads.
+     */
+    public synchronized long reserve(long bytes) throws InterruptedException {
+        long amount = Math.max(0, Math.min(bytes, totalBytes));
+        if (queue.isEmpty() && fits(amount)) {
+            take(amount);
+            return amount;
+        }
+        
+        Object ticket = new Object();
+        queue.addLast(ticket);
+        waited.incrementAndGet();
+        try {
+            while (queue.peekFirst() != ticket || !fits(amount)) {
+                wait();
+            }
+            take(amount);
+            return amount;
+        } finally {
+            queue.remove(ticket);
+            // The next waiter may fit as well, or the head changed because this one was interrupted
+            notifyAll();
+        }
+    }
+    
+    public synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+        notifyAll();
+    }
+    
+    private boolean fits(long amount) {
+        return reservedBytes + amount <= totalBytes;
+    }
+    
+    private void take(long amount) {
+        reservedBytes += amount;
+        peakReservedBytes = Math.max(peakReservedBytes, reservedBytes);
+        admitted.incrementAndGet();
+    }
+    
+    @Override
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+    
+    @Override
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+    
+    @Override
+    public synchronized long getPeakReservedBytes() {
+        return peakReservedBytes;
+    }
+    
+    @Override
+    public synchronized int getWaiting() {
+        return queue.size();
+    }
+    
+    @Override
+    public long getAdmittedCount() {
+        return admitted.get();
+    }
+    
+    /**
+     * Number of reservations that had to wait for memory to become available.
+     */
+    @Override
+    public long getWaitedCount() {
+        return waited.get();
+    }
+    
+    /**
+     * Heap currently in use by the JVM, for comparison with the reserved amount.
+     */
+    @Override
+    public long getUsedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    @Override
+    public String toString() {
+        long mb = 1024 * 1024;
+        return String.format("reserved=%dMB peakReserved=%dMB budget=%dMB usedHeap=%dMB waiting=%d waited=%d",
+                             getReservedBytes() / mb, getPeakReservedBytes() / mb, totalBytes / mb,
+                             getUsedHeapBytes() / mb, getWaiting(), getWaitedCount());
+    }
+}
@@ -0,0 +1,22 @@
+package com.scotiapdf;
+
+/**
+ * JMX view of the {@link MemoryBudget} of a running batch: the reserved amount against the budget and the heap
+ * actually in use, so estimates can be checked while documents are processed.
+ */
+public interface MemoryBudgetMXBean {
+
+    long getTotalBytes();
+
+    long getReservedBytes();
+
+    long getPeakReservedBytes();
+
+    long getUsedHeapBytes();
+
+    int getWaiting();
+
+    long getAdmittedCount();
+
+    long getWaitedCount();
+}
@@ -0,0 +1,61 @@
+package com.scotiapdf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * JFR event for one Tesseract call, with the size of the image it was given.
+ */
+@Name("com.scotiapdf.OcrCall")
+@Label("OCR Call")
+@Category({"PDF Highlight Extractor"})
+@Description("One Tesseract recognition of a highlight region, including image preparation")
+@StackTrace(false)
+public class OcrCallEvent extends Event {
+
+    @Label("Document")
+    String documentId;
+
+    @Label("Page Number")
+    int pageNumber;
+
+    @Label("DPI")
+    float dpi;
+
+    @Label("Region Width (px)")
+    int regionWidth;
+
+    @Label("Region Height (px)")
+    int regionHeight;
+
+    @Label("Characters")
+    int characters;
+
+    static OcrCallEvent start() {
+        OcrCallEvent event = new OcrCallEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event; region is the crop of the rendered page before enhancement, text is null when OCR failed.
+     */
+    void finish(int pageNumber, float dpi, BufferedImage region, String text) {
+        end();
+        if (shouldCommit()) {
+            this.documentId = StageMetrics.shared().currentDocumentId();
+            this.pageNumber = pageNumber;
+            this.dpi = dpi;
+            this.regionWidth = region.getWidth();
+            this.regionHeight = region.getHeight();
+            this.characters = text != null ? text.trim().length() : 0;
+            commit();
+        }
+    }
+}
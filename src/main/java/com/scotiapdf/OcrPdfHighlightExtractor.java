@@ -6,16 +6,15 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
 import org.apache.pdfbox.rendering.ImageType;
-import org.apache.pdfbox.rendering.PDFRenderer;
 
-import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
@@ -24,19 +23,30 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
-import javax.imageio.ImageIO;
 
 public class OcrPdfHighlightExtractor {
     
-    private static final float DPI = 300f; // High DPI for better OCR accuracy
-    private ITesseract tesseract;
+    static {
+        QuietMode.init();
+    }
+    
+    private static final Logger LOG = LoggerFactory.getLogger(OcrPdfHighlightExtractor.class);
+    
+    static final String EXTRACTION_METHOD = "OCR-based text extraction using Tesseract";
+    
+    private HighlightResultWriter resultWriter;
+    private TimeBudget timeBudget = TimeBudget.fromSystemProperties();
+    private PageWindow pageWindow = PageWindow.fromSystemProperties();
+    
+    static final float DPI = 300f; // High DPI for better OCR accuracy
+    private CancellableTesseract tesseract;
     
     public OcrPdfHighlightExtractor() {
         initializeTesseract();
     }
     
     private void initializeTesseract() {
-        tesseract = new Tesseract();
+        tesseract = new CancellableTesseract();
         
         // Try to set Tesseract data path - adjust this path based on your Tesseract installation
         String[] possiblePaths = {
@@ -56,23 +66,21 @@ public class OcrPdfHighlightExtractor {
                 if (engFile.exists()) {
                     tesseract.setDatapath(path);
                     foundPath = path;
-                    System.out.println("✓ Using Tesseract data path: " + path);
-                    System.out.println("✓ Found eng.traineddata at: " + engFile.getAbsolutePath());
+                    LOG.debug("Using Tesseract data path {} ({})", path, engFile.getAbsolutePath());
                     break;
                 }
             }
         }
         
         if (foundPath == null) {
-            System.err.println("❌ ERROR: Could not find Tesseract tessdata directory!");
-            System.err.println("Searched in the following locations:");
+            List<String> searched = new ArrayList<>();
             for (String path : possiblePaths) {
                 if (path != null) {
-                    System.err.println("  - " + path);
+                    searched.add(path);
                 }
             }
-            System.err.println("\nPlease install Tesseract OCR or set TESSDATA_PREFIX environment variable.");
-            System.err.println("See TESSERACT_SETUP.md for installation instructions.");
+            LOG.error("Could not find the Tesseract tessdata directory, searched {}. Install Tesseract OCR or set "
+                      + "the TESSDATA_PREFIX environment variable; see TESSERACT_SETUP.md.", searched);
             throw new RuntimeException("Tesseract tessdata not found. Please install Tesseract OCR.");
         }
         
@@ -81,18 +89,18 @@ public class OcrPdfHighlightExtractor {
             tesseract.setPageSegMode(6); // Uniform block of text (more reliable than OSD)
             tesseract.setOcrEngineMode(1); // Neural nets LSTM engine only
             
-            // Test Tesseract with a simple operation
-            System.out.println("✓ Tesseract initialized successfully");
+            LOG.debug("Tesseract initialized");
             
         } catch (Exception e) {
-            System.err.println("❌ ERROR: Failed to initialize Tesseract: " + e.getMessage());
+            LOG.error("Failed to initialize Tesseract: {}", e.getMessage());
             throw new RuntimeException("Tesseract initialization failed", e);
         }
     }
     
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java OcrPdfHighlightExtractor <pdf-file-path>");
+        args = QuietMode.apply(args);
+        if (args.length != 1 && !(args.length == 3 && HighlightResultWriter.isOutputOption(args[1]))) {
+            System.out.println("Usage: java OcrPdfHighlightExtractor <pdf-file-path> [--quiet] [--jsonl <output.jsonl[.gz]> | --archive <output.hla>]");
             System.exit(1);
         }
         
@@ -100,61 +108,96 @@ public class OcrPdfHighlightExtractor {
         OcrPdfHighlightExtractor extractor = new OcrPdfHighlightExtractor();
         
         try {
-            extractor.extractHighlightsWithOcr(pdfPath);
+            if (args.length == 3) {
+                try (HighlightResultWriter writer = HighlightResultWriter.open(args[1], new File(args[2]), new File(pdfPath).getName(), EXTRACTION_METHOD)) {
+                    extractor.setResultWriter(writer);
+                    extractor.extractHighlightsWithOcr(pdfPath);
+                }
+            } else {
+                extractor.extractHighlightsWithOcr(pdfPath);
+            }
         } catch (Exception e) {
-            System.err.println("Error processing PDF: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error processing PDF {}", pdfPath, e);
         }
     }
     
+    public void setResultWriter(HighlightResultWriter resultWriter) {
+        this.resultWriter = resultWriter;
+    }
+    
+    /**
+     * Limits the time spent on a document, each page and each OCR call; defaults to the timeout system properties.
+     */
+    public void setTimeBudget(TimeBudget timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+    
+    /**
+     * Releases the fonts and decoded images of earlier pages every few pages; defaults to the page window system
+     * properties. Reopening is left to the pipeline.
+     */
+    public void setPageWindow(PageWindow pageWindow) {
+        this.pageWindow = pageWindow;
+    }
+    
     public void extractHighlightsWithOcr(String pdfPath) throws IOException {
         List<HighlightedText> highlights = new ArrayList<>();
         
-        try (PDDocument document = PDDocument.load(new File(pdfPath))) {
-            System.out.println("=".repeat(60));
-            System.out.println("OCR-BASED PDF HIGHLIGHT EXTRACTION");
-            System.out.println("=".repeat(60));
-            System.out.println("File: " + pdfPath);
-            System.out.println("Total pages: " + document.getNumberOfPages());
-            System.out.println("DPI: " + DPI);
-            System.out.println();
+        StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(pdfPath);
+        try (PDDocument document = DocumentLoader.load(new File(pdfPath).length(), () -> PDDocument.load(new File(pdfPath)))) {
+            LOG.info("OCR extraction of {} ({} pages, {} DPI)", pdfPath, document.getNumberOfPages(), DPI);
             
-            PDFRenderer pdfRenderer = new PDFRenderer(document);
+            CancellablePdfRenderer pdfRenderer = new CancellablePdfRenderer(document);
+            Deadline documentDeadline = timeBudget.startDocument();
             
             for (int pageNum = 0; pageNum < document.getNumberOfPages(); pageNum++) {
+                if (documentDeadline.isExpired()) {
+                    recordTimeout(TimedOutWork.document(pageNum + 1, document.getNumberOfPages() - pageNum));
+                    break;
+                }
+                pageWindow.beforePage(document, pageNum, 0);
                 PDPage page = document.getPage(pageNum);
-                System.out.println("Processing page " + (pageNum + 1) + "...");
+                Deadline pageDeadline = timeBudget.startPage(documentDeadline);
                 
                 // Convert PDF page to high-resolution image
-                BufferedImage pageImage = pdfRenderer.renderImageWithDPI(pageNum, DPI, ImageType.RGB);
-                
-                // Save page image for debugging (optional)
-                File pageImageFile = new File("page_" + (pageNum + 1) + ".png");
-                ImageIO.write(pageImage, "PNG", pageImageFile);
-                System.out.println("  Saved page image: " + pageImageFile.getName());
+                int pageIndex = pageNum;
+                BufferedImage pageImage;
+                try {
+                    pageImage = StageMetrics.shared().time(ExtractionStage.RENDER,
+                        () -> pdfRenderer.renderImageWithDPI(pageIndex, DPI, ImageType.RGB, pageDeadline));
+                } catch (ExtractionTimeoutException e) {
+                    recordTimeout(TimedOutWork.page(e.getScope(), pageNum + 1, countTargetHighlights(page.getAnnotations(), 0)));
+                    continue;
+                }
                 
                 // Extract highlights from this page
+                PageExtractionEvent pageEvent = PageExtractionEvent.start();
                 List<HighlightedText> pageHighlights = extractHighlightsFromPageImage(
-                    document, page, pageImage, pageNum + 1);
+                    document, page, pageImage, pageNum + 1, pageDeadline);
+                pageEvent.finish(pageNum + 1, "ocr", pageHighlights.size());
                 highlights.addAll(pageHighlights);
+
+                if (resultWriter != null) {
+                    resultWriter.writePage(pageHighlights);
+                }
                 
-                System.out.println("  Found " + pageHighlights.size() + " highlights on page " + (pageNum + 1));
-                
-                // Clean up page image file
-                pageImageFile.delete();
+                LOG.debug("Found {} highlights on page {}", pageHighlights.size(), pageNum + 1);
             }
             
             // Output results
             outputResults(highlights);
+        } finally {
+            timer.close();
         }
     }
     
     private List<HighlightedText> extractHighlightsFromPageImage(PDDocument document, PDPage page, 
-                                                               BufferedImage pageImage, int pageNumber) throws IOException {
+                                                               BufferedImage pageImage, int pageNumber,
+                                                               Deadline pageDeadline) throws IOException {
         List<HighlightedText> highlights = new ArrayList<>();
         
         // Get all annotations on the page
-        List<PDAnnotation> annotations = page.getAnnotations();
+        List<PDAnnotation> annotations = StageMetrics.shared().time(ExtractionStage.ANNOTATIONS, page::getAnnotations);
         
         // Get page dimensions for coordinate conversion
         PDRectangle pageBox = page.getMediaBox();
@@ -164,17 +207,25 @@ public class OcrPdfHighlightExtractor {
         int imageWidth = pageImage.getWidth();
         int imageHeight = pageImage.getHeight();
         
-        for (PDAnnotation annotation : annotations) {
+        for (int i = 0; i < annotations.size(); i++) {
+            PDAnnotation annotation = annotations.get(i);
             if (annotation instanceof PDAnnotationTextMarkup) {
                 PDAnnotationTextMarkup markup = (PDAnnotationTextMarkup) annotation;
                 
                 // Check if this is a target color
                 String colorName = getColorName(markup);
                 if (colorName != null) {
+                    if (pageDeadline.isExpired()) {
+                        recordTimeout(TimedOutWork.page(pageDeadline.getScope(), pageNumber, countTargetHighlights(annotations, i)));
+                        break;
+                    }
                     
                     // Extract text from the highlighted region using OCR
+                    HighlightRegionEvent regionEvent = HighlightRegionEvent.start();
                     String extractedText = extractTextFromHighlightRegion(
-                        markup, pageImage, pageWidth, pageHeight, imageWidth, imageHeight);
+                        markup, pageImage, pageNumber, pageWidth, pageHeight, imageWidth, imageHeight,
+                        timeBudget.startOcr(pageDeadline));
+                    regionEvent.finish(pageNumber, "ocr", colorName, markup.getRectangle(), extractedText);
                     
                     if (extractedText != null && !extractedText.trim().isEmpty()) {
                         highlights.add(new HighlightedText(
@@ -184,8 +235,8 @@ public class OcrPdfHighlightExtractor {
                             markup.getRectangle()
                         ));
                         
-                        System.out.println("    " + colorName + ": \"" + 
-                                         (extractedText.length() > 60 ? extractedText.substring(0, 60) + "..." : extractedText) + "\"");
+                        LOG.debug("{}: \"{}\"", colorName,
+                                  extractedText.length() > 60 ? extractedText.substring(0, 60) + "..." : extractedText);
                     }
                 }
             }
@@ -194,61 +245,148 @@ public class OcrPdfHighlightExtractor {
         return highlights;
     }
     
-    private String extractTextFromHighlightRegion(PDAnnotationTextMarkup markup, BufferedImage pageImage,
+    private int countTargetHighlights(List<PDAnnotation> annotations, int from) {
+        int count = 0;
+        for (int i = from; i < annotations.size(); i++) {
+            if (annotations.get(i) instanceof PDAnnotationTextMarkup && getColorName((PDAnnotationTextMarkup) annotations.get(i)) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private void recordTimeout(TimedOutWork work) {
+        StageMetrics.shared().recordTimeout(work);
+        LOG.warn("Abandoned work: {}", work);
+    }
+    
+    private String extractTextFromHighlightRegion(PDAnnotationTextMarkup markup, BufferedImage pageImage, int pageNumber,
                                                  float pageWidth, float pageHeight, 
-                                                 int imageWidth, int imageHeight) {
+                                                 int imageWidth, int imageHeight, Deadline ocrDeadline) {
         try {
-            // Get highlight rectangle
-            PDRectangle rect = markup.getRectangle();
-            
-            // Convert PDF coordinates to image coordinates
-            // PDF coordinates: (0,0) at bottom-left, Y increases upward
-            // Image coordinates: (0,0) at top-left, Y increases downward
-            
-            float scaleX = (float) imageWidth / pageWidth;
-            float scaleY = (float) imageHeight / pageHeight;
-            
-            int x = Math.max(0, (int) (rect.getLowerLeftX() * scaleX));
-            int y = Math.max(0, (int) ((pageHeight - rect.getUpperRightY()) * scaleY));
-            int width = Math.min(imageWidth - x, (int) (rect.getWidth() * scaleX));
-            int height = Math.min(imageHeight - y, (int) (rect.getHeight() * scaleY));
-            
-            // Add some padding to ensure we capture the text
-            int padding = 5;
-            x = Math.max(0, x - padding);
-            y = Math.max(0, y - padding);
-            width = Math.min(imageWidth - x, width + 2 * padding);
-            height = Math.min(imageHeight - y, height + 2 * padding);
-            
             // Extract the highlighted region from the image
-            if (width > 0 && height > 0) {
-                BufferedImage highlightRegion = pageImage.getSubimage(x, y, width, height);
-                
+            BufferedImage highlightRegion = cropHighlight(markup, pageImage, pageWidth, pageHeight);
+            if (highlightRegion != null) {
+                long start = System.nanoTime();
+                OcrCallEvent event = OcrCallEvent.start();
                 // Enhance the image for better OCR (optional)
                 BufferedImage enhancedRegion = enhanceImageForOcr(highlightRegion);
                 
-                // Save region image for debugging (optional)
-                String regionFileName = "highlight_region_" + System.currentTimeMillis() + ".png";
-                File regionFile = new File(regionFileName);
-                ImageIO.write(enhancedRegion, "PNG", regionFile);
-                
                 // Perform OCR on the highlighted region
-                String extractedText = tesseract.doOCR(enhancedRegion);
-                
-                // Clean up region file
-                regionFile.delete();
+                String extractedText = null;
+                try {
+                    extractedText = tesseract.doOCR(enhancedRegion, ocrDeadline);
+                } finally {
+                    StageMetrics.shared().record(ExtractionStage.OCR, start);
+                    event.finish(pageNumber, DPI, highlightRegion, extractedText);
+                }
                 
                 return cleanOcrText(extractedText);
             }
             
+        } catch (ExtractionTimeoutException e) {
+            recordTimeout(TimedOutWork.region(e.getScope(), pageNumber, markup.getRectangle()));
         } catch (Exception e) {
-            System.out.println("      OCR extraction error: " + e.getMessage());
+            LOG.warn("OCR extraction error: {}", e.getMessage());
         }
         
         return null;
     }
     
-    private BufferedImage enhanceImageForOcr(BufferedImage original) {
+    /**
+     * OCRs one highlight of an already rendered page image.
+     * Returns null when the highlight lies outside the image.
+     *
+     * @throws ExtractionTimeoutException if the deadline passes before or during recognition
+     */
+    String ocrHighlight(PDAnnotationTextMarkup markup, BufferedImage pageImage, int pageNumber, float pageWidth, float pageHeight,
+                        Deadline deadline) throws TesseractException, ExtractionTimeoutException {
+        BufferedImage highlightRegion = cropHighlight(markup, pageImage, pageWidth, pageHeight);
+        if (highlightRegion == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        OcrCallEvent event = OcrCallEvent.start();
+        String text = null;
+        try {
+            text = tesseract.doOCR(enhanceImageForOcr(highlightRegion), deadline);
+            return cleanOcrText(text);
+        } finally {
+            StageMetrics.shared().record(ExtractionStage.OCR, start);
+            event.finish(pageNumber, pageImage.getWidth() * 72f / pageWidth, highlightRegion, text);
+        }
+    }
+    
+    /**
+     * Crops a single-line highlight by its rectangle. A highlight over several lines is cropped line by line
+     * ({@link QuadGeometry#lines}) and the strips are stacked, so one OCR call reads exactly the highlighted
+     * lines instead of the whole bounding rectangle with the unhighlighted start of the first line and end of
+     * the last.
+     */
+    private BufferedImage cropHighlight(PDAnnotationTextMarkup markup, BufferedImage pageImage, float pageWidth, float pageHeight) {
+        List<QuadGeometry.Line> lines = QuadGeometry.lines(markup.getQuadPoints());
+        if (lines.size() <= 1) {
+            return cropRegion(markup.getRectangle(), pageImage, pageWidth, pageHeight);
+        }
+        
+        List<BufferedImage> strips = new ArrayList<>();
+        int width = 0;
+        int height = 0;
+        for (QuadGeometry.Line line : lines) {
+            BufferedImage strip = cropRegion(line.toRectangle(), pageImage, pageWidth, pageHeight);
+            if (strip != null) {
+                strips.add(strip);
+                width = Math.max(width, strip.getWidth());
+                height += strip.getHeight();
+            }
+        }
+        if (strips.size() <= 1) {
+            return strips.isEmpty() ? null : strips.get(0);
+        }
+        
+        BufferedImage stacked = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = stacked.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, width, height);
+        int y = 0;
+        for (BufferedImage strip : strips) {
+            g2d.drawImage(strip, 0, y, null);
+            y += strip.getHeight();
+        }
+        g2d.dispose();
+        return stacked;
+    }
+    
+    private BufferedImage cropRegion(PDRectangle rect, BufferedImage pageImage, float pageWidth, float pageHeight) {
+        int imageWidth = pageImage.getWidth();
+        int imageHeight = pageImage.getHeight();
+        
+        // Convert PDF coordinates to image coordinates
+        // PDF coordinates: (0,0) at bottom-left, Y increases upward
+        // Image coordinates: (0,0) at top-left, Y increases downward
+        
+        float scaleX = (float) imageWidth / pageWidth;
+        float scaleY = (float) imageHeight / pageHeight;
+        
+        int x = Math.max(0, (int) (rect.getLowerLeftX() * scaleX));
+        int y = Math.max(0, (int) ((pageHeight - rect.getUpperRightY()) * scaleY));
+        int width = Math.min(imageWidth - x, (int) (rect.getWidth() * scaleX));
+        int height = Math.min(imageHeight - y, (int) (rect.getHeight() * scaleY));
+        
+        // Add some padding to ensure we capture the text
+        int padding = 5;
+        x = Math.max(0, x - padding);
+        y = Math.max(0, y - padding);
+        width = Math.min(imageWidth - x, width + 2 * padding);
+        height = Math.min(imageHeight - y, height + 2 * padding);
+        
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        return pageImage.getSubimage(x, y, width, height);
+    }
+    
+    static BufferedImage enhanceImageForOcr(BufferedImage original) {
         // Create a new image with enhanced contrast and brightness for better OCR
         BufferedImage enhanced = new BufferedImage(
             original.getWidth() * 2, // Scale up for better OCR
@@ -278,43 +416,8 @@ public class OcrPdfHighlightExtractor {
     }
     
     private String getColorName(PDAnnotationTextMarkup markup) {
-        try {
-            if (markup.getColor() == null) return null;
-            
-            float[] colorComponents = markup.getColor().getComponents();
-            if (colorComponents.length < 3) return null;
-            
-            Color color = new Color(colorComponents[0], colorComponents[1], colorComponents[2]);
-            return identifyTargetColor(color);
-            
-        } catch (Exception e) {
-            return null;
-        }
-    }
-    
-    private String identifyTargetColor(Color color) {
-        if (color == null) return null;
-        
-        int r = color.getRed();
-        int g = color.getGreen();
-        int b = color.getBlue();
-        
-        // Green-ish colors (including light green like RGB(197, 251, 114))
-        if (g > 200 && g > r && g > b) {
-            return "GREEN";
-        }
-        
-        // Yellow-ish colors (including orange-yellow like RGB(255, 193, 0))
-        if (r > 200 && g > 150 && b < 100) {
-            return "YELLOW";
-        }
-        
-        // Purple-ish colors (including RGB(150, 67, 252))
-        if (b > 200 && r > 100 && g < 150) {
-            return "PURPLE";
-        }
-        
-        return null;
+        HighlightColor color = HighlightColor.fromAnnotation(markup);
+        return color != null ? color.name() : null;
     }
     
     private void outputResults(List<HighlightedText> highlights) {
@@ -360,34 +463,17 @@ public class OcrPdfHighlightExtractor {
         }
         
         // Save to JSON file
-        saveToJsonFile(highlights, groupedHighlights);
+        saveToJsonFile(highlights);
     }
     
-    private void saveToJsonFile(List<HighlightedText> highlights, Map<String, List<HighlightedText>> groupedHighlights) {
+    private void saveToJsonFile(List<HighlightedText> highlights) {
+        long start = System.nanoTime();
         try {
             ObjectMapper mapper = new ObjectMapper();
-            ObjectNode root = mapper.createObjectNode();
-            
-            root.put("totalHighlights", highlights.size());
-            root.put("extractionDate", new Date().toString());
-            root.put("extractionMethod", "OCR-based text extraction using Tesseract");
+            ObjectNode root = HighlightJsonReport.build(mapper, highlights, EXTRACTION_METHOD);
+            HighlightJsonReport.putResources(mapper, root, StageMetrics.shared().currentResources());
             root.put("dpi", DPI);
             
-            ObjectNode colorGroups = mapper.createObjectNode();
-            for (Map.Entry<String, List<HighlightedText>> entry : groupedHighlights.entrySet()) {
-                ArrayNode colorArray = mapper.createArrayNode();
-                for (HighlightedText highlight : entry.getValue()) {
-                    ObjectNode highlightNode = mapper.createObjectNode();
-                    highlightNode.put("text", highlight.getText());
-                    highlightNode.put("page", highlight.getPageNumber());
-                    highlightNode.put("coordinates", highlight.getCoordinates().toString());
-                    colorArray.add(highlightNode);
-                }
-                colorGroups.set(entry.getKey().toLowerCase(), colorArray);
-            }
-            
-            root.set("highlightsByColor", colorGroups);
-            
             // Save to file
             String outputFileName = "ocr-highlights-extraction.json";
             try (java.io.FileWriter fileWriter = new java.io.FileWriter(outputFileName)) {
@@ -398,7 +484,9 @@ public class OcrPdfHighlightExtractor {
             }
             
         } catch (Exception e) {
-            System.out.println("Error saving JSON file: " + e.getMessage());
+            LOG.error("Error saving JSON file", e);
+        } finally {
+            StageMetrics.shared().record(ExtractionStage.SERIALIZE, start);
         }
     }
 }
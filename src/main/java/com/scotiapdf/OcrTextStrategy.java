@@ -0,0 +1,38 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+
+import net.sourceforge.tess4j.TesseractException;
+
+import java.io.IOException;
+
+/**
+ * OCRs the highlighted region of the rendered page. This is by far the most expensive
+ * strategy and should run last. Tesseract instances are not thread-safe, so each worker
+ * thread gets its own, initialized on first use and kept warm afterwards.
+ */
+public class OcrTextStrategy implements HighlightExtractionStrategy {
+    
+    private final ThreadLocal<OcrPdfHighlightExtractor> ocr;
+    
+    public OcrTextStrategy() {
+        this.ocr = ThreadLocal.withInitial(OcrPdfHighlightExtractor::new);
+    }
+    
+    @Override
+    public String getName() {
+        return "ocr";
+    }
+    
+    @Override
+    public String extractText(PDAnnotationTextMarkup markup, PageContext page) throws IOException {
+        PDRectangle pageBox = page.getMediaBox();
+        try {
+            return ocr.get().ocrHighlight(markup, page.getPageImage(OcrPdfHighlightExtractor.DPI),
+                                          page.getPageNumber(), pageBox.getWidth(), pageBox.getHeight(), page.startOcr());
+        } catch (TesseractException e) {
+            throw new IOException("OCR failed: " + e.getMessage(), e);
+        }
+    }
+}
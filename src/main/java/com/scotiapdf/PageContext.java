@@ -0,0 +1,99 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Per-page state shared by the extraction strategies. Expensive artifacts (glyph positions,
+ * the rendered page image) are computed on first use, so pages whose highlights are all
+ * resolved by cheap strategies never pay for them. Glyphs come from the shared
+ * {@link PageGlyphCache}, so pages identical to ones seen before skip the text stripper.
+ *
+ * The page's time budget starts when the context is created. Rendering stops at its deadline; the text
+ * stripper cannot be interrupted, so a page only notices an expired deadline once its glyphs are in.
+ */
+public class PageContext {
+    private final PDDocument document;
+    private final PDPage page;
+    private final int pageNumber;
+    private final CancellablePdfRenderer renderer;
+    private final TimeBudget budget;
+    private final Deadline deadline;
+    private PageGlyphs glyphs;
+    private BufferedImage pageImage;
+    private float pageImageDpi;
+    
+    public PageContext(PDDocument document, PDPage page, int pageNumber, CancellablePdfRenderer renderer) {
+        this(document, page, pageNumber, renderer, TimeBudget.UNLIMITED, Deadline.NONE);
+    }
+    
+    /**
+     * Starts the page's budget, which ends no later than the document's deadline.
+     */
+    public PageContext(PDDocument document, PDPage page, int pageNumber, CancellablePdfRenderer renderer,
+                       TimeBudget budget, Deadline documentDeadline) {
+        this.document = document;
+        this.page = page;
+        this.pageNumber = pageNumber;
+        this.renderer = renderer;
+        this.budget = budget;
+        this.deadline = budget.startPage(documentDeadline);
+    }
+    
+    public PDDocument getDocument() {
+        return document;
+    }
+    
+    public PDPage getPage() {
+        return page;
+    }
+    
+    public int getPageNumber() {
+        return pageNumber;
+    }
+    
+    /**
+     * The deadline of this page: the page budget or the document's deadline, whichever comes first.
+     */
+    public Deadline getDeadline() {
+        return deadline;
+    }
+    
+    /**
+     * Starts the budget of one OCR call on this page.
+     */
+    public Deadline startOcr() {
+        return budget.startOcr(deadline);
+    }
+    
+    /**
+     * Returns the glyphs of the page in reading order (top to bottom, then left to right).
+     */
+    public PageGlyphs getGlyphs() throws IOException {
+        if (glyphs == null) {
+            glyphs = PageGlyphCache.shared().get(document, page, pageNumber);
+        }
+        return glyphs;
+    }
+    
+    /**
+     * Returns the page rendered at the given DPI; the image is kept for later highlights on the page.
+     */
+    public BufferedImage getPageImage(float dpi) throws IOException {
+        if (pageImage == null || pageImageDpi != dpi) {
+            pageImage = StageMetrics.shared().time(ExtractionStage.RENDER,
+                () -> renderer.renderImageWithDPI(pageNumber - 1, dpi, ImageType.RGB, deadline));
+            pageImageDpi = dpi;
+        }
+        return pageImage;
+    }
+    
+    public PDRectangle getMediaBox() {
+        return page.getMediaBox();
+    }
+}
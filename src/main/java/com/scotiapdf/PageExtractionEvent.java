@@ -0,0 +1,46 @@
+package com.scotiapdf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for extracting the highlights of one page.
+ */
+@Name("com.scotiapdf.PageExtraction")
+@Label("Page Extraction")
+@Category({"PDF Highlight Extractor"})
+@Description("Reading a page's annotations and extracting the text of its target highlights")
+public class PageExtractionEvent extends Event {
+
+    @Label("Document")
+    String documentId;
+
+    @Label("Page Number")
+    int pageNumber;
+
+    @Label("Extractor")
+    String extractor;
+
+    @Label("Highlights")
+    int highlights;
+
+    static PageExtractionEvent start() {
+        PageExtractionEvent event = new PageExtractionEvent();
+        event.begin();
+        return event;
+    }
+
+    void finish(int pageNumber, String extractor, int highlights) {
+        end();
+        if (shouldCommit()) {
+            this.documentId = StageMetrics.shared().currentDocumentId();
+            this.pageNumber = pageNumber;
+            this.extractor = extractor;
+            this.highlights = highlights;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.cos.*;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * SHA-256 fingerprints of PDF objects, used to recognize pages whose text is byte-identical across documents.
+ *
+ * A page's fingerprint covers its content stream bytes, its (possibly inherited) resources including fonts and
+ * form XObjects, and the geometry that affects text positions (media box, crop box, rotation). Annotations are
+ * not included, so the same boilerplate page with different highlights has the same fingerprint. Dictionary
+ * keys are hashed in sorted order and indirect references by their target, so object numbering does not matter.
+ */
+final class PageFingerprint {
+
+    // Digests of raw stream data; fonts and images shared by many pages of a document are read once
+    private static final Map<COSStream, byte[]> STREAM_DIGESTS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final MessageDigest digest = sha256();
+    private final Map<COSBase, Integer> visited = new IdentityHashMap<>();
+    private final ByteBuffer scratch = ByteBuffer.allocate(8);
+    private final boolean skipPageLinks;
+
+    private PageFingerprint(boolean skipPageLinks) {
+        this.skipPageLinks = skipPageLinks;
+    }
+
+    /**
+     * Fingerprint of everything that determines the page's extracted text and glyph positions.
+     */
+    static String of(PDPage page) throws IOException {
+        PageFingerprint fingerprint = new PageFingerprint(false);
+        fingerprint.writeRectangle(page.getMediaBox());
+        fingerprint.writeRectangle(page.getCropBox());
+        fingerprint.writeLong(page.getRotation());
+        fingerprint.write(page.getCOSObject().getDictionaryObject(COSName.CONTENTS));
+        PDResources resources = page.getResources();
+        fingerprint.write(resources != null ? resources.getCOSObject() : null);
+        return fingerprint.finish();
+    }
+
+    /**
+     * Fingerprint of a single object and everything it references.
+     */
+    static String of(COSBase object) throws IOException {
+        PageFingerprint fingerprint = new PageFingerprint(false);
+        fingerprint.write(object);
+        return fingerprint.finish();
+    }
+
+    /**
+     * Fingerprint of the page's /Annots array. The annotations' /P links back to the page are skipped,
+     * so the result changes only when annotations are added, removed or edited.
+     */
+    static String ofAnnotations(PDPage page) throws IOException {
+        PageFingerprint fingerprint = new PageFingerprint(true);
+        fingerprint.write(page.getCOSObject().getDictionaryObject(COSName.ANNOTS));
+        return fingerprint.finish();
+    }
+
+    private String finish() {
+        byte[] hash = digest.digest();
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private void write(COSBase object) throws IOException {
+        if (object instanceof COSObject) {
+            object = ((COSObject) object).getObject();
+        }
+        if (object == null || object instanceof COSNull) {
+            digest.update((byte) 'n');
+            return;
+        }
+
+        if (object instanceof COSDictionary || object instanceof COSArray) {
+            // Shared and cyclic structures are hashed once and referenced by visit order afterwards
+            Integer seen = visited.get(object);
+            if (seen != null) {
+                digest.update((byte) 'r');
+                writeLong(seen);
+                return;
+            }
+            visited.put(object, visited.size());
+        }
+
+        if (object instanceof COSStream) {
+            digest.update((byte) 's');
+            writeDictionary((COSDictionary) object);
+            digest.update(streamDigest((COSStream) object));
+        } else if (object instanceof COSDictionary) {
+            digest.update((byte) 'd');
+            writeDictionary((COSDictionary) object);
+        } else if (object instanceof COSArray) {
+            COSArray array = (COSArray) object;
+            digest.update((byte) 'a');
+            writeLong(array.size());
+            for (int i = 0; i < array.size(); i++) {
+                write(array.get(i));
+            }
+        } else if (object instanceof COSName) {
+            digest.update((byte) '/');
+            writeBytes(((COSName) object).getName().getBytes(StandardCharsets.UTF_8));
+        } else if (object instanceof COSString) {
+            digest.update((byte) '(');
+            writeBytes(((COSString) object).getBytes());
+        } else if (object instanceof COSInteger) {
+            digest.update((byte) 'i');
+            writeLong(((COSInteger) object).longValue());
+        } else if (object instanceof COSFloat) {
+            digest.update((byte) 'f');
+            writeLong(Float.floatToIntBits(((COSFloat) object).floatValue()));
+        } else if (object instanceof COSBoolean) {
+            digest.update(((COSBoolean) object).getValue() ? (byte) 'T' : (byte) 'F');
+        } else {
+            digest.update((byte) '?');
+        }
+    }
+
+    private void writeDictionary(COSDictionary dictionary) throws IOException {
+        List<COSName> keys = new ArrayList<>(dictionary.keySet());
+        keys.sort(Comparator.comparing(COSName::getName));
+        writeLong(keys.size());
+        for (COSName key : keys) {
+            // Parent links lead back up the page tree, which says nothing about this page's content
+            if (COSName.PARENT.equals(key) || COSName.LENGTH.equals(key) || (skipPageLinks && COSName.P.equals(key))) {
+                continue;
+            }
+            write(key);
+            write(dictionary.getItem(key));
+        }
+    }
+
+    private static byte[] streamDigest(COSStream stream) throws IOException {
+        byte[] cached = STREAM_DIGESTS.get(stream);
+        if (cached != null) {
+            return cached;
+        }
+
+        MessageDigest streamDigest = sha256();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = stream.createRawInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                streamDigest.update(buffer, 0, read);
+            }
+        }
+        byte[] result = streamDigest.digest();
+        STREAM_DIGESTS.put(stream, result);
+        return result;
+    }
+
+    private void writeRectangle(PDRectangle rect) {
+        writeLong(Float.floatToIntBits(rect.getLowerLeftX()));
+        writeLong(Float.floatToIntBits(rect.getLowerLeftY()));
+        writeLong(Float.floatToIntBits(rect.getUpperRightX()));
+        writeLong(Float.floatToIntBits(rect.getUpperRightY()));
+    }
+
+    private void writeBytes(byte[] bytes) {
+        writeLong(bytes.length);
+        digest.update(bytes);
+    }
+
+    private void writeLong(long value) {
+        scratch.clear();
+        scratch.putLong(value);
+        digest.update(scratch.array());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
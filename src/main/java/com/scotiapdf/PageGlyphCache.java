@@ -0,0 +1,104 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide LRU cache of {@link PageGlyphs}, keyed by the {@link PageFingerprint} of a page.
+ * Boilerplate pages that are byte-identical across documents (terms and conditions, cover sheets)
+ * are run through the text stripper once; later documents reuse the glyphs. The cache is bounded by
+ * the estimated size of the cached glyphs.
+ */
+public class PageGlyphCache {
+
+    private static final PageGlyphCache SHARED = new PageGlyphCache(64L * 1024 * 1024);
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, PageGlyphs> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public PageGlyphCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The cache used by the extractors and the pipeline.
+     */
+    public static PageGlyphCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the glyphs of the page, from the cache when an identical page has been seen before.
+     */
+    public PageGlyphs get(PDDocument document, PDPage page, int pageNumber) throws IOException {
+        String key;
+        try {
+            key = PageFingerprint.of(page);
+        } catch (IOException e) {
+            // Unreadable stream data: extract without caching and let the stripper report real errors
+            return PageGlyphs.extract(document, page, pageNumber);
+        }
+
+        synchronized (this) {
+            PageGlyphs cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        // Extracted outside the lock; two threads missing on the same page both extract, which is harmless
+        PageGlyphs glyphs = PageGlyphs.extract(document, page, pageNumber);
+        put(key, glyphs);
+        return glyphs;
+    }
+
+    private synchronized void put(String key, PageGlyphs glyphs) {
+        long size = glyphs.estimatedBytes();
+        if (size > maxBytes) {
+            return;
+        }
+        PageGlyphs previous = entries.put(key, glyphs);
+        if (previous != null) {
+            currentBytes -= previous.estimatedBytes();
+        }
+        currentBytes += size;
+
+        Iterator<Map.Entry<String, PageGlyphs>> eldest = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            currentBytes -= eldest.next().getValue().estimatedBytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return String.format("hits=%d misses=%d (%.1f%% hit rate) pages=%d size=%dKB evictions=%d",
+            hits, misses, lookups > 0 ? hits * 100.0 / lookups : 0.0, entries.size(), currentBytes / 1024, evictions);
+    }
+}
@@ -0,0 +1,157 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable, compact copy of the glyphs of one page in reading order (top to bottom, then left to right).
+ * Holds only what highlight matching needs, in parallel primitive arrays instead of one TextPosition
+ * (with its font, matrix and character arrays) per glyph, so it can be cached and shared between threads.
+ *
+ * For every glyph it stores the glyph center in PDF user space, where annotation quad points live, and
+ * the raw TextPosition x/y used by {@link AdvancedPdfHighlightExtractor}, together with the order of the
+ * glyphs by those raw coordinates, sorted once here rather than for every page match.
+ */
+public final class PageGlyphs {
+
+    private final float[] centerX;
+    private final float[] centerY;
+    private final float[] x;
+    private final float[] y;
+    private final String text;
+    private final int[] textOffsets;
+    private final int[] rawOrder;
+
+    private PageGlyphs(float[] centerX, float[] centerY, float[] x, float[] y, String text, int[] textOffsets) {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.x = x;
+        this.y = y;
+        this.text = text;
+        this.textOffsets = textOffsets;
+        this.rawOrder = sortByRawPosition(x, y);
+    }
+
+    // Raw y descending (PDF coordinates), then raw x ascending; the sort is stable, so ties keep reading order
+    private static int[] sortByRawPosition(float[] x, float[] y) {
+        return IntStream.range(0, x.length)
+            .boxed()
+            .sorted((g1, g2) -> {
+                int yCompare = Float.compare(y[g2], y[g1]);
+                if (yCompare != 0) return yCompare;
+                return Float.compare(x[g1], x[g2]);
+            })
+            .mapToInt(Integer::intValue)
+            .toArray();
+    }
+
+    /**
+     * Runs the text stripper over one page and copies the glyph data.
+     */
+    public static PageGlyphs extract(PDDocument document, PDPage page, int pageNumber) throws IOException {
+        GlyphCollector collector = new GlyphCollector();
+        collector.setStartPage(pageNumber);
+        collector.setEndPage(pageNumber);
+        long start = System.nanoTime();
+        try {
+            collector.getText(document);
+        } finally {
+            StageMetrics.shared().record(ExtractionStage.TEXT, start);
+        }
+
+        List<TextPosition> positions = collector.positions;
+        positions.sort((t1, t2) -> {
+            int yCompare = Float.compare(t1.getYDirAdj(), t2.getYDirAdj());
+            if (yCompare != 0) return yCompare;
+            return Float.compare(t1.getXDirAdj(), t2.getXDirAdj());
+        });
+
+        PDRectangle cropBox = page.getCropBox();
+        int count = positions.size();
+        float[] centerX = new float[count];
+        float[] centerY = new float[count];
+        float[] x = new float[count];
+        float[] y = new float[count];
+        int[] textOffsets = new int[count + 1];
+        StringBuilder text = new StringBuilder(count);
+
+        for (int i = 0; i < count; i++) {
+            TextPosition position = positions.get(i);
+            // Text positions use display coordinates (origin top-left of the crop box); convert the center to PDF space
+            centerX[i] = cropBox.getLowerLeftX() + position.getXDirAdj() + position.getWidthDirAdj() / 2;
+            centerY[i] = cropBox.getUpperRightY() - position.getYDirAdj() + position.getHeightDir() / 2;
+            x[i] = position.getX();
+            y[i] = position.getY();
+            textOffsets[i] = text.length();
+            text.append(position.getUnicode());
+        }
+        textOffsets[count] = text.length();
+
+        return new PageGlyphs(centerX, centerY, x, y, text.toString(), textOffsets);
+    }
+
+    public int size() {
+        return centerX.length;
+    }
+
+    public float getCenterX(int index) {
+        return centerX[index];
+    }
+
+    public float getCenterY(int index) {
+        return centerY[index];
+    }
+
+    /**
+     * Raw {@link TextPosition#getX()} of the glyph.
+     */
+    public float getX(int index) {
+        return x[index];
+    }
+
+    /**
+     * Raw {@link TextPosition#getY()} of the glyph.
+     */
+    public float getY(int index) {
+        return y[index];
+    }
+
+    /**
+     * Index of the glyph at the given position when ordered by raw y (top to bottom), then raw x (left to right).
+     */
+    public int getRawOrder(int position) {
+        return rawOrder[position];
+    }
+
+    public void appendUnicode(int index, StringBuilder target) {
+        target.append(text, textOffsets[index], textOffsets[index + 1]);
+    }
+
+    /**
+     * Approximate heap footprint, used to bound the cache.
+     */
+    public long estimatedBytes() {
+        return 96 + 4L * (6 * centerX.length + 1) + 2L * text.length();
+    }
+
+    private static class GlyphCollector extends PDFTextStripper {
+        private final List<TextPosition> positions = new ArrayList<>();
+
+        GlyphCollector() throws IOException {
+            super();
+        }
+
+        @Override
+        protected void processTextPosition(TextPosition text) {
+            positions.add(text);
+        }
+    }
+}
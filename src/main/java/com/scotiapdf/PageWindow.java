@@ -0,0 +1,63 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * Processes long documents in windows of pages. PDFBox keeps the fonts and images a document has parsed,
+ * including decoded page scans, until the document is closed; they are only softly referenced, so the heap
+ * fills up before any of it is collected. At the start of every window the document gets a fresh resource
+ * cache, which makes the previous window's parsed state unreachable. With reopen, the pipeline also closes and
+ * reloads the document for each window, so nothing parsed for one window outlives it.
+ *
+ * The defaults come from the system properties {@value #PROPERTY} (pages per window, 0 for none) and
+ * {@value #REOPEN_PROPERTY}, which works for every extractor's command line.
+ */
+public final class PageWindow {
+
+    public static final String PROPERTY = "highlight.pageWindow";
+    public static final String REOPEN_PROPERTY = "highlight.pageWindow.reopen";
+
+    public static final PageWindow NONE = new PageWindow(0, false);
+
+    private final int pages;
+    private final boolean reopen;
+
+    public PageWindow(int pages, boolean reopen) {
+        this.pages = Math.max(0, pages);
+        this.reopen = reopen;
+    }
+
+    public static PageWindow fromSystemProperties() {
+        return new PageWindow(Integer.getInteger(PROPERTY, 0), Boolean.getBoolean(REOPEN_PROPERTY));
+    }
+
+    public boolean isBounded() {
+        return pages > 0;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * Whether the document is reloaded for every window; only meaningful when the window is bounded.
+     */
+    public boolean isReopen() {
+        return reopen && pages > 0;
+    }
+
+    /**
+     * Called before the page with the given zero-based index of a loop that started at firstPage; releases the
+     * parsed state of the previous window when a new one starts.
+     */
+    public void beforePage(PDDocument document, int pageIndex, int firstPage) {
+        if (pages > 0 && pageIndex > firstPage && (pageIndex - firstPage) % pages == 0) {
+            SharedResourceCache.shared().install(document);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pages > 0 ? pages + " pages" + (reopen ? ", reopened" : "") : "none";
+    }
+}
@@ -12,6 +12,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
@@ -20,6 +23,16 @@ import java.util.List;
 
 public class PdfHighlightExtractor {
     
+    static {
+        QuietMode.init();
+    }
+    
+    private static final Logger LOG = LoggerFactory.getLogger(PdfHighlightExtractor.class);
+    
+    static final String EXTRACTION_METHOD = "Annotation-based extraction";
+    
+    private HighlightResultWriter resultWriter;
+    
     private static final Map<String, Color> TARGET_COLORS = new HashMap<>();
     
     static {
@@ -29,42 +42,68 @@ public class PdfHighlightExtractor {
     }
     
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java PdfHighlightExtractor <pdf-file-path>");
+        args = QuietMode.apply(args);
+        if (args.length != 1 && !(args.length == 3 && HighlightResultWriter.isOutputOption(args[1]))) {
+            System.out.println("Usage: java PdfHighlightExtractor <pdf-file-path> [--quiet] [--jsonl <output.jsonl[.gz]> | --archive <output.hla>]");
             System.exit(1);
         }
         
         String pdfPath = args[0];
         PdfHighlightExtractor extractor = new PdfHighlightExtractor();
         
+        // The results are printed inside the document's scope so they include its resource use
+        StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(pdfPath);
         try {
-            List<HighlightedText> highlights = extractor.extractHighlights(pdfPath);
+            List<HighlightedText> highlights;
+            if (args.length == 3) {
+                try (HighlightResultWriter writer = HighlightResultWriter.open(args[1], new File(args[2]), new File(pdfPath).getName(), EXTRACTION_METHOD)) {
+                    extractor.setResultWriter(writer);
+                    highlights = extractor.extractHighlights(pdfPath);
+                }
+            } else {
+                highlights = extractor.extractHighlights(pdfPath);
+            }
             extractor.outputResults(highlights);
         } catch (IOException e) {
-            System.err.println("Error processing PDF: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error processing PDF {}", pdfPath, e);
+        } finally {
+            timer.close();
         }
     }
     
+    public void setResultWriter(HighlightResultWriter resultWriter) {
+        this.resultWriter = resultWriter;
+    }
+    
     public List<HighlightedText> extractHighlights(String pdfPath) throws IOException {
         List<HighlightedText> highlights = new ArrayList<>();
         
-        try (PDDocument document = PDDocument.load(new File(pdfPath))) {
-            System.out.println("Processing PDF: " + pdfPath);
-            System.out.println("Total pages: " + document.getNumberOfPages());
+        StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(pdfPath);
+        try (PDDocument document = DocumentLoader.load(new File(pdfPath).length(), () -> PDDocument.load(new File(pdfPath)))) {
+            LOG.info("Processing {} ({} pages)", pdfPath, document.getNumberOfPages());
             
+            PageWindow pageWindow = PageWindow.fromSystemProperties();
             for (int pageNum = 0; pageNum < document.getNumberOfPages(); pageNum++) {
+                pageWindow.beforePage(document, pageNum, 0);
                 PDPage page = document.getPage(pageNum);
-                System.out.println("\nProcessing page " + (pageNum + 1));
                 
                 // Extract highlights from annotations
+                PageExtractionEvent pageEvent = PageExtractionEvent.start();
                 List<HighlightedText> pageHighlights = extractAnnotationHighlights(page, pageNum + 1);
                 highlights.addAll(pageHighlights);
                 
                 // Also try to extract text and look for formatting-based highlights
                 List<HighlightedText> formattingHighlights = extractFormattingHighlights(document, pageNum);
                 highlights.addAll(formattingHighlights);
+                pageEvent.finish(pageNum + 1, "basic", pageHighlights.size() + formattingHighlights.size());
+                
+                if (resultWriter != null) {
+                    resultWriter.writePage(pageHighlights);
+                    resultWriter.writePage(formattingHighlights);
+                }
             }
+        } finally {
+            timer.close();
         }
         
         return highlights;
@@ -73,8 +112,8 @@ public class PdfHighlightExtractor {
     private List<HighlightedText> extractAnnotationHighlights(PDPage page, int pageNumber) throws IOException {
         List<HighlightedText> highlights = new ArrayList<>();
         
-        List<PDAnnotation> annotations = page.getAnnotations();
-        System.out.println("Found " + annotations.size() + " annotations on page " + pageNumber);
+        List<PDAnnotation> annotations = StageMetrics.shared().time(ExtractionStage.ANNOTATIONS, page::getAnnotations);
+        LOG.debug("Found {} annotations on page {}", annotations.size(), pageNumber);
         
         for (PDAnnotation annotation : annotations) {
             if (annotation instanceof PDAnnotationTextMarkup) {
@@ -96,8 +135,7 @@ public class PdfHighlightExtractor {
                             markup.getRectangle()
                         ));
                         
-                        System.out.println("Found " + colorName + " highlight: " + 
-                                         highlightedText.substring(0, Math.min(50, highlightedText.length())) + "...");
+                        LOG.debug("Found {} highlight: {}", colorName, highlightedText);
                     }
                 }
             }
@@ -114,7 +152,7 @@ public class PdfHighlightExtractor {
         stripper.setStartPage(pageNum + 1);
         stripper.setEndPage(pageNum + 1);
         
-        String text = stripper.getText(document);
+        String text = StageMetrics.shared().time(ExtractionStage.TEXT, () -> stripper.getText(document));
         
         // The custom stripper will populate highlights based on text formatting
         highlights.addAll(stripper.getHighlights());
@@ -129,7 +167,7 @@ public class PdfHighlightExtractor {
                 return new Color(colorComponents[0], colorComponents[1], colorComponents[2]);
             }
         } catch (Exception e) {
-            System.out.println("Could not extract color from annotation: " + e.getMessage());
+            LOG.warn("Could not extract color from annotation: {}", e.getMessage());
         }
         return null;
     }
@@ -177,7 +215,7 @@ public class PdfHighlightExtractor {
                                 rect.getWidth(), rect.getHeight());
             
         } catch (Exception e) {
-            System.out.println("Error extracting text from markup: " + e.getMessage());
+            LOG.warn("Error extracting text from markup: {}", e.getMessage());
             return "Highlight detected but text extraction failed";
         }
     }
@@ -190,6 +228,7 @@ public class PdfHighlightExtractor {
             
             root.put("totalHighlights", highlights.size());
             root.put("extractionDate", new Date().toString());
+            HighlightJsonReport.putResources(mapper, root, StageMetrics.shared().currentResources());
             
             // Group by color
             Map<String, List<HighlightedText>> groupedByColor = new HashMap<>();
@@ -213,7 +252,8 @@ public class PdfHighlightExtractor {
             root.set("highlightsByColor", colorGroups);
             
             // Pretty print JSON
-            String jsonOutput = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(root);
+            String jsonOutput = StageMetrics.shared().time(ExtractionStage.SERIALIZE,
+                () -> mapper.writerWithDefaultPrettyPrinter().writeValueAsString(root));
             System.out.println("\n" + "=".repeat(50));
             System.out.println("EXTRACTION RESULTS");
             System.out.println("=".repeat(50));
@@ -229,7 +269,7 @@ public class PdfHighlightExtractor {
             }
             
         } catch (Exception e) {
-            System.err.println("Error generating output: " + e.getMessage());
+            LOG.error("Error generating JSON output, falling back to text", e);
             
             // Fallback to simple text output
             System.out.println("\nHighlighted Text Extraction Results:");
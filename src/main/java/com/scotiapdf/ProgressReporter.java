@@ -0,0 +1,77 @@
+package com.scotiapdf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs the progress of a long run at a fixed interval. Workers only bump counters; the line is written by
+ * a daemon thread, so progress costs nothing per item. No thread is started when INFO is disabled (quiet mode).
+ */
+public final class ProgressReporter implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProgressReporter.class);
+
+    public static final long DEFAULT_INTERVAL_SECONDS = 10;
+
+    private final String unit;
+    private final long total;
+    private final long start = System.nanoTime();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder highlights = new LongAdder();
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Starts reporting every intervalSeconds; an interval of 0 or less disables the reports.
+     */
+    public ProgressReporter(String unit, long total, long intervalSeconds) {
+        this.unit = unit;
+        this.total = total;
+        if (intervalSeconds > 0 && LOG.isInfoEnabled()) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "progress-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /**
+     * Counts one finished item and the highlights it produced.
+     */
+    public void itemCompleted(int itemHighlights) {
+        completed.increment();
+        highlights.add(itemHighlights);
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    void report() {
+        long done = completed.sum();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rate = seconds > 0 ? done / seconds : 0.0;
+        if (total > 0) {
+            String eta = rate > 0 ? String.format("%.0f s", (total - done) / rate) : "unknown";
+            LOG.info("Progress: {}/{} {} ({}%), {} highlights, {} {}/s, ETA {}", done, total, unit,
+                String.format("%.1f", 100.0 * done / total), highlights.sum(), String.format("%.2f", rate), unit, eta);
+        } else {
+            LOG.info("Progress: {} {}, {} highlights, {} {}/s", done, unit, highlights.sum(), String.format("%.2f", rate), unit);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Geometry of text markup quad points. A highlight often carries one quad per word or line fragment;
+ * {@link #lines} merges the quads that share a baseline and touch into one rectangle per line, in reading order.
+ * Matching then scans the page glyphs once per line instead of once per quad, and OCR crops one strip per line
+ * instead of the annotation's whole bounding rectangle.
+ *
+ * A line keeps the quads it was built from, so callers can still select glyphs quad by quad and produce
+ * exactly the text they produced before.
+ */
+public final class QuadGeometry {
+
+    // Quads are on the same line when they overlap vertically by at least this fraction of the lower one
+    private static final float SAME_LINE_OVERLAP = 0.5f;
+    // Quads on a line are adjacent when the gap between them is at most this many line heights
+    private static final float MAX_GAP = 1.0f;
+
+    private QuadGeometry() {
+    }
+
+    /**
+     * One line of a highlight: the union of adjacent quads on the same baseline.
+     */
+    public static final class Line {
+        private final float[][] quads;
+        private final float minX;
+        private final float minY;
+        private final float maxX;
+        private final float maxY;
+
+        private Line(List<float[]> quads) {
+            this.quads = quads.toArray(new float[0][]);
+            float minX = Float.MAX_VALUE;
+            float minY = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE;
+            float maxY = -Float.MAX_VALUE;
+            for (float[] quad : this.quads) {
+                minX = Math.min(minX, quad[0]);
+                minY = Math.min(minY, quad[1]);
+                maxX = Math.max(maxX, quad[2]);
+                maxY = Math.max(maxY, quad[3]);
+            }
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        public float getMinX() {
+            return minX;
+        }
+
+        public float getMinY() {
+            return minY;
+        }
+
+        public float getMaxX() {
+            return maxX;
+        }
+
+        public float getMaxY() {
+            return maxY;
+        }
+
+        /**
+         * Number of quads merged into this line.
+         */
+        public int getQuadCount() {
+            return quads.length;
+        }
+
+        /**
+         * Bounds of one merged quad as {minX, minY, maxX, maxY}, left to right.
+         */
+        public float[] getQuad(int index) {
+            return quads[index];
+        }
+
+        public PDRectangle toRectangle() {
+            return new PDRectangle(minX, minY, maxX - minX, maxY - minY);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%.1f,%.1f,%.1f,%.1f] (%d quads)", minX, minY, maxX, maxY, quads.length);
+        }
+    }
+
+    /**
+     * Axis-aligned bounds {minX, minY, maxX, maxY} of every complete quad, in annotation order.
+     */
+    public static float[][] bounds(float[] quadPoints) {
+        int count = quadPoints != null ? quadPoints.length / 8 : 0;
+        float[][] bounds = new float[count][];
+        for (int q = 0; q < count; q++) {
+            int i = q * 8;
+            bounds[q] = new float[] {
+                Math.min(Math.min(quadPoints[i], quadPoints[i + 2]), Math.min(quadPoints[i + 4], quadPoints[i + 6])),
+                Math.min(Math.min(quadPoints[i + 1], quadPoints[i + 3]), Math.min(quadPoints[i + 5], quadPoints[i + 7])),
+                Math.max(Math.max(quadPoints[i], quadPoints[i + 2]), Math.max(quadPoints[i + 4], quadPoints[i + 6])),
+                Math.max(Math.max(quadPoints[i + 1], quadPoints[i + 3]), Math.max(quadPoints[i + 5], quadPoints[i + 7]))
+            };
+        }
+        return bounds;
+    }
+
+    /**
+     * Merges the quads into lines, top to bottom and left to right. Quads on the same baseline that are further
+     * apart than a line height (e.g. in two columns) stay separate lines. Returns an empty list without quads.
+     */
+    public static List<Line> lines(float[] quadPoints) {
+        float[][] quads = bounds(quadPoints);
+        List<Line> lines = new ArrayList<>();
+        if (quads.length == 0) {
+            return lines;
+        }
+
+        // Rows: quads sorted by top edge, grouped while they overlap the row's first quad vertically
+        float[][] sorted = quads.clone();
+        Arrays.sort(sorted, (a, b) -> Float.compare(b[3], a[3]));
+        List<float[]> row = new ArrayList<>();
+        for (float[] quad : sorted) {
+            if (!row.isEmpty() && !sameLine(row.get(0), quad)) {
+                splitRow(row, lines);
+                row = new ArrayList<>();
+            }
+            row.add(quad);
+        }
+        splitRow(row, lines);
+        return lines;
+    }
+
+    private static boolean sameLine(float[] a, float[] b) {
+        float overlap = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+        float height = Math.min(a[3] - a[1], b[3] - b[1]);
+        return height <= 0 ? a[1] == b[1] : overlap >= SAME_LINE_OVERLAP * height;
+    }
+
+    private static void splitRow(List<float[]> row, List<Line> lines) {
+        row.sort(Comparator.comparingDouble(quad -> quad[0]));
+        List<float[]> line = new ArrayList<>();
+        float lineMaxX = 0;
+        for (float[] quad : row) {
+            float height = quad[3] - quad[1];
+            if (!line.isEmpty() && quad[0] - lineMaxX > MAX_GAP * height) {
+                lines.add(new Line(line));
+                line = new ArrayList<>();
+            }
+            lineMaxX = line.isEmpty() ? quad[2] : Math.max(lineMaxX, quad[2]);
+            line.add(quad);
+        }
+        lines.add(new Line(line));
+    }
+}
@@ -0,0 +1,95 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Collects the glyphs whose centers fall inside the highlight's quad points
+ * (or its rectangle when the annotation has no quad points). Quads are grouped into
+ * lines by {@link QuadGeometry}, so the page's glyphs are scanned once per line.
+ */
+public class QuadPointTextStrategy implements HighlightExtractionStrategy {
+    
+    private static final float TOLERANCE = 2.0f; // Tolerance for coordinate matching
+    
+    @Override
+    public String getName() {
+        return "quad-point-text";
+    }
+    
+    @Override
+    public String extractText(PDAnnotationTextMarkup markup, PageContext page) throws IOException {
+        PageGlyphs glyphs = page.getGlyphs();
+        
+        float[] quadPoints = markup.getQuadPoints();
+        if (quadPoints == null || quadPoints.length < 8) {
+            PDRectangle rect = markup.getRectangle();
+            return textInRectangle(glyphs, rect.getLowerLeftX(), rect.getLowerLeftY(),
+                                   rect.getUpperRightX(), rect.getUpperRightY());
+        }
+        
+        StringBuilder extractedText = new StringBuilder();
+        
+        for (QuadGeometry.Line line : QuadGeometry.lines(quadPoints)) {
+            // One pass over the page per line; each quad of the line then only checks the line's glyphs
+            int[] candidates = glyphsInRectangle(glyphs, line.getMinX(), line.getMinY(), line.getMaxX(), line.getMaxY());
+            for (int q = 0; q < line.getQuadCount(); q++) {
+                float[] quad = line.getQuad(q);
+                String rectText = textInRectangle(glyphs, candidates, quad[0], quad[1], quad[2], quad[3]).trim();
+                if (!rectText.isEmpty()) {
+                    if (extractedText.length() > 0) {
+                        extractedText.append(" ");
+                    }
+                    extractedText.append(rectText);
+                }
+            }
+        }
+        
+        return extractedText.toString();
+    }
+    
+    private String textInRectangle(PageGlyphs glyphs, float minX, float minY, float maxX, float maxY) {
+        return textInRectangle(glyphs, glyphsInRectangle(glyphs, minX, minY, maxX, maxY), minX, minY, maxX, maxY);
+    }
+    
+    /**
+     * Indexes of the glyphs whose centers lie in the rectangle, in page reading order.
+     */
+    private static int[] glyphsInRectangle(PageGlyphs glyphs, float minX, float minY, float maxX, float maxY) {
+        int[] matches = new int[16];
+        int count = 0;
+        
+        for (int i = 0; i < glyphs.size(); i++) {
+            if (contains(glyphs, i, minX, minY, maxX, maxY)) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = i;
+            }
+        }
+        
+        return Arrays.copyOf(matches, count);
+    }
+    
+    private static String textInRectangle(PageGlyphs glyphs, int[] candidates, float minX, float minY, float maxX, float maxY) {
+        StringBuilder text = new StringBuilder();
+        
+        for (int i : candidates) {
+            if (contains(glyphs, i, minX, minY, maxX, maxY)) {
+                glyphs.appendUnicode(i, text);
+            }
+        }
+        
+        return text.toString();
+    }
+    
+    private static boolean contains(PageGlyphs glyphs, int i, float minX, float minY, float maxX, float maxY) {
+        float centerX = glyphs.getCenterX(i);
+        float centerY = glyphs.getCenterY(i);
+        return centerX >= minX - TOLERANCE && centerX <= maxX + TOLERANCE &&
+               centerY >= minY - TOLERANCE && centerY <= maxY + TOLERANCE;
+    }
+}
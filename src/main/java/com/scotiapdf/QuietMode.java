@@ -0,0 +1,78 @@
+package com.scotiapdf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Quiet mode of the command line tools: only warnings, errors and the final result are printed.
+ * It is switched on with {@value #OPTION} or {@code -D}{@value #PROPERTY}{@code =true}.
+ *
+ * slf4j-simple reads its default level once, when the first logger is created, so quiet mode has to be
+ * decided before that. The command line tools call {@link #init} from a static initializer placed before
+ * their logger field; the launcher initializes the main class first, so that runs before any logger in this
+ * code exists, whatever classes are initialized afterwards. {@link #apply} then removes the option from the
+ * arguments in {@code main}.
+ */
+public final class QuietMode {
+
+    public static final String OPTION = "--quiet";
+    public static final String PROPERTY = "highlight.quiet";
+
+    private static final String LOG_LEVEL_PROPERTY = "org.slf4j.simpleLogger.defaultLogLevel";
+
+    private static volatile boolean enabled = false;
+
+    private QuietMode() {
+    }
+
+    /**
+     * Enables quiet mode if the JVM was launched with {@value #OPTION} or the system property is set.
+     */
+    public static void init() {
+        if (Boolean.getBoolean(PROPERTY) || launchedWith(OPTION)) {
+            enable();
+        }
+    }
+
+    /**
+     * Whether the option is among the arguments the JVM was launched with, which are only passed to
+     * {@code main} itself; read from the launcher's {@code sun.java.command} property.
+     */
+    public static boolean launchedWith(String option) {
+        String command = System.getProperty("sun.java.command", "");
+        return Arrays.asList(command.trim().split("\\s+")).contains(option);
+    }
+
+    /**
+     * Removes {@value #OPTION} from the arguments and enables quiet mode if it was given or the system
+     * property is set.
+     */
+    public static String[] apply(String[] args) {
+        List<String> remaining = new ArrayList<>();
+        boolean quiet = Boolean.getBoolean(PROPERTY);
+        for (String arg : args) {
+            if (OPTION.equals(arg)) {
+                quiet = true;
+            } else {
+                remaining.add(arg);
+            }
+        }
+        if (quiet) {
+            enable();
+        }
+        return remaining.toArray(new String[0]);
+    }
+
+    /**
+     * Raises the log level to WARN for loggers created from now on.
+     */
+    public static void enable() {
+        enabled = true;
+        System.setProperty(LOG_LEVEL_PROPERTY, "warn");
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+}
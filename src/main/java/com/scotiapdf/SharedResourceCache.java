@@ -0,0 +1,282 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.DefaultResourceCache;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.ResourceCache;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cross-document cache of parsed fonts and image XObjects, plugged into PDFBox through its {@link ResourceCache}
+ * hook. Resources are keyed by the {@link PageFingerprint} of their dictionary and data, so the same embedded font
+ * or logo in many documents is parsed, and an image decoded, once instead of once per document.
+ *
+ * PDFBox fonts and images fill unsynchronized lookup tables as they are used, so parsed resources are shared
+ * between the documents one thread processes rather than between threads: with a fixed worker pool that is once
+ * per worker. Entries are held through soft references in a bounded LRU, so the garbage collector can drop them
+ * under memory pressure. Disable the cache with {@code -D}{@value #PROPERTY}{@code =false}.
+ */
+public final class SharedResourceCache {
+
+    public static final String PROPERTY = "highlight.sharedResources";
+
+    private static final SharedResourceCache SHARED = new SharedResourceCache(256, 32, 1_000_000);
+
+    private static final Set<COSName> DEVICE_COLOR_SPACES = Set.of(
+        COSName.DEVICEGRAY, COSName.DEVICERGB, COSName.DEVICECMYK, COSName.G, COSName.RGB, COSName.CMYK);
+
+    private final int maxFonts;
+    private final int maxImages;
+    private final long maxImagePixels;
+    private final ThreadLocal<Store> stores;
+    private final LongAdder fontHits = new LongAdder();
+    private final LongAdder fontMisses = new LongAdder();
+    private final LongAdder imageHits = new LongAdder();
+    private final LongAdder imageMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SharedResourceCache(int maxFonts, int maxImages, long maxImagePixels) {
+        this.maxFonts = maxFonts;
+        this.maxImages = maxImages;
+        this.maxImagePixels = maxImagePixels;
+        this.stores = ThreadLocal.withInitial(Store::new);
+    }
+
+    /**
+     * The cache installed into every document loaded through {@link DocumentLoader}.
+     */
+    public static SharedResourceCache shared() {
+        return SHARED;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(PROPERTY, "true"));
+    }
+
+    /**
+     * Makes the document look up its fonts and images in this cache. Must be called before the first page is read.
+     * Installing again drops what the document has cached so far, which is how a {@link PageWindow} releases it.
+     */
+    public void install(PDDocument document) {
+        document.setResourceCache(isEnabled() ? new DocumentCache() : new DefaultResourceCache());
+    }
+
+    public long getHits() {
+        return fontHits.sum() + imageHits.sum();
+    }
+
+    public long getMisses() {
+        return fontMisses.sum() + imageMisses.sum();
+    }
+
+    @Override
+    public String toString() {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return String.format("fonts %d/%d, images %d/%d hits (%.1f%% hit rate) evictions=%d",
+            fontHits.sum(), fontHits.sum() + fontMisses.sum(), imageHits.sum(), imageHits.sum() + imageMisses.sum(),
+            lookups > 0 ? hits * 100.0 / lookups : 0.0, evictions.sum());
+    }
+
+    /**
+     * Resources parsed on one thread, least recently used first.
+     */
+    private final class Store {
+        final Map<String, SoftReference<PDFont>> fonts = lru(maxFonts);
+        final Map<String, SoftReference<PDImageXObject>> images = lru(maxImages);
+
+        private <T> Map<String, SoftReference<T>> lru(int capacity) {
+            return new LinkedHashMap<String, SoftReference<T>>(capacity, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SoftReference<T>> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    /**
+     * The {@link ResourceCache} of one document. Lookups first hit the document's own cache, then the shared
+     * store of the thread that loaded the document; other threads get the plain per-document behaviour.
+     */
+    private final class DocumentCache extends DefaultResourceCache {
+
+        private final Thread owner = Thread.currentThread();
+        private final Map<COSObject, String> keys = new HashMap<>();
+
+        @Override
+        public PDFont getFont(COSObject indirect) throws IOException {
+            PDFont font = super.getFont(indirect);
+            if (font != null || Thread.currentThread() != owner) {
+                return font;
+            }
+            String key = fontKey(indirect);
+            if (key == null) {
+                return null;
+            }
+            SoftReference<PDFont> shared = stores.get().fonts.get(key);
+            font = shared != null ? shared.get() : null;
+            if (font != null) {
+                fontHits.increment();
+                super.put(indirect, font);
+            } else {
+                fontMisses.increment();
+            }
+            return font;
+        }
+
+        @Override
+        public void put(COSObject indirect, PDFont font) throws IOException {
+            super.put(indirect, font);
+            if (Thread.currentThread() != owner) {
+                return;
+            }
+            String key = fontKey(indirect);
+            if (key != null) {
+                stores.get().fonts.put(key, new SoftReference<>(font));
+            }
+        }
+
+        /**
+         * Images come back as detached in-memory copies, so a shared image outlives the document it was read from.
+         */
+        @Override
+        public PDXObject getXObject(COSObject indirect) throws IOException {
+            PDXObject xobject = super.getXObject(indirect);
+            if (xobject != null || Thread.currentThread() != owner) {
+                return xobject;
+            }
+            String key = imageKey(indirect);
+            if (key == null) {
+                return null;
+            }
+            Map<String, SoftReference<PDImageXObject>> images = stores.get().images;
+            SoftReference<PDImageXObject> shared = images.get(key);
+            PDImageXObject image = shared != null ? shared.get() : null;
+            if (image != null) {
+                imageHits.increment();
+            } else {
+                imageMisses.increment();
+                COSStream copy = (COSStream) detach(indirect.getObject(), new IdentityHashMap<>());
+                image = new PDImageXObject(new PDStream(copy), null);
+                images.put(key, new SoftReference<>(image));
+            }
+            super.put(indirect, image);
+            return image;
+        }
+
+        /**
+         * Type 3 fonts draw their glyphs from content streams read at drawing time, which would fail once their
+         * document is closed; other font programs are read into memory when the font is parsed.
+         */
+        private String fontKey(COSObject indirect) {
+            COSBase font = indirect.getObject();
+            if (!(font instanceof COSDictionary) || COSName.TYPE3.equals(((COSDictionary) font).getCOSName(COSName.SUBTYPE))) {
+                return null;
+            }
+            return key(indirect);
+        }
+
+        /**
+         * Only small images are shared: large ones are usually page scans seen once, and a shared image keeps its
+         * decoded pixels. The limit is on pixels because a compressed scan can be smaller than a logo. Images with
+         * a named color space other than a device one depend on the page resources, which the shared copy lacks.
+         */
+        private String imageKey(COSObject indirect) {
+            COSBase object = indirect.getObject();
+            if (!(object instanceof COSStream)) {
+                return null;
+            }
+            COSStream stream = (COSStream) object;
+            long pixels = (long) stream.getInt(COSName.WIDTH, COSName.W, 0) * stream.getInt(COSName.HEIGHT, COSName.H, 0);
+            if (!COSName.IMAGE.equals(stream.getCOSName(COSName.SUBTYPE)) || pixels > maxImagePixels) {
+                return null;
+            }
+            COSBase colorSpace = stream.getDictionaryObject(COSName.COLORSPACE, COSName.CS);
+            if (colorSpace instanceof COSName && !DEVICE_COLOR_SPACES.contains(colorSpace)) {
+                return null;
+            }
+            return key(indirect);
+        }
+
+        private String key(COSObject indirect) {
+            String key = keys.get(indirect);
+            if (key == null) {
+                try {
+                    key = PageFingerprint.of(indirect.getObject());
+                } catch (IOException e) {
+                    // Unreadable data: let PDFBox parse it per document and report the error itself
+                    return null;
+                }
+                keys.put(indirect, key);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Deep copy of an object whose streams are held in memory instead of in the document's file.
+     */
+    private static COSBase detach(COSBase object, Map<COSBase, COSBase> copies) throws IOException {
+        if (object instanceof COSObject) {
+            object = ((COSObject) object).getObject();
+        }
+        if (!(object instanceof COSDictionary) && !(object instanceof COSArray)) {
+            // Names, numbers, strings and null are immutable here
+            return object;
+        }
+        COSBase done = copies.get(object);
+        if (done != null) {
+            return done;
+        }
+
+        if (object instanceof COSArray) {
+            COSArray array = (COSArray) object;
+            COSArray copy = new COSArray();
+            copies.put(object, copy);
+            for (int i = 0; i < array.size(); i++) {
+                copy.add(detach(array.get(i), copies));
+            }
+            return copy;
+        }
+
+        COSDictionary dictionary = (COSDictionary) object;
+        COSDictionary copy = dictionary instanceof COSStream ? new COSStream() : new COSDictionary();
+        copies.put(object, copy);
+        for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+            if (!COSName.LENGTH.equals(entry.getKey())) {
+                copy.setItem(entry.getKey(), detach(entry.getValue(), copies));
+            }
+        }
+        if (dictionary instanceof COSStream) {
+            try (InputStream in = ((COSStream) dictionary).createRawInputStream();
+                 OutputStream out = ((COSStream) copy).createRawOutputStream()) {
+                in.transferTo(out);
+            }
+        }
+        return copy;
+    }
+}
@@ -9,10 +9,11 @@ import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.text.PDFTextStripperByArea;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-import java.awt.Color;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.awt.Rectangle;
 import java.io.File;
 import java.io.IOException;
@@ -21,9 +22,20 @@ import java.util.List;
 
 public class SimplePdfHighlightExtractor {
     
+    static {
+        QuietMode.init();
+    }
+    
+    private static final Logger LOG = LoggerFactory.getLogger(SimplePdfHighlightExtractor.class);
+    
+    static final String EXTRACTION_METHOD = "Simple area-based extraction (no OCR)";
+    
+    private HighlightResultWriter resultWriter;
+    
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java SimplePdfHighlightExtractor <pdf-file-path>");
+        args = QuietMode.apply(args);
+        if (args.length != 1 && !(args.length == 3 && HighlightResultWriter.isOutputOption(args[1]))) {
+            System.out.println("Usage: java SimplePdfHighlightExtractor <pdf-file-path> [--quiet] [--jsonl <output.jsonl[.gz]> | --archive <output.hla>]");
             System.exit(1);
         }
         
@@ -31,38 +43,52 @@ public class SimplePdfHighlightExtractor {
         SimplePdfHighlightExtractor extractor = new SimplePdfHighlightExtractor();
         
         try {
-            extractor.extractHighlightsSimple(pdfPath);
+            if (args.length == 3) {
+                try (HighlightResultWriter writer = HighlightResultWriter.open(args[1], new File(args[2]), new File(pdfPath).getName(), EXTRACTION_METHOD)) {
+                    extractor.setResultWriter(writer);
+                    extractor.extractHighlightsSimple(pdfPath);
+                }
+            } else {
+                extractor.extractHighlightsSimple(pdfPath);
+            }
         } catch (Exception e) {
-            System.err.println("Error processing PDF: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error processing PDF {}", pdfPath, e);
         }
     }
     
+    public void setResultWriter(HighlightResultWriter resultWriter) {
+        this.resultWriter = resultWriter;
+    }
+    
     public void extractHighlightsSimple(String pdfPath) throws IOException {
         List<HighlightedText> highlights = new ArrayList<>();
         
-        try (PDDocument document = PDDocument.load(new File(pdfPath))) {
-            System.out.println("=".repeat(60));
-            System.out.println("SIMPLE PDF HIGHLIGHT EXTRACTION");
-            System.out.println("=".repeat(60));
-            System.out.println("File: " + pdfPath);
-            System.out.println("Total pages: " + document.getNumberOfPages());
-            System.out.println("Method: Area-based text extraction (no OCR required)");
-            System.out.println();
+        StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(pdfPath);
+        try (PDDocument document = DocumentLoader.load(new File(pdfPath).length(), () -> PDDocument.load(new File(pdfPath)))) {
+            LOG.info("Area-based extraction of {} ({} pages)", pdfPath, document.getNumberOfPages());
             
+            PageWindow pageWindow = PageWindow.fromSystemProperties();
             for (int pageNum = 0; pageNum < document.getNumberOfPages(); pageNum++) {
+                pageWindow.beforePage(document, pageNum, 0);
                 PDPage page = document.getPage(pageNum);
-                System.out.println("Processing page " + (pageNum + 1) + "...");
                 
                 // Extract highlights from this page
+                PageExtractionEvent pageEvent = PageExtractionEvent.start();
                 List<HighlightedText> pageHighlights = extractHighlightsFromPageSimple(document, page, pageNum + 1);
+                pageEvent.finish(pageNum + 1, "simple", pageHighlights.size());
                 highlights.addAll(pageHighlights);
+
+                if (resultWriter != null) {
+                    resultWriter.writePage(pageHighlights);
+                }
                 
-                System.out.println("  Found " + pageHighlights.size() + " highlights on page " + (pageNum + 1));
+                LOG.debug("Found {} highlights on page {}", pageHighlights.size(), pageNum + 1);
             }
             
             // Output results
             outputResults(highlights);
+        } finally {
+            timer.close();
         }
     }
     
@@ -70,13 +96,13 @@ public class SimplePdfHighlightExtractor {
         List<HighlightedText> highlights = new ArrayList<>();
         
         // Get all annotations on the page
-        List<PDAnnotation> annotations = page.getAnnotations();
+        List<PDAnnotation> annotations = StageMetrics.shared().time(ExtractionStage.ANNOTATIONS, page::getAnnotations);
         
         // Get the full text of the page for reference
         PDFTextStripper textStripper = new PDFTextStripper();
         textStripper.setStartPage(pageNumber);
         textStripper.setEndPage(pageNumber);
-        String pageText = textStripper.getText(document);
+        String pageText = StageMetrics.shared().time(ExtractionStage.TEXT, () -> textStripper.getText(document));
         
         for (PDAnnotation annotation : annotations) {
             if (annotation instanceof PDAnnotationTextMarkup) {
@@ -118,8 +144,7 @@ public class SimplePdfHighlightExtractor {
                             markup.getRectangle()
                         ));
                         
-                        System.out.println("    " + colorName + ": \"" + 
-                                         (extractedText.length() > 60 ? extractedText.substring(0, 60) + "..." : extractedText) + "\"");
+                        LOG.debug("  {}: \"{}\"", colorName, extractedText);
                     }
                 }
             }
@@ -151,7 +176,7 @@ public class SimplePdfHighlightExtractor {
             return extractedText != null ? extractedText.trim() : null;
             
         } catch (Exception e) {
-            System.out.println("      Area extraction failed: " + e.getMessage());
+            LOG.warn("Area extraction failed: {}", e.getMessage());
             return null;
         }
     }
@@ -171,49 +196,14 @@ public class SimplePdfHighlightExtractor {
                 }
             }
         } catch (Exception e) {
-            System.out.println("      Quad point extraction failed: " + e.getMessage());
+            LOG.warn("Quad point extraction failed: {}", e.getMessage());
         }
         return null;
     }
     
     private String getColorName(PDAnnotationTextMarkup markup) {
-        try {
-            if (markup.getColor() == null) return null;
-            
-            float[] colorComponents = markup.getColor().getComponents();
-            if (colorComponents.length < 3) return null;
-            
-            Color color = new Color(colorComponents[0], colorComponents[1], colorComponents[2]);
-            return identifyTargetColor(color);
-            
-        } catch (Exception e) {
-            return null;
-        }
-    }
-    
-    private String identifyTargetColor(Color color) {
-        if (color == null) return null;
-        
-        int r = color.getRed();
-        int g = color.getGreen();
-        int b = color.getBlue();
-        
-        // Green-ish colors (including light green like RGB(197, 251, 114))
-        if (g > 200 && g > r && g > b) {
-            return "GREEN";
-        }
-        
-        // Yellow-ish colors (including orange-yellow like RGB(255, 193, 0))
-        if (r > 200 && g > 150 && b < 100) {
-            return "YELLOW";
-        }
-        
-        // Purple-ish colors (including RGB(150, 67, 252))
-        if (b > 200 && r > 100 && g < 150) {
-            return "PURPLE";
-        }
-        
-        return null;
+        HighlightColor color = HighlightColor.fromAnnotation(markup);
+        return color != null ? color.name() : null;
     }
     
     private void outputResults(List<HighlightedText> highlights) {
@@ -255,32 +245,15 @@ public class SimplePdfHighlightExtractor {
         }
         
         // Save to JSON file
-        saveToJsonFile(highlights, groupedHighlights);
+        saveToJsonFile(highlights);
     }
     
-    private void saveToJsonFile(List<HighlightedText> highlights, Map<String, List<HighlightedText>> groupedHighlights) {
+    private void saveToJsonFile(List<HighlightedText> highlights) {
+        long start = System.nanoTime();
         try {
             ObjectMapper mapper = new ObjectMapper();
-            ObjectNode root = mapper.createObjectNode();
-            
-            root.put("totalHighlights", highlights.size());
-            root.put("extractionDate", new Date().toString());
-            root.put("extractionMethod", "Simple area-based extraction (no OCR)");
-            
-            ObjectNode colorGroups = mapper.createObjectNode();
-            for (Map.Entry<String, List<HighlightedText>> entry : groupedHighlights.entrySet()) {
-                ArrayNode colorArray = mapper.createArrayNode();
-                for (HighlightedText highlight : entry.getValue()) {
-                    ObjectNode highlightNode = mapper.createObjectNode();
-                    highlightNode.put("text", highlight.getText());
-                    highlightNode.put("page", highlight.getPageNumber());
-                    highlightNode.put("coordinates", highlight.getCoordinates().toString());
-                    colorArray.add(highlightNode);
-                }
-                colorGroups.set(entry.getKey().toLowerCase(), colorArray);
-            }
-            
-            root.set("highlightsByColor", colorGroups);
+            ObjectNode root = HighlightJsonReport.build(mapper, highlights, EXTRACTION_METHOD);
+            HighlightJsonReport.putResources(mapper, root, StageMetrics.shared().currentResources());
             
             // Save to file
             String outputFileName = "simple-highlights-extraction.json";
@@ -292,7 +265,9 @@ public class SimplePdfHighlightExtractor {
             }
             
         } catch (Exception e) {
-            System.out.println("Error saving JSON file: " + e.getMessage());
+            LOG.error("Error saving JSON file", e);
+        } finally {
+            StageMetrics.shared().record(ExtractionStage.SERIALIZE, start);
         }
     }
 }
@@ -0,0 +1,24 @@
+package com.scotiapdf;
+
+/**
+ * JMX view of one {@link StageMetrics} histogram. Percentiles are bucket upper bounds, so they are
+ * accurate to the bucket resolution.
+ */
+public interface StageHistogramMXBean {
+
+    long getCount();
+
+    double getTotalSeconds();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    void reset();
+}
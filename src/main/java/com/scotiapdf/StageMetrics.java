@@ -0,0 +1,492 @@
+package com.scotiapdf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timing histograms for each {@link ExtractionStage}, kept at two granularities: every timed
+ * call (one page render, one OCR call), and the total a document spent in each stage. Documents are
+ * delimited with {@link #startDocument(String)}; stage time recorded on that thread is added to the document.
+ * Work handed to other threads (split page ranges) counts in the per-call histograms only. The document id of
+ * the active scope is also what the JFR events report.
+ *
+ * The histograms are registered as MXBeans under {@code com.scotiapdf:type=StageMetrics} and can be dumped
+ * in the Prometheus text format. When the {@value #METRICS_FILE_PROPERTY} system property names a file, the
+ * dump is written there when the JVM exits, which works for every extractor's command line.
+ */
+public final class StageMetrics {
+
+    public static final String METRICS_FILE_PROPERTY = "highlight.metricsFile";
+
+    private static final Logger LOG = LoggerFactory.getLogger(StageMetrics.class);
+
+    // Upper bounds in seconds, from sub-millisecond annotation scans to minute-long OCR of large pages
+    private static final double[] BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    private static final ExtractionStage[] STAGES = ExtractionStage.values();
+    private static final StageMetrics SHARED = createShared();
+
+    private final Histogram[] calls = new Histogram[STAGES.length];
+    private final Histogram[] documentStages = new Histogram[STAGES.length];
+    private final Histogram documents = new Histogram();
+    private final ThreadLocal<DocumentTimer> currentDocument = new ThreadLocal<>();
+    private volatile MemoryBudget memoryBudget;
+
+    StageMetrics() {
+        for (int i = 0; i < STAGES.length; i++) {
+            calls[i] = new Histogram();
+            documentStages[i] = new Histogram();
+        }
+    }
+
+    /**
+     * The metrics recorded by all extractors.
+     */
+    public static StageMetrics shared() {
+        return SHARED;
+    }
+
+    private static StageMetrics createShared() {
+        StageMetrics metrics = new StageMetrics();
+        metrics.registerMBeans();
+
+        String metricsFile = System.getProperty(METRICS_FILE_PROPERTY);
+        if (metricsFile != null && !metricsFile.isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    metrics.writePrometheusFile(Paths.get(metricsFile));
+                } catch (IOException e) {
+                    LOG.warn("Could not write metrics to {}: {}", metricsFile, e.getMessage());
+                }
+            }, "stage-metrics-dump"));
+        }
+        return metrics;
+    }
+
+    private void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (ExtractionStage stage : STAGES) {
+                server.registerMBean(calls[stage.ordinal()], objectName("call", stage.label()));
+                server.registerMBean(documentStages[stage.ordinal()], objectName("document", stage.label()));
+            }
+            server.registerMBean(documents, objectName("document", "total"));
+        } catch (JMException | SecurityException e) {
+            // Metrics still work without JMX, e.g. when a second copy of the class is loaded
+            LOG.warn("Stage metrics not registered with JMX: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes the memory budget of the running batch under {@code com.scotiapdf:type=MemoryBudget} and in the
+     * Prometheus output, replacing the previous one.
+     */
+    public synchronized void setMemoryBudget(MemoryBudget budget) {
+        memoryBudget = budget;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.scotiapdf:type=MemoryBudget");
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            if (budget != null) {
+                server.registerMBean(budget, name);
+            }
+        } catch (JMException | SecurityException e) {
+            LOG.warn("Memory budget not registered with JMX: {}", e.getMessage());
+        }
+    }
+
+    private static ObjectName objectName(String scope, String stage) throws JMException {
+        return new ObjectName("com.scotiapdf:type=StageMetrics,scope=" + scope + ",stage=" + stage);
+    }
+
+    /**
+     * Work that produces a value and may fail with an IOException, for {@link #time}.
+     */
+    public interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+    /**
+     * Runs the work and records its duration, also when it fails.
+     */
+    public <T> T time(ExtractionStage stage, IOSupplier<T> work) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, start);
+        }
+    }
+
+    /**
+     * Records the time since {@code startNanos} (from {@link System#nanoTime()}) for the stage.
+     */
+    public void record(ExtractionStage stage, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        calls[stage.ordinal()].observe(elapsed);
+        DocumentTimer document = currentDocument.get();
+        if (document != null) {
+            document.stageNanos[stage.ordinal()] += elapsed;
+            document.resources.recordCall(stage);
+        }
+    }
+
+    /**
+     * Bills bytes read from the input to the document active on this thread, if any.
+     */
+    public void addBytesRead(long bytes) {
+        DocumentTimer document = currentDocument.get();
+        if (document != null) {
+            document.resources.addBytesRead(bytes);
+        }
+    }
+
+    /**
+     * Lists abandoned work under the document active on this thread, if any.
+     */
+    public void recordTimeout(TimedOutWork work) {
+        DocumentTimer document = currentDocument.get();
+        if (document != null) {
+            document.resources.addTimeout(work);
+        }
+    }
+
+    /**
+     * Starts timing a document on the current thread; close the timer when the document is done. If a
+     * document is already being timed on this thread, the returned timer joins it and closing it does nothing.
+     */
+    public DocumentTimer startDocument(String documentId) {
+        return startDocument(documentId, new DocumentResources());
+    }
+
+    /**
+     * Like {@link #startDocument(String)}, billing this thread's resource use to the given account.
+     */
+    public DocumentTimer startDocument(String documentId, DocumentResources resources) {
+        return start(documentId, resources, true);
+    }
+
+    /**
+     * Like {@link #startDocument(String)} for a page range of a document split over threads: the id is
+     * available to events and resource use is added to the document's account, but the stage times are not
+     * recorded as a whole document.
+     */
+    public DocumentTimer startDocumentPart(String documentId, DocumentResources resources) {
+        return start(documentId, resources, false);
+    }
+
+    private DocumentTimer start(String documentId, DocumentResources resources, boolean wholeDocument) {
+        DocumentTimer active = currentDocument.get();
+        if (active != null) {
+            return new DocumentTimer(active);
+        }
+        DocumentTimer timer = new DocumentTimer(documentId, resources, wholeDocument);
+        currentDocument.set(timer);
+        return timer;
+    }
+
+    /**
+     * Id of the document being processed on this thread, or null outside a document.
+     */
+    public String currentDocumentId() {
+        DocumentTimer active = currentDocument.get();
+        return active != null ? active.documentId : null;
+    }
+
+    /**
+     * Resources used so far by the document being processed on this thread, or null outside a document.
+     */
+    public DocumentResources currentResources() {
+        DocumentTimer active = currentDocument.get();
+        return active != null ? active.getResources() : null;
+    }
+
+    /**
+     * Time spent by one document in each stage, and the resources this thread used for it.
+     */
+    public final class DocumentTimer implements AutoCloseable {
+        private final String documentId;
+        private final DocumentResources resources;
+        private final long[] stageNanos;
+        private final long start;
+        private final DocumentTimer joined;
+        private final boolean wholeDocument;
+        private long cpuMark;
+        private long allocationMark;
+        private boolean closed = false;
+
+        private DocumentTimer(String documentId, DocumentResources resources, boolean wholeDocument) {
+            this.documentId = documentId;
+            this.resources = resources;
+            this.stageNanos = new long[STAGES.length];
+            this.start = System.nanoTime();
+            this.joined = null;
+            this.wholeDocument = wholeDocument;
+            this.cpuMark = DocumentResources.currentThreadCpuNanos();
+            this.allocationMark = DocumentResources.currentThreadAllocatedBytes();
+        }
+
+        private DocumentTimer(DocumentTimer active) {
+            this.documentId = active.documentId;
+            this.resources = active.resources;
+            this.stageNanos = active.stageNanos;
+            this.start = active.start;
+            this.joined = active;
+            this.wholeDocument = false;
+        }
+
+        public String getDocumentId() {
+            return documentId;
+        }
+
+        /**
+         * The document's resource account, including this thread's use up to now. Call it on the thread
+         * that started the timer.
+         */
+        public DocumentResources getResources() {
+            if (joined != null) {
+                return joined.getResources();
+            }
+            if (!closed) {
+                long cpu = DocumentResources.currentThreadCpuNanos();
+                long allocated = DocumentResources.currentThreadAllocatedBytes();
+                resources.addThreadUsage(cpu - cpuMark, allocated - allocationMark);
+                cpuMark = cpu;
+                allocationMark = allocated;
+                if (wholeDocument) {
+                    resources.setWallNanos(getElapsedNanos());
+                }
+            }
+            return resources;
+        }
+
+        public long getStageNanos(ExtractionStage stage) {
+            return stageNanos[stage.ordinal()];
+        }
+
+        public long getElapsedNanos() {
+            return System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() {
+            if (joined != null || closed) {
+                return;
+            }
+            getResources();
+            closed = true;
+            currentDocument.remove();
+            if (!wholeDocument) {
+                return;
+            }
+            for (int i = 0; i < STAGES.length; i++) {
+                if (stageNanos[i] > 0) {
+                    documentStages[i].observe(stageNanos[i]);
+                }
+            }
+            documents.observe(getElapsedNanos());
+        }
+    }
+
+    public StageHistogramMXBean getCallHistogram(ExtractionStage stage) {
+        return calls[stage.ordinal()];
+    }
+
+    public StageHistogramMXBean getDocumentHistogram(ExtractionStage stage) {
+        return documentStages[stage.ordinal()];
+    }
+
+    public void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            calls[i].reset();
+            documentStages[i].reset();
+        }
+        documents.reset();
+    }
+
+    public void printReport() {
+        System.out.println("STAGE TIMES (per call, and per document in that stage):");
+        System.out.printf("  %-12s %9s %10s %9s %9s %9s %12s%n", "stage", "calls", "total s", "p50 ms", "p99 ms", "max ms", "doc p99 ms");
+        for (ExtractionStage stage : STAGES) {
+            Histogram histogram = calls[stage.ordinal()];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "  %-12s %9d %10.2f %9.1f %9.1f %9.1f %12.1f%n", stage.label(), histogram.getCount(),
+                histogram.getTotalSeconds(), histogram.getP50Millis(), histogram.getP99Millis(), histogram.getMaxMillis(),
+                documentStages[stage.ordinal()].getP99Millis());
+        }
+    }
+
+    /**
+     * Writes all histograms in the Prometheus text exposition format (version 0.0.4).
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        out.write("# HELP highlight_stage_duration_seconds Duration of one timed call in an extraction stage.\n");
+        out.write("# TYPE highlight_stage_duration_seconds histogram\n");
+        for (ExtractionStage stage : STAGES) {
+            calls[stage.ordinal()].writePrometheus(out, "highlight_stage_duration_seconds", "stage=\"" + stage.label() + "\"");
+        }
+        out.write("# HELP highlight_document_stage_seconds Time one document spent in an extraction stage.\n");
+        out.write("# TYPE highlight_document_stage_seconds histogram\n");
+        for (ExtractionStage stage : STAGES) {
+            documentStages[stage.ordinal()].writePrometheus(out, "highlight_document_stage_seconds", "stage=\"" + stage.label() + "\"");
+        }
+        out.write("# HELP highlight_document_duration_seconds Wall time to extract one document.\n");
+        out.write("# TYPE highlight_document_duration_seconds histogram\n");
+        documents.writePrometheus(out, "highlight_document_duration_seconds", "");
+
+        MemoryBudget budget = memoryBudget;
+        if (budget != null) {
+            writeGauge(out, "highlight_memory_budget_bytes", "Memory budget for concurrently processed documents.", budget.getTotalBytes());
+            writeGauge(out, "highlight_memory_reserved_bytes", "Estimated peak memory reserved by running documents.", budget.getReservedBytes());
+            writeGauge(out, "highlight_memory_peak_reserved_bytes", "Highest reserved amount so far.", budget.getPeakReservedBytes());
+            writeGauge(out, "highlight_memory_heap_used_bytes", "Heap in use by the JVM.", budget.getUsedHeapBytes());
+            writeGauge(out, "highlight_memory_waiting", "Documents waiting for memory to become available.", budget.getWaiting());
+            out.write("# HELP highlight_memory_waited_total Reservations that had to wait for memory.\n");
+            out.write("# TYPE highlight_memory_waited_total counter\n");
+            out.write("highlight_memory_waited_total " + budget.getWaitedCount() + "\n");
+        }
+    }
+
+    private static void writeGauge(Writer out, String name, String help, long value) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " gauge\n");
+        out.write(name + " " + value + "\n");
+    }
+
+    /**
+     * Writes the Prometheus dump to a file, replacing it atomically so scrapers never read a partial file.
+     */
+    public void writePrometheusFile(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writePrometheus(out);
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Fixed-bucket histogram of durations; lock-free, so timing does not serialize the worker threads.
+     */
+    private static final class Histogram implements StageHistogramMXBean {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void observe(long nanos) {
+            double seconds = nanos / 1e9;
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public double getTotalSeconds() {
+            return sumNanos.sum() / 1e9;
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0.0 : sumNanos.sum() / 1e6 / n;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return percentileMillis(50);
+        }
+
+        @Override
+        public double getP95Millis() {
+            return percentileMillis(95);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return percentileMillis(99);
+        }
+
+        /**
+         * Upper bound of the bucket holding the percentile, capped at the largest observed value.
+         */
+        private double percentileMillis(double percentile) {
+            long total = 0;
+            long[] snapshot = new long[buckets.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * total);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += snapshot[i];
+                if (cumulative >= rank) {
+                    return Math.min(BUCKETS[i] * 1000, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        @Override
+        public void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            sumNanos.reset();
+            maxNanos.set(0);
+        }
+
+        void writePrometheus(Writer out, String name, String labels) throws IOException {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += buckets.get(i);
+                out.write(name + "_bucket{" + prefix + "le=\"" + BUCKETS[i] + "\"} " + cumulative + "\n");
+            }
+            cumulative += buckets.get(BUCKETS.length);
+            out.write(name + "_bucket{" + prefix + "le=\"+Inf\"} " + cumulative + "\n");
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            out.write(name + "_sum" + suffix + " " + sumNanos.sum() / 1e9 + "\n");
+            out.write(name + "_count" + suffix + " " + cumulative + "\n");
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.scotiapdf;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Attempt, hit and timing counters for one extraction strategy. Safe to update from several threads.
+ */
+public class StrategyStats {
+    private final String name;
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    
+    public StrategyStats(String name) {
+        this.name = name;
+    }
+    
+    void record(long nanos, boolean hit, boolean error) {
+        attempts.increment();
+        totalNanos.add(nanos);
+        if (hit) hits.increment();
+        if (error) errors.increment();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public long getAttempts() {
+        return attempts.sum();
+    }
+    
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    public long getErrors() {
+        return errors.sum();
+    }
+    
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+    
+    public double getHitRate() {
+        long attempted = getAttempts();
+        return attempted == 0 ? 0.0 : (double) getHits() / attempted;
+    }
+    
+    public double getAverageMillis() {
+        long attempted = getAttempts();
+        return attempted == 0 ? 0.0 : getTotalNanos() / 1_000_000.0 / attempted;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%-18s attempts=%d hits=%d (%.1f%%) errors=%d avg=%.2fms total=%.1fms",
+                             name, getAttempts(), getHits(), getHitRate() * 100, getErrors(),
+                             getAverageMillis(), getTotalNanos() / 1_000_000.0);
+    }
+}
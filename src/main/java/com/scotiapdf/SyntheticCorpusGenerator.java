@@ -0,0 +1,485 @@
+package com.scotiapdf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationTextMarkup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a corpus of synthetic highlighted PDFs for load testing, together with a manifest.json
+ * that records the text under every target-color highlight. {@link LoadTestHarness} replays the
+ * corpus and checks extracted text against the manifest.
+ *
+ * Pages are letter size with lines of dictionary words in one of the standard 14 fonts. Highlights
+ * cover word spans of a line, or run over two lines with one quad per line. Scanned pages carry the
+ * same text as a JPEG image with no text layer, so only OCR can read their highlights. Distractor
+ * highlights in colors the extractors ignore are added on request.
+ */
+public class SyntheticCorpusGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyntheticCorpusGenerator.class);
+
+    static final String MANIFEST_FILE = "manifest.json";
+
+    private static final String[] WORDS = {
+        "account", "balance", "interest", "statement", "transfer", "mortgage", "rate", "payment",
+        "customer", "agreement", "terms", "conditions", "deposit", "credit", "limit", "annual",
+        "branch", "fee", "overdraft", "service", "monthly", "notice", "period", "holder", "card",
+        "loan", "principal", "schedule", "charge", "review", "signature", "effective", "date"
+    };
+    private static final float[][] DISTRACTOR_COLORS = {
+        {0.2f, 0.4f, 1.0f}, // blue
+        {1.0f, 0.2f, 0.2f}, // red
+        {0.6f, 0.6f, 0.6f}  // gray
+    };
+    private static final float MARGIN = 72;
+    private static final float SCAN_DPI = 150;
+
+    private final Random random;
+    private int minPages = 1;
+    private int maxPages = 10;
+    private int linesPerPage = 40;
+    private float fontSize = 10;
+    private List<String> fonts = Arrays.asList("helvetica", "times", "courier");
+    private double scannedRatio = 0.0;
+    private int highlightsPerPage = 4;
+    private List<HighlightColor> colors = Arrays.asList(HighlightColor.values());
+    private double multiLineRatio = 0.2;
+    private double distractorRatio = 0.1;
+
+    public SyntheticCorpusGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) {
+        Path outputDir = null;
+        int documents = 20;
+        long seed = 42;
+        List<String[]> settings = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--documents")) {
+                    documents = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--seed")) {
+                    seed = Long.parseLong(args[++i]);
+                } else if (args[i].startsWith("--")) {
+                    settings.add(new String[] {args[i], args[++i]});
+                } else if (outputDir == null) {
+                    outputDir = Paths.get(args[i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            outputDir = null;
+        }
+
+        SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator(seed);
+        try {
+            for (String[] setting : settings) {
+                generator.configure(setting[0], setting[1]);
+            }
+        } catch (RuntimeException e) {
+            outputDir = null;
+        }
+
+        if (outputDir == null || documents < 1) {
+            System.out.println("Usage: java SyntheticCorpusGenerator <output-dir> [--documents <n>] [--pages <min>-<max>] "
+                               + "[--lines <n>] [--font-size <pt>] [--fonts helvetica,times,courier] [--scanned-ratio <0-1>] "
+                               + "[--highlights <per page>] [--colors green,yellow,purple] [--multi-line-ratio <0-1>] "
+                               + "[--distractor-ratio <0-1>] [--seed <n>]");
+            System.exit(1);
+        }
+
+        try {
+            long start = System.nanoTime();
+            ObjectNode manifest = generator.generate(outputDir, documents);
+            System.out.printf("Generated %d documents (%d pages, %d highlights) in %s in %.1fs%n",
+                documents, manifest.path("totalPages").asInt(), manifest.path("totalHighlights").asInt(),
+                outputDir.toAbsolutePath(), (System.nanoTime() - start) / 1e9);
+        } catch (IOException e) {
+            LOG.error("Corpus generation failed", e);
+            System.exit(1);
+        }
+    }
+
+    private void configure(String option, String value) {
+        switch (option) {
+            case "--pages":
+                String[] range = value.split("-");
+                setPageRange(Integer.parseInt(range[0]), Integer.parseInt(range[range.length - 1]));
+                break;
+            case "--lines":
+                setLinesPerPage(Integer.parseInt(value));
+                break;
+            case "--font-size":
+                setFontSize(Float.parseFloat(value));
+                break;
+            case "--fonts":
+                setFonts(Arrays.asList(value.toLowerCase().split(",")));
+                break;
+            case "--scanned-ratio":
+                setScannedRatio(Double.parseDouble(value));
+                break;
+            case "--highlights":
+                setHighlightsPerPage(Integer.parseInt(value));
+                break;
+            case "--colors":
+                List<HighlightColor> parsed = new ArrayList<>();
+                for (String name : value.split(",")) {
+                    parsed.add(HighlightColor.fromName(name.trim()));
+                }
+                setColors(parsed);
+                break;
+            case "--multi-line-ratio":
+                setMultiLineRatio(Double.parseDouble(value));
+                break;
+            case "--distractor-ratio":
+                setDistractorRatio(Double.parseDouble(value));
+                break;
+            default:
+                throw new IllegalArgumentException(option);
+        }
+    }
+
+    public void setPageRange(int minPages, int maxPages) {
+        if (minPages < 1 || maxPages < minPages) {
+            throw new IllegalArgumentException("Invalid page range " + minPages + "-" + maxPages);
+        }
+        this.minPages = minPages;
+        this.maxPages = maxPages;
+    }
+
+    public void setLinesPerPage(int linesPerPage) {
+        this.linesPerPage = linesPerPage;
+    }
+
+    public void setFontSize(float fontSize) {
+        this.fontSize = fontSize;
+    }
+
+    public void setFonts(List<String> fonts) {
+        for (String font : fonts) {
+            pdfFont(font);
+        }
+        this.fonts = fonts;
+    }
+
+    public void setScannedRatio(double scannedRatio) {
+        this.scannedRatio = scannedRatio;
+    }
+
+    public void setHighlightsPerPage(int highlightsPerPage) {
+        this.highlightsPerPage = highlightsPerPage;
+    }
+
+    public void setColors(List<HighlightColor> colors) {
+        this.colors = colors;
+    }
+
+    public void setMultiLineRatio(double multiLineRatio) {
+        this.multiLineRatio = multiLineRatio;
+    }
+
+    public void setDistractorRatio(double distractorRatio) {
+        this.distractorRatio = distractorRatio;
+    }
+
+    /**
+     * Writes the documents and the manifest into the output directory and returns the manifest.
+     */
+    public ObjectNode generate(Path outputDir, int documents) throws IOException {
+        Files.createDirectories(outputDir);
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode manifest = mapper.createObjectNode();
+        ArrayNode documentNodes = manifest.putArray("documents");
+        int totalPages = 0;
+        int totalHighlights = 0;
+
+        for (int d = 1; d <= documents; d++) {
+            String fileName = String.format("synthetic-%04d.pdf", d);
+            ObjectNode documentNode = generateDocument(outputDir.resolve(fileName).toFile(), documentNodes.addObject());
+            documentNode.put("file", fileName);
+            totalPages += documentNode.path("pages").asInt();
+            totalHighlights += documentNode.path("highlights").size();
+        }
+
+        manifest.put("totalPages", totalPages);
+        manifest.put("totalHighlights", totalHighlights);
+        mapper.writerWithDefaultPrettyPrinter().writeValue(outputDir.resolve(MANIFEST_FILE).toFile(), manifest);
+        return manifest;
+    }
+
+    private ObjectNode generateDocument(File file, ObjectNode documentNode) throws IOException {
+        String fontName = fonts.get(random.nextInt(fonts.size()));
+        PDType1Font font = pdfFont(fontName);
+        int pages = minPages + random.nextInt(maxPages - minPages + 1);
+
+        documentNode.put("pages", pages);
+        documentNode.put("font", fontName);
+        ArrayNode scannedPages = documentNode.putArray("scannedPages");
+        ArrayNode highlights = documentNode.putArray("highlights");
+        int distractors = 0;
+
+        try (PDDocument document = new PDDocument()) {
+            for (int pageNumber = 1; pageNumber <= pages; pageNumber++) {
+                PDPage page = new PDPage(PDRectangle.LETTER);
+                document.addPage(page);
+
+                float textWidth = page.getMediaBox().getWidth() - 2 * MARGIN;
+                float top = page.getMediaBox().getUpperRightY() - MARGIN;
+                float leading = fontSize * 1.4f;
+                int lineCount = Math.min(linesPerPage, (int) ((top - MARGIN) / leading) + 1);
+                List<List<String>> lines = new ArrayList<>();
+                for (int l = 0; l < lineCount; l++) {
+                    lines.add(fillLine(font, textWidth));
+                }
+
+                boolean scanned = random.nextDouble() < scannedRatio;
+                if (scanned) {
+                    scannedPages.add(pageNumber);
+                    drawScannedPage(document, page, lines, fontName, font, top, leading);
+                } else {
+                    drawTextPage(document, page, lines, font, top, leading);
+                }
+
+                // Each line is highlighted at most once, so highlights never overlap
+                boolean[] used = new boolean[lineCount];
+                for (int h = 0; h < highlightsPerPage; h++) {
+                    int line = random.nextInt(lineCount);
+                    boolean multiLine = random.nextDouble() < multiLineRatio && line + 1 < lineCount;
+                    if (used[line] || (multiLine && used[line + 1])) {
+                        continue;
+                    }
+                    used[line] = true;
+                    if (multiLine) {
+                        used[line + 1] = true;
+                    }
+
+                    boolean distractor = random.nextDouble() < distractorRatio;
+                    float[] rgb = distractor
+                        ? DISTRACTOR_COLORS[random.nextInt(DISTRACTOR_COLORS.length)]
+                        : targetRgb(colors.get(random.nextInt(colors.size())));
+                    String text = addHighlight(document, page, lines, line, multiLine, font, top, leading, rgb);
+
+                    if (distractor) {
+                        distractors++;
+                    } else {
+                        ObjectNode highlight = highlights.addObject();
+                        highlight.put("page", pageNumber);
+                        highlight.put("color", HighlightColor.fromColor(new Color(rgb[0], rgb[1], rgb[2])).name());
+                        highlight.put("text", text);
+                        highlight.put("quads", multiLine ? 2 : 1);
+                        highlight.put("scanned", scanned);
+                    }
+                }
+            }
+            document.save(file);
+        }
+
+        documentNode.put("distractors", distractors);
+        return documentNode;
+    }
+
+    private List<String> fillLine(PDType1Font font, float textWidth) throws IOException {
+        List<String> words = new ArrayList<>();
+        float width = 0;
+        float space = font.getStringWidth(" ") / 1000 * fontSize;
+        while (true) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            float wordWidth = font.getStringWidth(word) / 1000 * fontSize;
+            if (!words.isEmpty() && width + space + wordWidth > textWidth) {
+                return words;
+            }
+            width += (words.isEmpty() ? 0 : space) + wordWidth;
+            words.add(word);
+        }
+    }
+
+    private void drawTextPage(PDDocument document, PDPage page, List<List<String>> lines, PDType1Font font,
+                              float top, float leading) throws IOException {
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            content.beginText();
+            content.setFont(font, fontSize);
+            content.setLeading(leading);
+            content.newLineAtOffset(MARGIN, top);
+            for (List<String> line : lines) {
+                content.showText(String.join(" ", line));
+                content.newLine();
+            }
+            content.endText();
+        }
+    }
+
+    /**
+     * Draws the page text into an image, word by word at the positions the PDF font would use, so the
+     * highlight geometry fits both kinds of page.
+     */
+    private void drawScannedPage(PDDocument document, PDPage page, List<List<String>> lines, String fontName,
+                                 PDType1Font font, float top, float leading) throws IOException {
+        PDRectangle mediaBox = page.getMediaBox();
+        float scale = SCAN_DPI / 72;
+        BufferedImage image = new BufferedImage(Math.round(mediaBox.getWidth() * scale),
+            Math.round(mediaBox.getHeight() * scale), BufferedImage.TYPE_BYTE_GRAY);
+
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setColor(Color.BLACK);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setFont(new Font(awtFontFamily(fontName), Font.PLAIN, Math.round(fontSize * scale)));
+
+            float space = font.getStringWidth(" ") / 1000 * fontSize;
+            for (int l = 0; l < lines.size(); l++) {
+                float baseline = top - l * leading;
+                float x = MARGIN;
+                for (String word : lines.get(l)) {
+                    graphics.drawString(word, x * scale, (mediaBox.getHeight() - baseline) * scale);
+                    x += font.getStringWidth(word) / 1000 * fontSize + space;
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        PDImageXObject scan = JPEGFactory.createFromImage(document, image, 0.75f);
+        try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+            content.drawImage(scan, 0, 0, mediaBox.getWidth(), mediaBox.getHeight());
+        }
+    }
+
+    /**
+     * Adds a highlight over a random word span of the line (continuing at the start of the next line for
+     * multi-line highlights) and returns the highlighted text, with quads joined by a space.
+     */
+    private String addHighlight(PDDocument document, PDPage page, List<List<String>> lines, int line, boolean multiLine,
+                                PDType1Font font, float top, float leading, float[] rgb) throws IOException {
+        List<String> words = lines.get(line);
+        int start;
+        int end;
+        if (multiLine) {
+            start = random.nextInt(words.size());
+            end = words.size();
+        } else {
+            start = random.nextInt(words.size());
+            end = Math.min(words.size(), start + 1 + random.nextInt(6));
+        }
+
+        List<float[]> quads = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        quads.add(wordSpanQuad(words, start, end, font, top - line * leading));
+        text.append(String.join(" ", words.subList(start, end)));
+
+        if (multiLine) {
+            List<String> next = lines.get(line + 1);
+            int nextEnd = Math.min(next.size(), 1 + random.nextInt(6));
+            quads.add(wordSpanQuad(next, 0, nextEnd, font, top - (line + 1) * leading));
+            text.append(' ').append(String.join(" ", next.subList(0, nextEnd)));
+        }
+
+        float[] quadPoints = new float[quads.size() * 8];
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int q = 0; q < quads.size(); q++) {
+            float[] quad = quads.get(q);
+            System.arraycopy(quad, 0, quadPoints, q * 8, 8);
+            minX = Math.min(minX, quad[0]);
+            maxX = Math.max(maxX, quad[2]);
+            minY = Math.min(minY, quad[5]);
+            maxY = Math.max(maxY, quad[1]);
+        }
+
+        PDAnnotationTextMarkup markup = new PDAnnotationTextMarkup(PDAnnotationTextMarkup.SUB_TYPE_HIGHLIGHT);
+        markup.setRectangle(new PDRectangle(minX, minY, maxX - minX, maxY - minY));
+        markup.setQuadPoints(quadPoints);
+        markup.setColor(new PDColor(rgb, PDDeviceRGB.INSTANCE));
+        markup.constructAppearances(document);
+        page.getAnnotations().add(markup);
+        return text.toString();
+    }
+
+    /**
+     * Quad (upper left, upper right, lower left, lower right) from just below the baseline to the font
+     * size above it, spanning words [start, end).
+     */
+    private float[] wordSpanQuad(List<String> words, int start, int end, PDType1Font font, float baseline) throws IOException {
+        float x1 = MARGIN + font.getStringWidth(prefix(words, start)) / 1000 * fontSize;
+        float x2 = x1 + font.getStringWidth(String.join(" ", words.subList(start, end))) / 1000 * fontSize;
+        float y1 = baseline - fontSize * 0.25f;
+        float y2 = baseline + fontSize;
+        return new float[] {x1, y2, x2, y2, x1, y1, x2, y1};
+    }
+
+    private static String prefix(List<String> words, int count) {
+        return count == 0 ? "" : String.join(" ", words.subList(0, count)) + " ";
+    }
+
+    /**
+     * Colors as commonly used by PDF viewers, each classified as its target by {@link HighlightColor#fromColor}.
+     */
+    private static float[] targetRgb(HighlightColor color) {
+        switch (color) {
+            case GREEN:
+                return new float[] {0.77f, 0.98f, 0.45f};
+            case YELLOW:
+                return new float[] {1.0f, 0.76f, 0.0f};
+            default:
+                return new float[] {0.59f, 0.26f, 0.99f};
+        }
+    }
+
+    private static PDType1Font pdfFont(String name) {
+        switch (name) {
+            case "helvetica":
+                return PDType1Font.HELVETICA;
+            case "times":
+                return PDType1Font.TIMES_ROMAN;
+            case "courier":
+                return PDType1Font.COURIER;
+            default:
+                throw new IllegalArgumentException("Unknown font: " + name);
+        }
+    }
+
+    private static String awtFontFamily(String name) {
+        switch (name) {
+            case "times":
+                return Font.SERIF;
+            case "courier":
+                return Font.MONOSPACED;
+            default:
+                return Font.SANS_SERIF;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.scotiapdf;
+
+/**
+ * Time limits for a document, each of its pages and each OCR call, in milliseconds; 0 means unlimited.
+ * A page never outlives its document and an OCR call never outlives its page, so the effective deadline is
+ * always the earliest one. The defaults come from the system properties {@value #DOCUMENT_PROPERTY},
+ * {@value #PAGE_PROPERTY} and {@value #OCR_PROPERTY}, which works for every extractor's command line.
+ */
+public final class TimeBudget {
+
+    public static final String DOCUMENT_PROPERTY = "highlight.timeout.documentMs";
+    public static final String PAGE_PROPERTY = "highlight.timeout.pageMs";
+    public static final String OCR_PROPERTY = "highlight.timeout.ocrMs";
+
+    public static final TimeBudget UNLIMITED = new TimeBudget(0, 0, 0);
+
+    private final long documentMillis;
+    private final long pageMillis;
+    private final long ocrMillis;
+
+    public TimeBudget(long documentMillis, long pageMillis, long ocrMillis) {
+        this.documentMillis = documentMillis;
+        this.pageMillis = pageMillis;
+        this.ocrMillis = ocrMillis;
+    }
+
+    public static TimeBudget fromSystemProperties() {
+        return new TimeBudget(Long.getLong(DOCUMENT_PROPERTY, 0), Long.getLong(PAGE_PROPERTY, 0), Long.getLong(OCR_PROPERTY, 0));
+    }
+
+    public Deadline startDocument() {
+        return Deadline.after("document", documentMillis);
+    }
+
+    public Deadline startPage(Deadline document) {
+        return Deadline.after("page", pageMillis).earliest(document);
+    }
+
+    public Deadline startOcr(Deadline page) {
+        return Deadline.after("ocr", ocrMillis).earliest(page);
+    }
+
+    public long getDocumentMillis() {
+        return documentMillis;
+    }
+
+    public long getPageMillis() {
+        return pageMillis;
+    }
+
+    public long getOcrMillis() {
+        return ocrMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "document=" + limit(documentMillis) + " page=" + limit(pageMillis) + " ocr=" + limit(ocrMillis);
+    }
+
+    private static String limit(long millis) {
+        return millis > 0 ? millis + "ms" : "unlimited";
+    }
+}
@@ -0,0 +1,96 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Work abandoned because a time budget ran out, as listed in the "timeouts" of a result: a highlight region
+ * whose OCR call was cancelled, the rest of a page, or the remaining pages of a document.
+ */
+public final class TimedOutWork {
+
+    private final String scope;
+    private final int pageNumber;
+    private final PDRectangle region;
+    private final int skippedRegions;
+    private final int skippedPages;
+
+    private TimedOutWork(String scope, int pageNumber, PDRectangle region, int skippedRegions, int skippedPages) {
+        this.scope = scope;
+        this.pageNumber = pageNumber;
+        this.region = region;
+        this.skippedRegions = skippedRegions;
+        this.skippedPages = skippedPages;
+    }
+
+    /**
+     * One highlight region given up on, typically a cancelled OCR call.
+     */
+    public static TimedOutWork region(String scope, int pageNumber, PDRectangle region) {
+        return new TimedOutWork(scope, pageNumber, region, 1, 0);
+    }
+
+    /**
+     * A page cut short with the given number of highlight regions not yet extracted.
+     */
+    public static TimedOutWork page(String scope, int pageNumber, int skippedRegions) {
+        return new TimedOutWork(scope, pageNumber, null, skippedRegions, 0);
+    }
+
+    /**
+     * A document cut short before the given page, with skippedPages pages not processed.
+     */
+    public static TimedOutWork document(int firstSkippedPage, int skippedPages) {
+        return new TimedOutWork("document", firstSkippedPage, null, 0, skippedPages);
+    }
+
+    /**
+     * The budget that ran out: "document", "page" or "ocr".
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    public PDRectangle getRegion() {
+        return region;
+    }
+
+    public int getSkippedRegions() {
+        return skippedRegions;
+    }
+
+    public int getSkippedPages() {
+        return skippedPages;
+    }
+
+    public ObjectNode toJson(ObjectMapper mapper) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("scope", scope);
+        node.put("page", pageNumber);
+        if (region != null) {
+            node.put("coordinates", String.valueOf(region));
+        } else if (skippedPages > 0) {
+            node.put("skippedPages", skippedPages);
+        } else {
+            node.put("skippedRegions", skippedRegions);
+        }
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        if (region != null) {
+            return scope + " timeout on page " + pageNumber + " at " + region;
+        }
+        if (skippedPages > 0) {
+            return scope + " timeout before page " + pageNumber + ", " + skippedPages + " pages skipped";
+        }
+        return scope + " timeout on page " + pageNumber + ", " + skippedRegions + " regions skipped";
+    }
+}
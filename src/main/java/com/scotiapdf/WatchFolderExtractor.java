@@ -0,0 +1,297 @@
+package com.scotiapdf;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Daemon mode that watches a folder for new or updated PDFs and extracts their highlights as they arrive.
+ *
+ * A file is only picked up once its size and modification time have stayed unchanged for the stability
+ * window, so documents that are still being written by a scanner are not read half-finished. At most
+ * maxInFlight documents are processed at once; stable files beyond that stay pending until a slot frees up.
+ * A result file is stamped with the modification time of the PDF version it was extracted from, and PDFs whose
+ * result carries their current modification time are skipped, which also makes restarts cheap. A PDF rewritten
+ * while it was being processed therefore no longer matches its result and is processed again.
+ */
+public class WatchFolderExtractor {
+
+    static {
+        QuietMode.init();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(WatchFolderExtractor.class);
+
+    private final HighlightExtractionPipeline pipeline;
+    private final Path watchDir;
+    private final Path outputDir;
+    private final BatchHighlightExtractor.OutputFormat format;
+    private final long stableMillis;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final Map<Path, PendingFile> pending = new HashMap<>();
+    private final Set<Path> processing = ConcurrentHashMap.newKeySet();
+    private final Map<Path, FileTime> failed = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    /**
+     * @param outputDir directory for result files, or null to write each result next to its PDF
+     */
+    public WatchFolderExtractor(HighlightExtractionPipeline pipeline, Path watchDir, Path outputDir,
+                                BatchHighlightExtractor.OutputFormat format, int threads, int maxInFlight, long stableMillis) {
+        this.pipeline = pipeline;
+        this.watchDir = watchDir;
+        this.outputDir = outputDir;
+        this.format = format;
+        this.stableMillis = stableMillis;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) {
+        args = QuietMode.apply(args);
+        Path outputDir = null;
+        BatchHighlightExtractor.OutputFormat format = BatchHighlightExtractor.OutputFormat.JSON;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int maxInFlight = -1;
+        long stableMillis = 2000;
+        boolean includeOcr = false;
+        Path watchDir = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--output-dir":
+                        outputDir = Paths.get(args[++i]);
+                        break;
+                    case "--format":
+                        format = BatchHighlightExtractor.OutputFormat.valueOf(args[++i].toUpperCase());
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-in-flight":
+                        maxInFlight = Integer.parseInt(args[++i]);
+                        break;
+                    case "--stable-ms":
+                        stableMillis = Long.parseLong(args[++i]);
+                        break;
+                    case "--ocr":
+                        includeOcr = true;
+                        break;
+                    default:
+                        if (watchDir != null) {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                        watchDir = Paths.get(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            watchDir = null;
+        }
+
+        if (watchDir == null || !Files.isDirectory(watchDir) || threads < 1) {
+            System.out.println("Usage: java WatchFolderExtractor [--output-dir <dir>] [--format json|jsonl|archive] "
+                               + "[--threads <n>] [--max-in-flight <n>] [--stable-ms <ms>] [--ocr] [--quiet] <watch-directory>");
+            System.exit(1);
+        }
+
+        WatchFolderExtractor watcher = new WatchFolderExtractor(HighlightExtractionPipeline.withDefaultStrategies(includeOcr),
+            watchDir, outputDir, format, threads, maxInFlight > 0 ? maxInFlight : threads * 2, stableMillis);
+        Runtime.getRuntime().addShutdownHook(new Thread(watcher::stop));
+
+        try {
+            watcher.run();
+        } catch (IOException e) {
+            LOG.error("Watch folder failed", e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Processes the files already in the folder, then watches for changes until {@link #stop()} is called.
+     */
+    public void run() throws IOException, InterruptedException {
+        if (outputDir != null) {
+            Files.createDirectories(outputDir);
+        }
+
+        try (WatchService watchService = watchDir.getFileSystem().newWatchService()) {
+            watchDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            LOG.info("Watching {} (stable after {} ms, {} in flight max)", watchDir.toAbsolutePath(), stableMillis,
+                     inFlight.availablePermits());
+            scanDirectory();
+
+            long pollMillis = Math.max(100, Math.min(1000, stableMillis / 2));
+            while (running) {
+                WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            // Events were dropped; fall back to a full listing
+                            scanDirectory();
+                        } else {
+                            track(watchDir.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        LOG.warn("Watch directory is no longer accessible: {}", watchDir);
+                        break;
+                    }
+                }
+                dispatchStableFiles();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    private void scanDirectory() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(watchDir)) {
+            for (Path entry : entries) {
+                track(entry);
+            }
+        }
+    }
+
+    private void track(Path file) {
+        if (!BatchHighlightExtractor.isPdf(file) || !Files.isRegularFile(file)) {
+            return;
+        }
+        pending.putIfAbsent(file, new PendingFile());
+    }
+
+    /**
+     * Hands files whose size and modification time have settled to the worker pool, as long as slots are free.
+     */
+    private void dispatchStableFiles() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, PendingFile>> entries = pending.entrySet().iterator();
+
+        while (entries.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = entries.next();
+            Path file = entry.getKey();
+            PendingFile state = entry.getValue();
+
+            if (processing.contains(file)) {
+                continue;
+            }
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Deleted or renamed before it settled
+                entries.remove();
+                continue;
+            }
+
+            if (!state.observe(attributes.size(), attributes.lastModifiedTime(), now)
+                || now - state.unchangedSince < stableMillis) {
+                continue;
+            }
+
+            Path output = outputFor(file);
+            if (isUpToDate(file, attributes.lastModifiedTime(), output)) {
+                entries.remove();
+                continue;
+            }
+
+            if (!inFlight.tryAcquire()) {
+                // All slots busy; the file stays pending and is retried on the next poll
+                return;
+            }
+            entries.remove();
+            processing.add(file);
+            executor.execute(() -> process(file, attributes.lastModifiedTime(), output));
+        }
+    }
+
+    private boolean isUpToDate(Path file, FileTime modified, Path output) {
+        if (modified.equals(failed.get(file))) {
+            // Already failed in this version; wait until the file changes again
+            return true;
+        }
+        try {
+            // Milliseconds, in case the output directory keeps coarser timestamps than the watched one
+            return Files.exists(output) && Files.getLastModifiedTime(output).toMillis() == modified.toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    Path outputFor(Path file) {
+        String name = BatchHighlightExtractor.baseName(file) + format.extension;
+        return outputDir != null ? outputDir.resolve(name) : file.resolveSibling(name);
+    }
+
+    private void process(Path file, FileTime modified, Path output) {
+        long start = System.nanoTime();
+        try (StageMetrics.DocumentTimer timer = StageMetrics.shared().startDocument(file.toString())) {
+            List<HighlightedText> highlights;
+            try (PDDocument document = DocumentLoader.load(file.toFile().length(), () -> PDDocument.load(file.toFile()))) {
+                highlights = pipeline.extractHighlights(document, null);
+            }
+
+            // Written under a temporary name so readers never see a partial result
+            Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+            format.write(highlights, file, temp, timer.getResources());
+            Files.setLastModifiedTime(temp, modified);
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            failed.remove(file);
+
+            LOG.info("{}: {} highlights in {} ms -> {}", file.getFileName(), highlights.size(),
+                     String.format("%.1f", (System.nanoTime() - start) / 1_000_000.0), output.getFileName());
+        } catch (Exception e) {
+            failed.put(file, modified);
+            LOG.warn("{} failed: {}", file.getFileName(), e.toString());
+        } finally {
+            processing.remove(file);
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Last observed size and modification time of a file that has not been processed yet.
+     */
+    private static class PendingFile {
+        long size = -1;
+        FileTime modified;
+        long unchangedSince;
+
+        /**
+         * Records the current attributes and returns true if they match the previous observation.
+         */
+        boolean observe(long currentSize, FileTime currentModified, long now) {
+            if (currentSize == size && currentModified.equals(modified)) {
+                return true;
+            }
+            size = currentSize;
+            modified = currentModified;
+            unchangedSince = now;
+            return false;
+        }
+    }
+}